@@ -0,0 +1,151 @@
+package model;
+
+import adapter.JsonCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import network.WireFrame;
+import network.WireMessage;
+import utils.Config;
+import utils.RequestInfor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Per-request cost of the tracker's JSON-carrying requests through {@link TrackerModel#processRequest(network.WireFields)}:
+ * each call parses a binary request frame, runs the handler against a populated {@link FileIndex} and writes the
+ * reply frame, which is where the JSON of the reply is produced. Only the socket and TLS are left out.
+ * <ul>
+ *     <li>REGISTER: decode one peer's share map, re-index its files, encode the full share list back</li>
+ *     <li>SHARE: decode and index a single new public file</li>
+ *     <li>REFRESH: encode every visible file</li>
+ *     <li>GET_PEERS: encode the owners of a file every peer shares</li>
+ * </ul>
+ * Each case runs {@value #WARMUP_ITERATIONS} warm-up and {@value #MEASURE_ITERATIONS} measured iterations of about
+ * {@value #ITERATION_MS} ms and prints the mean time per request. The tracker state is written to
+ * {@code TRACKER_STATE_DIR}, which must be empty or missing. The Tracker has no build of its own, so compile it
+ * together with the sources:
+ * <pre>
+ * javac -cp &lt;dependencies&gt; -d out $(find src bench -name '*.java')
+ * TRACKER_STATE_DIR=$(mktemp -d) LOG_LEVEL=ERROR java -cp out:&lt;dependencies&gt; model.TrackerRequestBenchmark [peers] [filesPerPeer]
+ * </pre>
+ */
+public class TrackerRequestBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 10;
+    private static final long ITERATION_MS = 500;
+
+    private static int sink; // giữ kết quả để JIT không loại bỏ phép tính
+
+    public static void main(String[] args) throws IOException {
+        int peerCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int filesPerPeer = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Path stateDir = Paths.get(Config.TRACKER_STATE_DIR);
+        if (Files.isDirectory(stateDir)) {
+            try (Stream<Path> entries = Files.list(stateDir)) {
+                if (entries.findAny().isPresent()) {
+                    System.err.println("TRACKER_STATE_DIR " + stateDir.toAbsolutePath() + " is not empty; point it at a scratch directory");
+                    System.exit(1);
+                }
+            }
+        }
+
+        TrackerModel tracker = new TrackerModel();
+        List<PeerInfo> peers = new ArrayList<>();
+        List<ByteBuf> registers = new ArrayList<>();
+        for (int p = 0; p < peerCount; p++) {
+            PeerInfo peer = new PeerInfo("10.0." + (p >> 8) + "." + (p & 0xFF), 5000, "user" + p);
+            peers.add(peer);
+            Map<String, FileInfo> publicFiles = new HashMap<>();
+            for (int f = 0; f < filesPerPeer; f++) {
+                // File 0 is shared by every peer, so GET_PEERS for it returns all of them
+                String hash = f == 0 ? String.format("%064x", 0) : String.format("%032x%032x", p + 1, f);
+                FileInfo fileInfo = new FileInfo("file-" + p + "-" + f + ".bin", 1_000_000L + f, hash, peer);
+                publicFiles.put(fileInfo.getFileName(), fileInfo);
+            }
+            ByteBuf register = encode(WireFrame.request(RequestInfor.REGISTER)
+                    .addJson(JsonCodec.PEER_GSON, peer, PeerInfo.class)
+                    .addJson(JsonCodec.FILE_GSON, publicFiles, JsonCodec.PUBLIC_FILE_MAP_TYPE)
+                    .addJson(JsonCodec.FILE_GSON, new HashMap<FileInfo, Set<PeerInfo>>(), JsonCodec.PRIVATE_FILE_MAP_TYPE));
+            registers.add(register);
+            call(tracker, register, Unpooled.buffer());
+        }
+
+        PeerInfo requester = peers.get(0);
+        ByteBuf share = encode(WireFrame.request(RequestInfor.SHARE).add(1).add(0)
+                .addJson(JsonCodec.FILE_GSON, List.of(new FileInfo("new-file.bin", 4096, String.format("%064x", -1L), requester)),
+                        JsonCodec.FILE_LIST_TYPE)
+                .addJson(JsonCodec.FILE_GSON, new HashMap<FileInfo, Set<PeerInfo>>(), JsonCodec.PRIVATE_FILE_MAP_TYPE));
+        ByteBuf refresh = encode(WireFrame.request(RequestInfor.REFRESH).add(requester.getIp()).add(requester.getPort()));
+        ByteBuf getPeers = encode(WireFrame.request(RequestInfor.GET_PEERS).add(String.format("%064x", 0))
+                .add(requester.getIp()).add(requester.getPort()));
+
+        ByteBuf reply = Unpooled.buffer();
+        System.out.println("TrackerRequestBenchmark: " + peerCount + " peers sharing " + filesPerPeer + " files each");
+        report("REGISTER, " + filesPerPeer + " files", () -> call(tracker, registers.get(0), reply));
+        report("SHARE, 1 file", () -> call(tracker, share, reply));
+        report("REFRESH, " + peerCount * filesPerPeer + " files", () -> call(tracker, refresh, reply));
+        report("GET_PEERS, " + peerCount + " owners", () -> call(tracker, getPeers, reply));
+        System.out.println("checksum " + sink);
+        System.exit(0); // the tracker's executors are not daemon threads
+    }
+
+    private static ByteBuf encode(WireFrame request) {
+        ByteBuf frame = Unpooled.buffer();
+        request.writeTo(frame);
+        return frame;
+    }
+
+    /**
+     * Handles one request frame as the tracker handler would and returns the size of the reply frame.
+     */
+    private static int call(TrackerModel tracker, ByteBuf request, ByteBuf reply) {
+        WireMessage message = WireMessage.parse(request.retainedSlice(4, request.readableBytes() - 4)); // bỏ tiền tố độ dài
+        try {
+            reply.clear();
+            tracker.processRequest(message).writeTo(reply);
+            return reply.readableBytes();
+        } finally {
+            message.release();
+        }
+    }
+
+    private static void report(String name, IntSupplier operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+        double total = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            double nanosPerOp = iteration(operation);
+            total += nanosPerOp;
+            best = Math.min(best, nanosPerOp);
+        }
+        System.out.printf("%-30s %10.0f ns/op (best %.0f)%n", name, total / MEASURE_ITERATIONS, best);
+    }
+
+    /**
+     * Runs the operation for about {@link #ITERATION_MS} and returns the mean nanoseconds per call.
+     */
+    private static double iteration(IntSupplier operation) {
+        long deadline = System.nanoTime() + ITERATION_MS * 1_000_000L;
+        long start = System.nanoTime();
+        long ops = 0;
+        long now;
+        do {
+            sink += operation.getAsInt();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / ops;
+    }
+}
@@ -1,15 +1,9 @@
-import java.io.IOException;
-
 import model.TrackerModel;
 
 
 public class Main {
     public static void main(String[] args) {
         System.setProperty("file.encoding", "UTF-8");
-        try {
-            new TrackerModel().startTracker();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        new TrackerModel().startTracker();
     }
 }
\ No newline at end of file
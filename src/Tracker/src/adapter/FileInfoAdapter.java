@@ -12,12 +12,17 @@ public class FileInfoAdapter extends TypeAdapter<FileInfo> {
     @Override
     public void write(JsonWriter out, FileInfo value) throws IOException {
         out.value(value.getFileName() + "'" + value.getFileSize() + "'" + value.getFileHash() + "'" + value.getPeerInfo().getIp()
-                + "'" + value.getPeerInfo().getPort() + "'" + value.getPeerInfo().getUsername());
+                + "'" + value.getPeerInfo().getPort() + "'" + value.getPeerInfo().getUsername()
+                + (value.getPiecesRoot() != null ? "'" + value.getPiecesRoot() : ""));
     }
 
     @Override
     public FileInfo read(JsonReader in) throws IOException {
         String[] parts = in.nextString().split("'");
-        return new FileInfo(parts[0], Long.parseLong(parts[1]), parts[2], new PeerInfo(parts[3], Integer.parseInt(parts[4]), parts[5]));
+        FileInfo fileInfo = new FileInfo(parts[0], Long.parseLong(parts[1]), parts[2], new PeerInfo(parts[3], Integer.parseInt(parts[4]), parts[5]));
+        if (parts.length > 6) {
+            fileInfo.setPiecesRoot(parts[6]);
+        }
+        return fileInfo;
     }
 }
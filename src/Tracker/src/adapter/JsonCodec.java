@@ -0,0 +1,48 @@
+package adapter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import model.FileInfo;
+import model.PeerInfo;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared, pre-built Gson codecs for the tracker wire format.
+ * Gson instances are thread-safe and cache their type adapters, so building them once avoids
+ * repeating the reflective setup on every request.
+ */
+public final class JsonCodec {
+    /**
+     * FileInfo as "fileName'fileSize'fileHash'ip'port'username"; PeerInfo values inside maps stay reflective objects.
+     */
+    public static final Gson FILE_GSON = new GsonBuilder()
+            .registerTypeAdapter(FileInfo.class, new FileInfoAdapter())
+            .enableComplexMapKeySerialization()
+            .create();
+
+    /**
+     * PeerInfo as "ip:port:username".
+     */
+    public static final Gson PEER_GSON = new GsonBuilder()
+            .registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter())
+            .create();
+
+    public static final Type PEER_SET_TYPE = new TypeToken<Set<PeerInfo>>() {
+    }.getType();
+    public static final Type FILE_SET_TYPE = new TypeToken<Set<FileInfo>>() {
+    }.getType();
+    public static final Type FILE_LIST_TYPE = new TypeToken<List<FileInfo>>() {
+    }.getType();
+    public static final Type PUBLIC_FILE_MAP_TYPE = new TypeToken<Map<String, FileInfo>>() {
+    }.getType();
+    public static final Type PRIVATE_FILE_MAP_TYPE = new TypeToken<Map<FileInfo, Set<PeerInfo>>>() {
+    }.getType();
+
+    private JsonCodec() {
+    }
+}
@@ -0,0 +1,326 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds every file the tracker knows about: public files grouped by name, private files with their
+ * access lists, and a secondary index by file hash so peer lookups only touch the files with that hash.
+ * File names are also kept in a {@link NameIndex} for QUERY, and a reverse index by peer (files it owns, private
+ * files whose ACL lists it) lets a departing peer be removed by touching only its own entries.
+ * All mutations go through this class so the indexes stay consistent; reads are lock-free.
+ * Once a {@link TrackerStore} is attached every mutation is also appended to its change log, under the same lock,
+ * so the log replays in the order the changes were applied.
+ */
+public class FileIndex {
+    private static final Comparator<FileInfo> SEARCH_ORDER = Comparator
+            .comparing(FileInfo::getFileName)
+            .thenComparing(fileInfo -> fileInfo.getPeerInfo().getIp())
+            .thenComparingInt(fileInfo -> fileInfo.getPeerInfo().getPort());
+
+    private final ConcurrentHashMap<String, Set<FileInfo>> publicFiles = new ConcurrentHashMap<>(); // fileName -> set of file info (shared by different peers)
+    private final ConcurrentHashMap<FileInfo, Set<PeerInfo>> privateSharedFiles = new ConcurrentHashMap<>(); // file info -> set of peer info (who can access)
+    private final ConcurrentHashMap<String, HashEntry> filesByHash = new ConcurrentHashMap<>(); // file hash -> public owners and private entries
+    private final ConcurrentHashMap<PeerInfo, PeerEntry> filesByPeer = new ConcurrentHashMap<>(); // peer -> files it owns and private files it may access
+    private final NameIndex nameIndex = new NameIndex();
+    private TrackerStore store;
+    private volatile boolean namesIndexed = true; // false while a loaded snapshot waits for buildNameIndex()
+
+    void setStore(TrackerStore store) {
+        this.store = store;
+    }
+
+    public synchronized void addPublic(FileInfo fileInfo) {
+        removePublic(fileInfo); // Re-sharing replaces the entry so updated metadata (e.g. pieces root) is kept
+        loadPublic(fileInfo);
+        if (store != null) {
+            store.logAddPublic(fileInfo);
+        }
+    }
+
+    public synchronized void putPrivate(FileInfo fileInfo, Set<PeerInfo> allowedPeers) {
+        removePrivate(fileInfo);
+        Set<PeerInfo> acl = loadPrivate(fileInfo, allowedPeers);
+        if (store != null) {
+            store.logPutPrivate(fileInfo, acl);
+        }
+    }
+
+    /**
+     * Removes a file from both the public and the private side, as UNSHARED_FILE does.
+     */
+    public synchronized void remove(FileInfo fileInfo) {
+        removePublic(fileInfo);
+        removePrivate(fileInfo);
+        if (store != null) {
+            store.logRemove(fileInfo);
+        }
+    }
+
+    /**
+     * Stops maintaining the name index until {@link #buildNameIndex()} runs. Loading a large snapshot then
+     * only fills the hash and name maps, and QUERY scans them in the meantime.
+     */
+    void deferNameIndex() {
+        namesIndexed = false;
+    }
+
+    /**
+     * Indexes every current file name. Holds the lock, so changes wait for it but lookups do not.
+     */
+    synchronized void buildNameIndex() {
+        if (namesIndexed) {
+            return;
+        }
+        publicFiles.values().forEach(fileInfos -> fileInfos.forEach(nameIndex::add));
+        privateSharedFiles.keySet().forEach(nameIndex::add);
+        namesIndexed = true;
+    }
+
+    /**
+     * Inserts a file that is not indexed yet, without logging. Only used while a snapshot is loaded, where
+     * every shard is inserted from its own thread; the concurrent maps make that safe as nothing is removed.
+     */
+    void loadPublic(FileInfo fileInfo) {
+        publicFiles.computeIfAbsent(fileInfo.getFileName(), k -> ConcurrentHashMap.newKeySet()).add(fileInfo);
+        filesByHash.computeIfAbsent(fileInfo.getFileHash(), k -> new HashEntry()).publicOwners.add(fileInfo);
+        peerEntry(fileInfo.getPeerInfo()).owned.add(fileInfo);
+        if (namesIndexed) {
+            nameIndex.add(fileInfo);
+        }
+    }
+
+    /**
+     * Private counterpart of {@link #loadPublic(FileInfo)}.
+     *
+     * @return the ACL stored for the file
+     */
+    Set<PeerInfo> loadPrivate(FileInfo fileInfo, Set<PeerInfo> allowedPeers) {
+        Set<PeerInfo> acl = ConcurrentHashMap.newKeySet();
+        if (allowedPeers != null) {
+            acl.addAll(allowedPeers);
+        }
+        privateSharedFiles.put(fileInfo, acl);
+        filesByHash.computeIfAbsent(fileInfo.getFileHash(), k -> new HashEntry()).privateFiles.add(fileInfo);
+        peerEntry(fileInfo.getPeerInfo()).owned.add(fileInfo);
+        for (PeerInfo peer : acl) {
+            peerEntry(peer).allowed.add(fileInfo);
+        }
+        if (namesIndexed) {
+            nameIndex.add(fileInfo);
+        }
+        return acl;
+    }
+
+    /**
+     * Removes every file a peer shares, before a SYNC snapshot replaces them.
+     */
+    public synchronized void removeOwnedBy(PeerInfo owner) {
+        removeOwnedFiles(owner);
+        if (store != null) {
+            store.logRemoveOwner(owner);
+        }
+    }
+
+    /**
+     * Forgets a peer whose lease expired: drops the files it shares and removes it from every access list.
+     * Only the peer's own entries in the reverse index are visited.
+     */
+    public synchronized void removePeer(PeerInfo peer) {
+        removeOwnedFiles(peer);
+        PeerEntry entry = filesByPeer.remove(peer);
+        if (entry != null) {
+            for (FileInfo fileInfo : entry.allowed) {
+                Set<PeerInfo> acl = privateSharedFiles.get(fileInfo);
+                if (acl != null) {
+                    acl.remove(peer);
+                }
+            }
+        }
+        if (store != null) {
+            store.logRemovePeerFiles(peer);
+        }
+    }
+
+    private void removeOwnedFiles(PeerInfo owner) {
+        PeerEntry entry = filesByPeer.get(owner);
+        if (entry == null) {
+            return;
+        }
+        for (FileInfo fileInfo : new ArrayList<>(entry.owned)) {
+            removePublic(fileInfo);
+            removePrivate(fileInfo);
+        }
+    }
+
+    /**
+     * Get the public copies of a file.
+     *
+     * @param fileHash Hash of the file.
+     * @return Every public FileInfo with this hash (one per owning peer).
+     */
+    public Set<FileInfo> getPublicOwners(String fileHash) {
+        HashEntry entry = filesByHash.get(fileHash);
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.publicOwners);
+    }
+
+    /**
+     * Get the private copies of a file together with their access lists.
+     *
+     * @param fileHash Hash of the file.
+     * @return Private FileInfo -> peers allowed to access it.
+     */
+    public Map<FileInfo, Set<PeerInfo>> getPrivateEntries(String fileHash) {
+        HashEntry entry = filesByHash.get(fileHash);
+        if (entry == null || entry.privateFiles.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<FileInfo, Set<PeerInfo>> entries = new HashMap<>();
+        for (FileInfo fileInfo : entry.privateFiles) {
+            Set<PeerInfo> allowedPeers = privateSharedFiles.get(fileInfo);
+            if (allowedPeers != null) {
+                entries.put(fileInfo, allowedPeers);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * One page of a search and the number of files that matched in total.
+     */
+    public record SearchPage(List<FileInfo> files, int total) {
+    }
+
+    /**
+     * Search file names visible to a peer: every public file plus the private files whose ACL contains it.
+     * Only the first {@code offset + limit} matches in search order are kept (in a bounded heap), so a page
+     * costs O(n log(offset + limit)) instead of sorting every match.
+     *
+     * @param keyword   Substring to look for, case-insensitive; empty matches every file.
+     * @param requester Peer running the query.
+     * @param offset    Number of matches to skip.
+     * @param limit     Maximum number of matches to return.
+     * @return The requested page sorted by name, then owner, so pages are stable between requests.
+     */
+    public SearchPage search(String keyword, PeerInfo requester, int offset, int limit) {
+        Set<FileInfo> candidates;
+        boolean scan = !keyword.isEmpty() && !namesIndexed;
+        if (keyword.isEmpty() || scan) {
+            candidates = new HashSet<>(privateSharedFiles.keySet());
+            publicFiles.values().forEach(candidates::addAll);
+        } else {
+            candidates = nameIndex.search(keyword);
+        }
+
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        int keep = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        PriorityQueue<FileInfo> firstMatches = new PriorityQueue<>(SEARCH_ORDER.reversed()); // đầu heap là kết quả lớn nhất đang giữ
+        int total = 0;
+        for (FileInfo fileInfo : candidates) {
+            if (scan && !fileInfo.getFileName().toLowerCase(Locale.ROOT).contains(needle)) {
+                continue;
+            }
+            Set<FileInfo> sameName = publicFiles.get(fileInfo.getFileName());
+            Set<PeerInfo> allowedPeers = privateSharedFiles.get(fileInfo);
+            if ((sameName != null && sameName.contains(fileInfo)) || (allowedPeers != null && allowedPeers.contains(requester))) {
+                total++;
+                if (firstMatches.size() < keep) {
+                    firstMatches.add(fileInfo);
+                } else if (keep > 0 && SEARCH_ORDER.compare(fileInfo, firstMatches.peek()) < 0) {
+                    firstMatches.poll();
+                    firstMatches.add(fileInfo);
+                }
+            }
+        }
+        List<FileInfo> results = new ArrayList<>(firstMatches);
+        results.sort(SEARCH_ORDER);
+        return new SearchPage(results.subList(Math.min(offset, results.size()), results.size()), total);
+    }
+
+    public Map<String, Set<FileInfo>> getPublicFiles() {
+        return Collections.unmodifiableMap(publicFiles);
+    }
+
+    public Map<FileInfo, Set<PeerInfo>> getPrivateSharedFiles() {
+        return Collections.unmodifiableMap(privateSharedFiles);
+    }
+
+    private void removePublic(FileInfo fileInfo) {
+        Set<FileInfo> fileInfos = publicFiles.get(fileInfo.getFileName());
+        if (fileInfos != null && fileInfos.remove(fileInfo) && fileInfos.isEmpty()) {
+            publicFiles.remove(fileInfo.getFileName());
+        }
+        HashEntry entry = filesByHash.get(fileInfo.getFileHash());
+        if (entry != null) {
+            entry.publicOwners.remove(fileInfo);
+            pruneIfEmpty(fileInfo.getFileHash(), entry);
+        }
+        if (!privateSharedFiles.containsKey(fileInfo)) {
+            if (namesIndexed) {
+                nameIndex.remove(fileInfo);
+            }
+            unlinkPeer(fileInfo.getPeerInfo(), peerEntry -> peerEntry.owned.remove(fileInfo));
+        }
+    }
+
+    private void removePrivate(FileInfo fileInfo) {
+        Set<PeerInfo> acl = privateSharedFiles.remove(fileInfo);
+        if (acl != null) {
+            for (PeerInfo peer : acl) {
+                unlinkPeer(peer, peerEntry -> peerEntry.allowed.remove(fileInfo));
+            }
+        }
+        HashEntry entry = filesByHash.get(fileInfo.getFileHash());
+        if (entry != null) {
+            entry.privateFiles.remove(fileInfo);
+            pruneIfEmpty(fileInfo.getFileHash(), entry);
+        }
+        Set<FileInfo> sameName = publicFiles.get(fileInfo.getFileName());
+        if (sameName == null || !sameName.contains(fileInfo)) {
+            if (namesIndexed) {
+                nameIndex.remove(fileInfo);
+            }
+            unlinkPeer(fileInfo.getPeerInfo(), peerEntry -> peerEntry.owned.remove(fileInfo));
+        }
+    }
+
+    private PeerEntry peerEntry(PeerInfo peer) {
+        return filesByPeer.computeIfAbsent(peer, k -> new PeerEntry());
+    }
+
+    private void unlinkPeer(PeerInfo peer, Consumer<PeerEntry> unlink) {
+        PeerEntry entry = filesByPeer.get(peer);
+        if (entry != null) {
+            unlink.accept(entry);
+            if (entry.owned.isEmpty() && entry.allowed.isEmpty()) {
+                filesByPeer.remove(peer, entry);
+            }
+        }
+    }
+
+    private void pruneIfEmpty(String fileHash, HashEntry entry) {
+        if (entry.publicOwners.isEmpty() && entry.privateFiles.isEmpty()) {
+            filesByHash.remove(fileHash, entry);
+        }
+    }
+
+    private static final class PeerEntry {
+        private final Set<FileInfo> owned = ConcurrentHashMap.newKeySet();
+        private final Set<FileInfo> allowed = ConcurrentHashMap.newKeySet(); // private files whose ACL lists the peer
+    }
+
+    private static final class HashEntry {
+        private final Set<FileInfo> publicOwners = ConcurrentHashMap.newKeySet();
+        private final Set<FileInfo> privateFiles = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -6,6 +6,7 @@ import java.io.Serializable;
 public class FileInfo extends FileBase implements Serializable {
     private static final long serialVersionUID = 1L;
     private String fileHash;
+    private String piecesRoot; // SHA-256 over the per-chunk hashes, null if the sharer did not publish one
 
     public FileInfo(String fileName, long fileSize, String fileHash, PeerInfo peerInfo) {
         super(fileName, fileSize, peerInfo);
@@ -16,6 +17,14 @@ public class FileInfo extends FileBase implements Serializable {
         return fileHash;
     }
 
+    public String getPiecesRoot() {
+        return piecesRoot;
+    }
+
+    public void setPiecesRoot(String piecesRoot) {
+        this.piecesRoot = piecesRoot;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
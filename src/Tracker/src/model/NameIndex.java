@@ -0,0 +1,96 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted trigram index over file names for case-insensitive substring search.
+ * A keyword of three or more characters is answered by walking the shortest posting list among its
+ * trigrams and confirming each candidate with {@code contains}; shorter keywords fall back to the
+ * trigram vocabulary, which is far smaller than the set of files.
+ */
+public class NameIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final ConcurrentHashMap<String, Set<FileInfo>> postings = new ConcurrentHashMap<>(); // trigram -> files whose name contains it
+    private final Set<FileInfo> shortNames = ConcurrentHashMap.newKeySet(); // names shorter than a trigram
+
+    public void add(FileInfo fileInfo) {
+        String name = normalize(fileInfo.getFileName());
+        if (name.length() < GRAM_LENGTH) {
+            shortNames.add(fileInfo);
+        }
+        for (String gram : grams(name)) {
+            postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(fileInfo);
+        }
+    }
+
+    public void remove(FileInfo fileInfo) {
+        String name = normalize(fileInfo.getFileName());
+        shortNames.remove(fileInfo);
+        for (String gram : grams(name)) {
+            postings.computeIfPresent(gram, (k, files) -> {
+                files.remove(fileInfo);
+                return files.isEmpty() ? null : files;
+            });
+        }
+    }
+
+    /**
+     * Find every indexed file whose name contains the keyword, ignoring case.
+     *
+     * @param keyword Non-empty search keyword.
+     * @return Matching files, in no particular order.
+     */
+    public Set<FileInfo> search(String keyword) {
+        String needle = normalize(keyword);
+        Set<FileInfo> matches = new HashSet<>();
+        if (needle.length() >= GRAM_LENGTH) {
+            List<Set<FileInfo>> lists = new ArrayList<>();
+            for (String gram : grams(needle)) {
+                Set<FileInfo> files = postings.get(gram);
+                if (files == null) {
+                    return matches;
+                }
+                lists.add(files);
+            }
+            Set<FileInfo> shortest = lists.stream().min(Comparator.comparingInt(Set::size)).orElse(Set.of());
+            for (FileInfo fileInfo : shortest) {
+                if (normalize(fileInfo.getFileName()).contains(needle)) {
+                    matches.add(fileInfo);
+                }
+            }
+            return matches;
+        }
+
+        for (Map.Entry<String, Set<FileInfo>> entry : postings.entrySet()) {
+            if (entry.getKey().contains(needle)) {
+                matches.addAll(entry.getValue());
+            }
+        }
+        for (FileInfo fileInfo : shortNames) {
+            if (normalize(fileInfo.getFileName()).contains(needle)) {
+                matches.add(fileInfo);
+            }
+        }
+        return matches;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,131 @@
+package model;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Peers the tracker currently considers online, keyed by ip and port.
+ * REGISTER adds a peer or renews its lease and heartbeats renew it; membership checks are hash lookups and a
+ * renewal only writes the lease's timestamp.
+ * <p>
+ * Expiry runs on a {@link HashedWheelTimer}: each lease has one pending timeout. When it fires, a lease that was
+ * renewed in the meantime is simply rescheduled for the time it has left, otherwise the peer is removed and
+ * handed to the expiry callback. Nothing scans the table periodically.
+ */
+public class PeerTable {
+    private final ConcurrentHashMap<PeerInfo, Lease> leases = new ConcurrentHashMap<>();
+    private final long leaseMillis;
+    private final Consumer<PeerInfo> onExpire;
+    private final Timer timer;
+
+    public PeerTable(long leaseMillis, Consumer<PeerInfo> onExpire) {
+        this.leaseMillis = leaseMillis;
+        this.onExpire = onExpire;
+        this.timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "peer-leases");
+            thread.setDaemon(true);
+            return thread;
+        }, 1, TimeUnit.SECONDS, 512);
+    }
+
+    /**
+     * Adds a peer or renews its lease. The latest PeerInfo is kept, so a changed username is picked up.
+     *
+     * @return true if the peer was not in the table
+     */
+    public boolean touch(PeerInfo peer) {
+        Lease lease = leases.get(peer);
+        if (lease == null) {
+            Lease created = new Lease(peer);
+            lease = leases.putIfAbsent(peer, created);
+            if (lease == null) {
+                schedule(peer, created, leaseMillis);
+                return true;
+            }
+        }
+        lease.renew(peer);
+        return false;
+    }
+
+    /**
+     * Renews the lease of a peer that is already in the table. Heartbeats use this: only REGISTER, which runs over
+     * mutual TLS, can add a peer.
+     *
+     * @return false if the peer is unknown (never registered, or already expired)
+     */
+    public boolean renew(PeerInfo peer) {
+        Lease lease = leases.get(peer);
+        if (lease == null) {
+            return false;
+        }
+        lease.lastSeen = System.nanoTime();
+        return true;
+    }
+
+    public boolean contains(PeerInfo peer) {
+        return leases.containsKey(peer);
+    }
+
+    private void schedule(PeerInfo key, Lease lease, long delayMillis) {
+        timer.newTimeout(timeout -> check(key, lease), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(PeerInfo key, Lease lease) {
+        long idleMillis = (System.nanoTime() - lease.lastSeen) / 1_000_000L;
+        if (idleMillis < leaseMillis) {
+            if (leases.get(key) == lease) {
+                schedule(key, lease, leaseMillis - idleMillis);
+            }
+            return;
+        }
+        if (leases.remove(key, lease)) {
+            onExpire.accept(lease.peer);
+        }
+    }
+
+    /**
+     * Drops peers without calling the expiry callback. Only used when replaying the tracker log, whose
+     * OP_REMOVE_PEERS and legacy OP_SET_PEERS records describe removals that were already handled.
+     */
+    public void removeAll(Collection<PeerInfo> peers) {
+        peers.forEach(leases::remove);
+    }
+
+    /**
+     * Copy of the peers with their latest username.
+     */
+    public Set<PeerInfo> snapshot() {
+        Set<PeerInfo> peers = new HashSet<>();
+        for (Lease lease : leases.values()) {
+            peers.add(lease.peer);
+        }
+        return peers;
+    }
+
+    public int size() {
+        return leases.size();
+    }
+
+    public boolean isEmpty() {
+        return leases.isEmpty();
+    }
+
+    private static final class Lease {
+        private volatile PeerInfo peer;
+        private volatile long lastSeen = System.nanoTime();
+
+        private Lease(PeerInfo peer) {
+            this.peer = peer;
+        }
+
+        private void renew(PeerInfo latest) {
+            peer = latest;
+            lastSeen = System.nanoTime();
+        }
+    }
+}
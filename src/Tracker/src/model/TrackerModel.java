@@ -1,186 +1,165 @@
 package model;
 
 import java.io.*;
-import java.lang.reflect.Type;
-import java.net.InetSocketAddress;
-import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
-import java.nio.channels.*;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.Scanner;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import adapter.FileInfoAdapter;
-import adapter.PeerInfoAdapter;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import adapter.JsonCodec;
+import network.ProtocolNegotiator;
+import network.WireFields;
+import network.WireFrame;
+import network.WireMessage;
 import utils.*;
 
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLSocket;
 
 import static utils.Log.*;
 
 public class TrackerModel {
-    private final CopyOnWriteArraySet<PeerInfo> knownPeers;
-    private final ConcurrentHashMap<String, Set<FileInfo>> publicFiles; // fileName -> set of file info (shared by different peers)
-    private final ConcurrentHashMap<FileInfo, Set<PeerInfo>> privateSharedFiles; // file info -> set of peer info (who can access)
+    private final PeerTable knownPeers; // online peers by ip/port, each with a lease renewed by REGISTER and heartbeats
+    private final FileIndex fileIndex; // public files by name, private files with ACLs, both indexed by hash
+    private final ConcurrentHashMap<String, Set<PeerInfo>> partialPeers; // file hash -> peers still downloading it (serve completed chunks)
+    private final ConcurrentHashMap<PeerInfo, Long> shareVersions = new ConcurrentHashMap<>(); // peer -> version of its shares applied through SYNC
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private final Selector selector;
-    private final ScheduledExecutorService pingExecutor;
-    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(10);
-
-    public TrackerModel() throws IOException {
-        publicFiles = new ConcurrentHashMap<>();
-        privateSharedFiles = new ConcurrentHashMap<>();
-        knownPeers = new CopyOnWriteArraySet<>();
-        selector = Selector.open();
-        pingExecutor = Executors.newScheduledThreadPool(1);
-        pingExecutor.scheduleAtFixedRate(this::pingPeers, 0, 10, TimeUnit.SECONDS);
+    private final TrackerStore store;
+    private final EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+    private final EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+    private final EventExecutorGroup requestGroup = new DefaultEventExecutorGroup(Config.TRACKER_REQUEST_THREADS);
+
+    public TrackerModel() {
+        fileIndex = new FileIndex();
+        partialPeers = new ConcurrentHashMap<>();
+        knownPeers = new PeerTable(Config.PEER_LEASE_MS, this::onPeerExpired);
+        store = new TrackerStore(fileIndex, knownPeers);
+        try {
+            store.open(); // Nạp snapshot + log trước khi nhận request
+        } catch (IOException e) {
+            logError("[TRACKER]: Cannot load saved tracker state, starting empty: " + e.getMessage(), e);
+        }
     }
 
     public void startTracker() {
         try {
-
-            ExecutorService serverExecutor = Executors.newFixedThreadPool(2);
-            serverExecutor.submit(this::startSSLServer);      // Chạy server chính
-            serverExecutor.submit(this::startEnrollmentServer);
+            startSSLServer();      // Chạy server chính
+            startEnrollmentServer();
+            startHeartbeatServer();
         } catch (Exception e) {
             logError("[TRACKER]: SSL Server error: " + e.getMessage() + " on " + getCurrentTime(), e);
             throw new RuntimeException("Failed to start SSL Tracker server", e);
-        } finally {
-            pingExecutor.shutdown();
         }
     }
 
-    private void startSSLServer() {
-        SSLServerSocket sslServerSocket = null;
-        try {
-            sslServerSocket = (SSLServerSocket) SSLUtils.createSSLServerSocketFactory().createServerSocket(Config.SSL_TRACKER_PORT);
-        } catch (Exception e) {
-            logError("[TRACKER]: SSL Server socket creation error: " + e.getMessage() + " on " + getCurrentTime(), e);
-            throw new RuntimeException(e);
-        }
-        sslServerSocket.setNeedClientAuth(true);
-        sslServerSocket.setUseClientMode(false);
+    /**
+     * Main tracker port: mutual TLS, then either binary frames (when the client opens with a {@code P2PB/} preface,
+     * see {@link WireFrame}) or the legacy protocol of one request line and one response line.
+     * Each handler hands its requests to one executor of {@link #requestGroup}, so Gson work never blocks the event
+     * loop while a channel's requests still run on one thread and its responses keep request order.
+     */
+    private void startSSLServer() throws Exception {
+        SslContext sslContext = SSLUtils.createServerSslContext(ClientAuth.REQUIRE);
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                        ch.pipeline().addLast(new ProtocolNegotiator(Config.MAX_REQUEST_LINE_BYTES, Config.MAX_REQUEST_FRAME_BYTES));
+                        ch.pipeline().addLast(new StringEncoder(StandardCharsets.UTF_8));
+                        ch.pipeline().addLast(new TrackerHandler(TrackerModel.this, requestGroup.next()));
+                    }
+                })
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.SO_KEEPALIVE, true);
 
+        bootstrap.bind(Config.SSL_TRACKER_PORT).sync();
         logInfo("[TRACKER]: SSL Tracker started on " + Config.SSL_TRACKER_PORT + " - " + getCurrentTime());
-
-        while (true) {
-            try {
-                SSLSocket clientSocket = (SSLSocket) sslServerSocket.accept();
-                clientSocket.setUseClientMode(false);
-                clientSocket.setNeedClientAuth(true);
-
-                logInfo("[TRACKER]: SSL connection accepted from: " + clientSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
-                requestExecutor.submit(() -> handleSSLConnection(clientSocket));
-            } catch (IOException e) {
-                logError("[TRACKER]: SSL accept error: " + e.getMessage() + " on " + getCurrentTime(), e);
-            }
-        }
     }
 
-    private void startEnrollmentServer() {
-        try {
-            SSLServerSocket sslServerSocket = (SSLServerSocket) SSLUtils.createSSLServerSocketFactory().createServerSocket(Config.TRACKER_ENROLLMENT_PORT);
-            sslServerSocket.setNeedClientAuth(false);
-            sslServerSocket.setUseClientMode(false);
-
-            logInfo("[TRACKER-ENROLL]: Enrollment SSL Server started on " + Config.TRACKER_ENROLLMENT_PORT);
+    /**
+     * Enrollment port: TLS without client certificates (peers do not have one yet). A request is a
+     * CERT_REQUEST spread over several lines and terminated by END_OF_REQUEST; the connection is closed
+     * after the END_OF_RESPONSE marker is written.
+     */
+    private void startEnrollmentServer() throws Exception {
+        SslContext sslContext = SSLUtils.createServerSslContext(ClientAuth.NONE);
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                        ch.pipeline().addLast(new LineBasedFrameDecoder(Config.MAX_REQUEST_LINE_BYTES));
+                        ch.pipeline().addLast(new StringDecoder(StandardCharsets.UTF_8));
+                        ch.pipeline().addLast(new StringEncoder(StandardCharsets.UTF_8));
+                        ch.pipeline().addLast(new EnrollmentHandler(TrackerModel.this, requestGroup.next()));
+                    }
+                })
+                .option(ChannelOption.SO_BACKLOG, 128);
 
-            while (true) {
-                try {
-                    SSLSocket clientSocket = (SSLSocket) sslServerSocket.accept();
-                    logInfo("[TRACKER-ENROLL]: Enrollment connection accepted from: " + clientSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
-                    requestExecutor.submit(() -> handleEnrollmentConnection(clientSocket));
-                } catch (IOException e) {
-                    logError("[TRACKER-ENROLL]: Enrollment accept error: " + e.getMessage(), e);
-                }
-            }
-        } catch (Exception e) {
-            logError("[TRACKER-ENROLL]: Enrollment Server error: " + e.getMessage(), e);
-        }
+        bootstrap.bind(Config.TRACKER_ENROLLMENT_PORT).sync();
+        logInfo("[TRACKER-ENROLL]: Enrollment SSL Server started on " + Config.TRACKER_ENROLLMENT_PORT);
     }
 
-
-    private void handleEnrollmentConnection(SSLSocket sslSocket) {
-        // Sử dụng try-with-resources cho cả socket để đảm bảo nó luôn được đóng
-        try (sslSocket;
-             Scanner scanner = new Scanner(sslSocket.getInputStream(), StandardCharsets.UTF_8);
-             PrintWriter writer = new PrintWriter(sslSocket.getOutputStream(), true)) {
-
-            StringBuilder sb = new StringBuilder();
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (line.equals("END_OF_REQUEST")) break;
-                sb.append(line).append("\n");
-            }
-
-            String rawRequest = sb.toString().trim();
-            logInfo("[TRACKER-ENROLL]: Received raw data length: " + rawRequest.length() + " on " + getCurrentTime());
-            logInfo("[TRACKER-ENROLL]: Raw request: " + rawRequest);
-
-            // 2. Xử lý request đã nhận
-            String response;
-            if (rawRequest.isEmpty()) {
-                response = "CERT_ERROR|Empty request received.";
-            } else if (rawRequest.startsWith("CERT_REQUEST|")) {
-                // Tách phần payload (CSR) ra khỏi command
-                String escapedCsrPem = rawRequest.substring("CERT_REQUEST|".length());
-
-                if (escapedCsrPem.isEmpty()) {
-                    response = "CERT_ERROR|Invalid CERT_REQUEST format. CSR is missing.";
-                } else {
-                    response = processCertificateRequest(escapedCsrPem);
-                }
-            } else {
-                response = "CERT_ERROR|This port only accepts CERT_REQUEST commands.";
-            }
-
-            String finalResponse = response + "\nEND_OF_RESPONSE\n";
-            writer.write(finalResponse);
-            writer.flush();
-
-            logInfo("[TRACKER-ENROLL]: Sent response to " + sslSocket.getRemoteSocketAddress());
-
-        } catch (Exception e) {
-            logError("[TRACKER-ENROLL]: Connection error: " + e.getMessage(), e);
-        }
-        // Không cần khối finally để đóng socket vì nó đã nằm trong try-with-resources
+    /**
+     * Heartbeat port (UDP): a registered peer sends {@code HEARTBEAT|<ip>|<port>} every few seconds and gets
+     * {@code HEARTBEAT_ACK|<leaseMs>}, or {@code HEARTBEAT_UNKNOWN} if its lease already expired (or the tracker
+     * never saw it), which tells it to REGISTER again. Renewing is a map lookup, so it runs on the event loop.
+     */
+    private void startHeartbeatServer() throws Exception {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(workerGroup)
+                .channel(NioDatagramChannel.class)
+                .handler(new HeartbeatHandler(knownPeers));
+
+        bootstrap.bind(Config.TRACKER_HEARTBEAT_PORT).sync();
+        logInfo("[TRACKER]: Heartbeat server started on UDP " + Config.TRACKER_HEARTBEAT_PORT + " - " + getCurrentTime());
     }
 
-    private void handleSSLConnection(SSLSocket sslSocket) {
-        try {
-            sslSocket.startHandshake();
-            logInfo("[TRACKER]: SSL handshake completed with " + sslSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
-
-            // Basic SSL handling - treat as blocking I/O for simplicity
-            Scanner scanner = new Scanner(sslSocket.getInputStream());
-            PrintWriter writer = new PrintWriter(sslSocket.getOutputStream(), true);
+    private String processEnrollmentRequest(String rawRequest) {
+        logInfo("[TRACKER-ENROLL]: Received raw data length: " + rawRequest.length() + " on " + getCurrentTime());
+        logInfo("[TRACKER-ENROLL]: Raw request: " + rawRequest);
 
-            while (scanner.hasNextLine()) {
-                String request = scanner.nextLine().trim();
-                logInfo("[TRACKER]: SSL Received request: " + request + " from " + sslSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
+        if (rawRequest.isEmpty()) {
+            return "CERT_ERROR|Empty request received.";
+        } else if (rawRequest.startsWith("CERT_REQUEST|")) {
+            // Tách phần payload (CSR) ra khỏi command
+            String escapedCsrPem = rawRequest.substring("CERT_REQUEST|".length());
 
-                String response = processRequest(request);
-                writer.println(response);
-                logInfo("[TRACKER]: SSL Sent response to " + sslSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
-            }
-
-        } catch (Exception e) {
-            logError("[TRACKER]: SSL connection error: " + e.getMessage() + " on " + getCurrentTime(), e);
-        } finally {
-            try {
-                sslSocket.close();
-                logInfo("[TRACKER]: SSL connection closed: " + sslSocket.getRemoteSocketAddress() + " on " + getCurrentTime());
-            } catch (IOException e) {
-                logError("[TRACKER]: SSL socket close error: " + e.getMessage() + " on " + getCurrentTime(), e);
+            if (escapedCsrPem.isEmpty()) {
+                return "CERT_ERROR|Invalid CERT_REQUEST format. CSR is missing.";
             }
+            return processCertificateRequest(escapedCsrPem);
         }
+        return "CERT_ERROR|This port only accepts CERT_REQUEST commands.";
     }
 
     private String processRequest(String request) {
@@ -189,357 +168,356 @@ public class TrackerModel {
             return "Yêu cầu rỗng";
         }
         logInfo("[TRACKER]: Request: " + request);
+        return processRequest(new WireFields.Text(request.split("\\|"))).toText();
+    }
 
-        String[] parts = request.split("\\|");
-        if (request.startsWith(RequestInfor.REGISTER)) {
-            if (parts.length == 4) {
-                return registerPeer(parts);
-            }
-            logInfo("[TRACKER]: Invalid REGISTER request [" + parts.length + "]: " + request + " on " + getCurrentTime());
-            return "Định dạng yêu cầu REGISTER không hợp lệ. Sử dụng: REGISTER|<peerIp>|<peerPort>";
-        } else if (request.startsWith(RequestInfor.SHARE)) {
-            if (parts.length == 5) {
-                return shareFile(parts);
-            }
-            logInfo("[TRACKER]: Invalid SHARE request: " + request + " on " + getCurrentTime());
-            return "Định dạng yêu cầu SHARE không hợp lệ. Sử dụng: SHARE|<fileName>|<peerIp>|<peerPort>";
-        } else if (request.startsWith(RequestInfor.QUERY)) {
-            if (parts.length == 4) {
-                return queryFile(parts);
-            }
-            logInfo("[TRACKER]: Invalid QUERY request: " + request + " on " + getCurrentTime());
-            return "Định dạng yêu cầu QUERY không hợp lệ. Sử dụng: QUERY|<fileName>";
-        } else if (request.startsWith(RequestInfor.UNSHARED_FILE)) {
-            if (parts.length == 2) {
-                return unshareFile(parts);
-            }
-        } else if (request.startsWith(RequestInfor.REFRESH)) {
-            if (parts.length == 3) {
-                String peerIp = parts[1];
-                int peerPort = Integer.parseInt(parts[2]);
-                return sendShareList(new PeerInfo(peerIp, peerPort), true);
-            }
-        } else if (request.startsWith(RequestInfor.GET_PEERS)) {
-            if (parts.length == 4) {
-                String fileHash = parts[1];
-                String peerIp = parts[2];
-                int peerPort = Integer.parseInt(parts[3]);
-                return sendPeerList(fileHash, new PeerInfo(peerIp, peerPort));
-            }
-        } else if (request.startsWith(RequestInfor.GET_SHARED_PEERS)) {
-            if (parts.length == 2) {
-                String fileHash = parts[1];
-                return getSharedPeers(fileHash);
-            }
-            logInfo("[TRACKER]: Invalid GET_SHARED_PEERS request: " + request + " on " + getCurrentTime());
-            return "Định dạng yêu cầu GET_SHARED_PEERS không hợp lệ. Sử dụng: GET_SHARED_PEERS|<fileHash>";
-        } else if (request.startsWith(RequestInfor.GET_KNOWN_PEERS)) {
-            return getKnownPeers();
+    /**
+     * Dispatches one request, whichever protocol carried it. Field 0 is the command.
+     * Package-private so TrackerRequestBenchmark can call it without a socket.
+     */
+    WireFrame processRequest(WireFields request) {
+        String command = request.command();
+        int fields = request.size();
+        switch (command) {
+            case RequestInfor.REGISTER:
+                if (fields == 4) {
+                    return registerPeer(request);
+                }
+                logInfo("[TRACKER]: Invalid REGISTER request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply("Định dạng yêu cầu REGISTER không hợp lệ. Sử dụng: REGISTER|<peerIp>|<peerPort>");
+            case RequestInfor.SHARE:
+                if (fields == 5) {
+                    return shareFile(request);
+                }
+                logInfo("[TRACKER]: Invalid SHARE request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply("Định dạng yêu cầu SHARE không hợp lệ. Sử dụng: SHARE|<fileName>|<peerIp>|<peerPort>");
+            case RequestInfor.SYNC:
+                if (fields == 8) {
+                    return syncShares(request);
+                }
+                logInfo("[TRACKER]: Invalid SYNC request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply(LogTag.S_ERROR).add("Định dạng yêu cầu SYNC không hợp lệ. Sử dụng: SYNC|<peerIp>|<peerPort>|<baseVersion>|<version>|<publicAdded>|<privateAdded>|<removed>");
+            case RequestInfor.QUERY:
+                if (fields == 4 || fields == 6) {
+                    return queryFile(request);
+                }
+                logInfo("[TRACKER]: Invalid QUERY request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply("Định dạng yêu cầu QUERY không hợp lệ. Sử dụng: QUERY|<fileName>|<peerIp>|<peerPort>[|<limit>|<offset>]");
+            case RequestInfor.UNSHARED_FILE:
+                if (fields == 2) {
+                    return unshareFile(request);
+                }
+                break;
+            case RequestInfor.REFRESH:
+                if (fields == 3) {
+                    String peerIp = request.text(1);
+                    int peerPort = Integer.parseInt(request.text(2));
+                    return sendShareList(new PeerInfo(peerIp, peerPort), true);
+                }
+                break;
+            case RequestInfor.GET_PEERS:
+                if (fields == 4) {
+                    String fileHash = request.text(1);
+                    String peerIp = request.text(2);
+                    int peerPort = Integer.parseInt(request.text(3));
+                    return sendPeerList(fileHash, new PeerInfo(peerIp, peerPort));
+                }
+                break;
+            case RequestInfor.GET_SHARED_PEERS:
+                if (fields == 2) {
+                    return getSharedPeers(request.text(1));
+                }
+                logInfo("[TRACKER]: Invalid GET_SHARED_PEERS request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply("Định dạng yêu cầu GET_SHARED_PEERS không hợp lệ. Sử dụng: GET_SHARED_PEERS|<fileHash>");
+            case RequestInfor.GET_KNOWN_PEERS:
+                return getKnownPeers();
+            case RequestInfor.ANNOUNCE:
+                if (fields == 5) {
+                    return announceDownload(request);
+                }
+                logInfo("[TRACKER]: Invalid ANNOUNCE request [" + fields + "] on " + getCurrentTime());
+                return WireFrame.reply("Định dạng yêu cầu ANNOUNCE không hợp lệ. Sử dụng: ANNOUNCE|<fileHash>|<peerIp>|<peerPort>|<state>");
+            default:
+                break;
         }
-        logInfo("[TRACKER]: Unkhown command: " + request + " on " + getCurrentTime());
-        return "Lệnh không xác định";
+        logInfo("[TRACKER]: Unkhown command: " + command + " [" + fields + "] on " + getCurrentTime());
+        return WireFrame.reply("Lệnh không xác định");
     }
 
-    private String sendPeerList(String fileHash, PeerInfo requester) {
+    private WireFrame sendPeerList(String fileHash, PeerInfo requester) {
         Set<PeerInfo> peers = new HashSet<>();
-        publicFiles.values().forEach(fileInfos -> fileInfos.forEach(fileInfo -> {
-            if (fileInfo.getFileHash().equals(fileHash)) {
-                peers.add(fileInfo.getPeerInfo());
+        boolean hasAccess = false;
+        boolean isPublic = false;
+        Set<PeerInfo> allowedPeers = new HashSet<>(); // ACL the requester must enforce while it serves a partial copy
+        for (FileInfo fileInfo : fileIndex.getPublicOwners(fileHash)) {
+            peers.add(fileInfo.getPeerInfo());
+            hasAccess = true;
+            isPublic = true;
+        }
+
+        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : fileIndex.getPrivateEntries(fileHash).entrySet()) {
+            if (entry.getValue().contains(requester)) {
+                peers.add(entry.getKey().getPeerInfo());
+                allowedPeers.addAll(entry.getValue());
+                hasAccess = true;
             }
-        }));
+        }
 
-        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateSharedFiles.entrySet()) {
-            FileInfo fileInfo = entry.getKey();
-            if (fileInfo.getFileHash().equals(fileHash)) {
-                Set<PeerInfo> peerInfos = entry.getValue();
-                if (peerInfos.contains(requester)) {
-                    peers.add(fileInfo.getPeerInfo());
+        // Peers still downloading the file can serve the chunks they already have, but only
+        // to requesters that could fetch it from a full seeder anyway.
+        Set<PeerInfo> downloaders = partialPeers.get(fileHash);
+        if (hasAccess && downloaders != null) {
+            for (PeerInfo downloader : downloaders) {
+                if (!downloader.equals(requester)) {
+                    peers.add(downloader);
                 }
             }
         }
 
         if (peers.isEmpty()) {
             logInfo("[TRACKER]: No peers found for file hash: " + fileHash + " on " + getCurrentTime());
-            return RequestInfor.NOT_FOUND + "|No peers found for file hash: " + fileHash;
+            return WireFrame.reply(RequestInfor.NOT_FOUND).add("No peers found for file hash: " + fileHash);
         }
 
-        Type setType = new TypeToken<Set<PeerInfo>>() {
-        }.getType();
-        Gson gson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-        String peersJson = gson.toJson(peers, setType);
         logInfo("[TRACKER]: Sending peer list for file hash: " + fileHash + " on " + getCurrentTime());
-        return RequestInfor.GET_PEERS + "|" + peers.size() + "|" + peersJson;
+        WireFrame reply = WireFrame.reply(RequestInfor.GET_PEERS).add(peers.size()).addJson(JsonCodec.PEER_GSON, peers, JsonCodec.PEER_SET_TYPE);
+        return isPublic ? reply.add(RequestInfor.ACCESS_PUBLIC) : reply.addJson(JsonCodec.PEER_GSON, allowedPeers, JsonCodec.PEER_SET_TYPE);
     }
 
-    private String unshareFile(String[] parts) {
-        Type fileInfoType = new TypeToken<FileInfo>() {
-        }.getType();
-        Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter()).create();
-        FileInfo fileInfo = gson.fromJson(parts[1], fileInfoType);
-        Set<FileInfo> fileInfos = publicFiles.get(fileInfo.getFileName());
-        if (fileInfos != null) {
-            fileInfos.remove(fileInfo);
-            if (fileInfos.isEmpty()) {
-                publicFiles.remove(fileInfo.getFileName());
-            }
+    private WireFrame announceDownload(WireFields request) {
+        String fileHash = request.text(1);
+        PeerInfo peerInfo = new PeerInfo(request.text(2), Integer.parseInt(request.text(3)));
+        String state = request.text(4);
+        if (state.equals(RequestInfor.ANNOUNCE_STARTED)) {
+            partialPeers.computeIfAbsent(fileHash, k -> ConcurrentHashMap.newKeySet()).add(peerInfo);
+        } else {
+            partialPeers.computeIfPresent(fileHash, (k, downloaders) -> {
+                downloaders.remove(peerInfo);
+                return downloaders.isEmpty() ? null : downloaders;
+            });
         }
-        privateSharedFiles.remove(fileInfo);
-
-        logInfo("[TRACKER]: File " + fileInfo.getFileName() + " unshared by " + fileInfo.getPeerInfo().toString() + " on " + getCurrentTime());
-        logInfo(publicFiles.toString());
-        logInfo(privateSharedFiles.toString());
-        return LogTag.S_SUCCESS;
+        logInfo("[TRACKER]: ANNOUNCE " + state + " for file hash " + fileHash + " from " + peerInfo + " on " + getCurrentTime());
+        return WireFrame.reply(RequestInfor.ANNOUNCED);
     }
 
-    private String queryFile(String[] parts) {
-        String keyword = parts[1];
-        String peerIp = parts[2];
-        int peerPort = Integer.parseInt(parts[3]);
-
-        Set<FileInfo> resultFiles = new HashSet<>();
-        publicFiles.values().forEach(fileInfos -> fileInfos.forEach(fileInfo -> {
-            if (fileInfo.getFileName().toLowerCase().contains(keyword.toLowerCase())) {
-                resultFiles.add(fileInfo);
+    /**
+     * SYNC|peerIp|peerPort|baseVersion|version|publicAdded|privateAdded|removed -> SYNCED|version
+     * Applies a peer's share delta if baseVersion is the version last applied for it, otherwise answers
+     * SYNC_MISMATCH|currentVersion so the peer sends a snapshot. A negative baseVersion is a snapshot: it
+     * replaces every file of the peer. Entries owned by another peer are ignored.
+     */
+    private WireFrame syncShares(WireFields request) {
+        PeerInfo owner = new PeerInfo(request.text(1), Integer.parseInt(request.text(2)));
+        long baseVersion = Long.parseLong(request.text(3));
+        long version = Long.parseLong(request.text(4));
+
+        int added = 0;
+        int removed = 0;
+        synchronized (shareVersions) {
+            long current = shareVersions.getOrDefault(owner, 0L);
+            if (baseVersion >= 0 && (baseVersion == 0 || baseVersion != current)) {
+                logInfo("[TRACKER]: SYNC from " + owner + " based on version " + baseVersion + ", have " + current + " on " + getCurrentTime());
+                return WireFrame.reply(RequestInfor.SYNC_MISMATCH).add(current);
             }
-        }));
 
-        PeerInfo requester = new PeerInfo(peerIp, peerPort);
-        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateSharedFiles.entrySet()) {
-            FileInfo fileInfo = entry.getKey();
-            if (fileInfo.getFileName().toLowerCase().contains(keyword.toLowerCase())) {
-                Set<PeerInfo> peerInfos = entry.getValue();
-                if (peerInfos.contains(requester)) {
-                    resultFiles.add(fileInfo);
+            List<FileInfo> publicAdded = request.json(5, JsonCodec.FILE_GSON, JsonCodec.FILE_LIST_TYPE);
+            Map<FileInfo, Set<PeerInfo>> privateAdded = request.json(6, JsonCodec.FILE_GSON, JsonCodec.PRIVATE_FILE_MAP_TYPE);
+            List<FileInfo> removedFiles = request.json(7, JsonCodec.FILE_GSON, JsonCodec.FILE_LIST_TYPE);
+
+            if (baseVersion < 0) {
+                fileIndex.removeOwnedBy(owner);
+            } else if (removedFiles != null) {
+                for (FileInfo fileInfo : removedFiles) {
+                    if (owner.equals(fileInfo.getPeerInfo())) {
+                        fileIndex.remove(fileInfo);
+                        removed++;
+                    }
+                }
+            }
+            if (publicAdded != null) {
+                for (FileInfo fileInfo : publicAdded) {
+                    if (owner.equals(fileInfo.getPeerInfo())) {
+                        fileIndex.addPublic(fileInfo);
+                        added++;
+                    }
                 }
             }
+            if (privateAdded != null) {
+                for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateAdded.entrySet()) {
+                    if (owner.equals(entry.getKey().getPeerInfo())) {
+                        fileIndex.putPrivate(entry.getKey(), entry.getValue());
+                        added++;
+                    }
+                }
+            }
+            shareVersions.put(owner, version);
         }
+        logInfo("[TRACKER]: SYNC " + (baseVersion < 0 ? "snapshot" : "delta") + " from " + owner + ": +" + added + " -" + removed
+                + ", version " + version + " on " + getCurrentTime());
+        return WireFrame.reply(RequestInfor.SYNCED).add(version);
+    }
+
+    private WireFrame unshareFile(WireFields request) {
+        FileInfo fileInfo = request.json(1, JsonCodec.FILE_GSON, FileInfo.class);
+        fileIndex.remove(fileInfo);
+        shareVersions.remove(fileInfo.getPeerInfo()); // Thay đổi ngoài SYNC: lần SYNC sau phải gửi snapshot
+
+        logInfo("[TRACKER]: File " + fileInfo.getFileName() + " unshared by " + fileInfo.getPeerInfo().toString() + " on " + getCurrentTime());
+        logInfo(fileIndex.getPublicFiles().toString());
+        logInfo(fileIndex.getPrivateSharedFiles().toString());
+        return WireFrame.reply(LogTag.S_SUCCESS);
+    }
+
+    /**
+     * QUERY|keyword|peerIp|peerPort[|limit|offset] -> QUERY|count|file'size'hash'ip'port,...|total
+     * Results come from the name index in a stable order; limit is capped at {@link Config#QUERY_MAX_RESULTS}.
+     */
+    private WireFrame queryFile(WireFields request) {
+        String keyword = request.text(1);
+        String peerIp = request.text(2);
+        int peerPort = Integer.parseInt(request.text(3));
+        int limit = request.size() > 4 ? Integer.parseInt(request.text(4)) : Config.QUERY_MAX_RESULTS;
+        int offset = request.size() > 5 ? Integer.parseInt(request.text(5)) : 0;
+        limit = Math.max(0, Math.min(limit, Config.QUERY_MAX_RESULTS));
+        offset = Math.max(0, offset);
 
-        List<FileInfo> files = new ArrayList<>(resultFiles);
-        logInfo("[TRACKER]: QUERY for file containing \"" + keyword + "\": return peers " + files + " on " + getCurrentTime());
-        StringBuilder response = new StringBuilder(RequestInfor.QUERY + "|" + files.size() + "|");
+        PeerInfo requester = new PeerInfo(peerIp, peerPort);
+        FileIndex.SearchPage page = fileIndex.search(keyword, requester, offset, limit);
+        List<FileInfo> files = page.files();
+        logInfo("[TRACKER]: QUERY for file containing \"" + keyword + "\": " + files.size() + " of " + page.total() + " matches on " + getCurrentTime());
+
+        WireFrame response = WireFrame.reply(RequestInfor.QUERY).add(files.size());
         if (files.isEmpty()) {
             logInfo("[TRACKER]: No peers found for file containing \"" + keyword + "\" on " + getCurrentTime());
-            return response + "No files found.";
+            return response.add("No files found.");
         }
 
-        for (FileInfo file : files) {
-            response.append(file.getFileName()).append("'").append(file.getFileSize()).append("'").append(file.getFileHash()).append("'").append(file.getPeerInfo().getIp()).append("'").append(file.getPeerInfo().getPort()).append(Config.LIST_SEPARATOR);
-        }
-        if (response.toString().endsWith(Config.LIST_SEPARATOR)) {
-            response = new StringBuilder(response.substring(0, response.length() - Config.LIST_SEPARATOR.length()));
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            FileInfo file = files.get(i);
+            if (i > 0) {
+                list.append(Config.LIST_SEPARATOR);
+            }
+            list.append(file.getFileName()).append('\'').append(file.getFileSize()).append('\'').append(file.getFileHash())
+                    .append('\'').append(file.getPeerInfo().getIp()).append('\'').append(file.getPeerInfo().getPort());
         }
-        response.append("\n");
-        return response.toString();
+        return response.add(list).add(page.total());
     }
 
-    private String shareFile(String[] parts) {
-        int publicCount = Integer.parseInt(parts[1]);
-        int privateCount = Integer.parseInt(parts[2]);
+    private WireFrame shareFile(WireFields request) {
+        int publicCount = Integer.parseInt(request.text(1));
+        int privateCount = Integer.parseInt(request.text(2));
         if (publicCount < 0 || privateCount < 0) {
             logInfo("[TRACKER]: Invalid counts in SHARE: publicCount=" + publicCount + ", privateCount=" + privateCount + " on " + getCurrentTime());
-            return "Số lượng chia sẻ không hợp lệ.";
+            return WireFrame.reply("Số lượng chia sẻ không hợp lệ.");
         }
-        Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter())
-                .enableComplexMapKeySerialization().create();
         if (publicCount > 0) {
-            Type listType = new TypeToken<List<FileInfo>>() {
-            }.getType();
-            List<FileInfo> publicFileInfos = gson.fromJson(parts[3], listType);
+            List<FileInfo> publicFileInfos = request.json(3, JsonCodec.FILE_GSON, JsonCodec.FILE_LIST_TYPE);
             for (FileInfo fileInfo : publicFileInfos) {
-                publicFiles.computeIfAbsent(fileInfo.getFileName(), k -> ConcurrentHashMap.newKeySet()).add(fileInfo);
+                fileIndex.addPublic(fileInfo);
+                shareVersions.remove(fileInfo.getPeerInfo());
             }
         }
 
         if (privateCount > 0) {
-            Type mapType = new TypeToken<Map<FileInfo, Set<PeerInfo>>>() {
-            }.getType();
-            Map<FileInfo, Set<PeerInfo>> privateFileInfos = gson.fromJson(parts[4], mapType);
-            privateSharedFiles.putAll(privateFileInfos);
+            Map<FileInfo, Set<PeerInfo>> privateFileInfos = request.json(4, JsonCodec.FILE_GSON, JsonCodec.PRIVATE_FILE_MAP_TYPE);
+            privateFileInfos.forEach((fileInfo, allowedPeers) -> {
+                fileIndex.putPrivate(fileInfo, allowedPeers);
+                shareVersions.remove(fileInfo.getPeerInfo());
+            });
         }
         logInfo("[TRACKER]: SHARE processed: publicCount=" + publicCount + ", privateCount=" + privateCount + " on " + getCurrentTime());
-        return LogTag.S_SUCCESS + "|Files shared successfully.";
+        return WireFrame.reply(LogTag.S_SUCCESS).add("Files shared successfully.");
     }
 
-    private String registerPeer(String[] parts) {
-        if (parts.length != 4) {
-            logInfo("[TRACKER]: Invalid REGISTER request format: expected at least 6 parts, got " + parts.length + " on " + getCurrentTime());
-            return LogTag.S_INVALID;
+    private WireFrame registerPeer(WireFields request) {
+        if (request.size() != 4) {
+            logInfo("[TRACKER]: Invalid REGISTER request format: expected 4 fields, got " + request.size() + " on " + getCurrentTime());
+            return WireFrame.reply(LogTag.S_INVALID);
         }
 
-        Type peerType = new TypeToken<PeerInfo>() {
-        }.getType();
-        Gson peerGson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-        PeerInfo registeringPeer = peerGson.fromJson(parts[1], peerType);
+        PeerInfo registeringPeer = request.json(1, JsonCodec.PEER_GSON, PeerInfo.class);
 
-        knownPeers.add(registeringPeer);
+        if (knownPeers.touch(registeringPeer)) {
+            store.logAddPeer(registeringPeer);
+        }
+        shareVersions.remove(registeringPeer);
         logInfo("[TRACKER]: Peer registered: " + registeringPeer.getIp() + " on " + getCurrentTime());
 
         // Deserialize the data structures
         try {
-            // Assuming parts[3] is publicFileToPeers JSON, parts[4] privateSharedFile JSON, parts[5] selectiveSharedFiles JSON
-            // For simplicity, we'll just log them for now
-            String publicFileToPeersJson = parts[2];
-            String privateSharedFileJson = parts[3];
-
-            logInfo("[TRACKER]: Received publicFileToPeers: " + publicFileToPeersJson + " on " + getCurrentTime());
-            logInfo("[TRACKER]: Received privateSharedFile: " + privateSharedFileJson + " on " + getCurrentTime());
-
-            Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter())
-                    .enableComplexMapKeySerialization().create();
-
-            Type publicType = new TypeToken<Map<String, FileInfo>>() {
-            }.getType();
-            Map<String, FileInfo> receivedPublicFileToPeers = gson.fromJson(publicFileToPeersJson, publicType);
-
-            Type privateType = new TypeToken<Map<FileInfo, Set<PeerInfo>>>() {
-            }.getType();
-            Map<FileInfo, Set<PeerInfo>> receivedPrivateSharedFile = gson.fromJson(privateSharedFileJson, privateType);
+            // Field 2 is the public files JSON, field 3 the private files with their allowed peers
+            Map<String, FileInfo> receivedPublicFileToPeers = request.json(2, JsonCodec.FILE_GSON, JsonCodec.PUBLIC_FILE_MAP_TYPE);
+            Map<FileInfo, Set<PeerInfo>> receivedPrivateSharedFile = request.json(3, JsonCodec.FILE_GSON, JsonCodec.PRIVATE_FILE_MAP_TYPE);
 
             if (receivedPublicFileToPeers != null) {
                 for (FileInfo fileInfo : receivedPublicFileToPeers.values()) {
-                    publicFiles.putIfAbsent(fileInfo.getFileName(), ConcurrentHashMap.newKeySet());
-                    publicFiles.get(fileInfo.getFileName()).add(fileInfo);
+                    fileIndex.addPublic(fileInfo);
                 }
             }
             if (receivedPrivateSharedFile != null) {
-                privateSharedFiles.putAll(receivedPrivateSharedFile);
+                receivedPrivateSharedFile.forEach(fileIndex::putPrivate);
             }
-            logInfo("[TRACKER]: Updated data structures from peer " + registeringPeer.getIp() + " on " + getCurrentTime());
+            logInfo("[TRACKER]: Updated data structures from peer " + registeringPeer.getIp() + ": "
+                    + (receivedPublicFileToPeers != null ? receivedPublicFileToPeers.size() : 0) + " public, "
+                    + (receivedPrivateSharedFile != null ? receivedPrivateSharedFile.size() : 0) + " private files on " + getCurrentTime());
         } catch (Exception e) {
             logInfo("[TRACKER]: Error processing REGISTER data structures: " + e.getMessage() + " on " + getCurrentTime());
         }
 
-        String shareListResponse = sendShareList(registeringPeer, false);
-        if (!shareListResponse.startsWith(RequestInfor.SHARED_LIST)) {
-            return RequestInfor.REGISTERED;
+        WireFrame shareListResponse = sendShareList(registeringPeer, false);
+        if (!shareListResponse.command().equals(RequestInfor.SHARED_LIST)) {
+            return WireFrame.reply(RequestInfor.REGISTERED);
         }
         return shareListResponse;
     }
 
 
-    private void pingPeers() {
-        try (DatagramChannel channel = DatagramChannel.open()) {
-            channel.configureBlocking(false);
-            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
-            channel.socket().setSoTimeout(Config.SOCKET_TIMEOUT_MS);
-
-            for (int i = 0; i < 3; i++) {
-                String pingMessage = RequestInfor.PING;
-                ByteBuffer sendBuffer = ByteBuffer.wrap(pingMessage.getBytes());
-
-                InetSocketAddress broadcastAddr = new InetSocketAddress(Config.BROADCAST_IP, Config.PEER_PORT);
-                channel.send(sendBuffer, broadcastAddr);
-                logInfo("[TRACKER]: Sent PING broadcast to " + Config.BROADCAST_IP + ":" + Config.PEER_PORT);
-
-                Set<PeerInfo> alivePeers = ConcurrentHashMap.newKeySet();
-                long startTime = System.currentTimeMillis();
-
-                ByteBuffer recvBuffer = ByteBuffer.allocate(1024);
-
-                while (System.currentTimeMillis() - startTime < Config.SOCKET_TIMEOUT_MS) {
-                    recvBuffer.clear();
-                    InetSocketAddress responder = (InetSocketAddress) channel.receive(recvBuffer);
-
-                    if (responder != null) {
-                        recvBuffer.flip();
-                        String response = new String(recvBuffer.array(), 0, recvBuffer.limit()).trim();
-
-                        if (response.startsWith(RequestInfor.PONG)) {
-                            String[] parts = response.split("\\|", 2);
-                            String username = parts.length > 1 ? parts[1] : "unknown";
-
-                            PeerInfo peer = new PeerInfo(responder.getAddress().getHostAddress(), responder.getPort(), username);
-                            alivePeers.add(peer);
-
-                            logInfo("[TRACKER]: Received PONG from " + responder.getAddress().getHostAddress()
-                                    + " (" + username + ") at " + getCurrentTime());
-                        }
-                    }
-
-                    Thread.sleep(50);
-                }
-
-                updateKnownPeers(alivePeers);
-                logInfo("[TRACKER]: Ping round " + (i + 1) + " completed. Alive peers: " + alivePeers.size()
-                        + " on " + getCurrentTime());
-            }
-
-        } catch (IOException | InterruptedException e) {
-            logError("[TRACKER]: Ping error: " + e.getMessage() + " on " + getCurrentTime(), e);
-        }
-    }
-
-
-    private void updateKnownPeers(Set<PeerInfo> alivePeers) {
-        synchronized (this) {
-            knownPeers.retainAll(alivePeers);
-            knownPeers.addAll(alivePeers);
-            logInfo("[TRACKER]: Updated known peers: " + knownPeers + " on " + getCurrentTime());
-
-            for (Map.Entry<String, Set<FileInfo>> entry : publicFiles.entrySet()) {
-                entry.getValue().removeIf(fileInfo -> !knownPeers.contains(fileInfo.getPeerInfo()));
-            }
-
-            for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateSharedFiles.entrySet()) {
-                if (!knownPeers.contains(entry.getKey().getPeerInfo())) {
-                    privateSharedFiles.remove(entry.getKey());
-                } else {
-                    entry.getValue().retainAll(knownPeers);
-                }
-            }
-        }
+    /**
+     * Called by {@link PeerTable} when a peer's lease runs out: removes the peer and everything that refers to it.
+     */
+    private void onPeerExpired(PeerInfo peer) {
+        store.logRemovePeers(List.of(peer));
+        fileIndex.removePeer(peer);
+        shareVersions.remove(peer);
+        partialPeers.values().forEach(downloaders -> downloaders.remove(peer));
+        partialPeers.values().removeIf(Set::isEmpty);
+        logInfo("[TRACKER]: Lease expired for " + peer + ", " + knownPeers.size() + " peers left on " + getCurrentTime());
     }
 
-    private String getKnownPeers() {
+    private WireFrame getKnownPeers() {
         if (knownPeers.isEmpty()) {
             logInfo("[TRACKER]: No known peers found on " + getCurrentTime());
-            return RequestInfor.NOT_FOUND + "|No known peers found";
+            return WireFrame.reply(RequestInfor.NOT_FOUND).add("No known peers found");
         }
-        Type setType = new TypeToken<Set<PeerInfo>>() {
-        }.getType();
-        Gson gson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-        String knownPeersJson = gson.toJson(knownPeers, setType);
+        Set<PeerInfo> snapshot = knownPeers.snapshot();
 
         logInfo("[TRACKER]: Sending known peers list on " + getCurrentTime());
-        return RequestInfor.GET_KNOWN_PEERS + "|" + knownPeers.size() + "|" + knownPeersJson;
+        return WireFrame.reply(RequestInfor.GET_KNOWN_PEERS).add(snapshot.size()).addJson(JsonCodec.PEER_GSON, snapshot, JsonCodec.PEER_SET_TYPE);
     }
 
-    private String getSharedPeers(String fileHash) {
+    private WireFrame getSharedPeers(String fileHash) {
         Set<PeerInfo> peers = new HashSet<>();
-        publicFiles.values().forEach(fileInfos -> fileInfos.forEach(fileInfo -> {
-            if (fileInfo.getFileHash().equals(fileHash)) {
-                peers.add(fileInfo.getPeerInfo());
-            }
-        }));
-        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateSharedFiles.entrySet()) {
-            FileInfo fileInfo = entry.getKey();
-            if (fileInfo.getFileHash().equals(fileHash)) {
-                peers.addAll(entry.getValue());
-            }
+        for (FileInfo fileInfo : fileIndex.getPublicOwners(fileHash)) {
+            peers.add(fileInfo.getPeerInfo());
+        }
+        for (Set<PeerInfo> allowedPeers : fileIndex.getPrivateEntries(fileHash).values()) {
+            peers.addAll(allowedPeers);
         }
         if (peers.isEmpty()) {
             logInfo("[TRACKER]: No selective peers found for file hash: " + fileHash + " on " + getCurrentTime());
-            return RequestInfor.NOT_FOUND + "|No selective peers found for file hash: " + fileHash;
+            return WireFrame.reply(RequestInfor.NOT_FOUND).add("No selective peers found for file hash: " + fileHash);
         }
 
-        Type setType = new TypeToken<Set<PeerInfo>>() {
-        }.getType();
-        Gson gson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-        String peersJson = gson.toJson(peers, setType);
-
         logInfo("[TRACKER]: Sending selective peer list for file hash: " + fileHash + " on " + getCurrentTime());
 
-        return RequestInfor.GET_SHARED_PEERS + "|" + peers.size() + "|" + peersJson;
+        return WireFrame.reply(RequestInfor.GET_SHARED_PEERS).add(peers.size()).addJson(JsonCodec.PEER_GSON, peers, JsonCodec.PEER_SET_TYPE);
     }
 
     String getCurrentTime() {
         return LocalDateTime.now().format(formatter);
     }
 
-    void addKnownPeer(PeerInfo peer) {
-        knownPeers.add(peer);
-    }
-
     /**
      * Process certificate signing request from a peer
      * Acts as the Intermediate Certificate Authority (CA)
@@ -560,16 +538,16 @@ public class TrackerModel {
         }
     }
 
-    String sendShareList(PeerInfo peerInfo, boolean isRefresh) {
+    WireFrame sendShareList(PeerInfo peerInfo, boolean isRefresh) {
         Set<FileInfo> filesToSend = new HashSet<>();
 
         // Add all public shared files
-        for (Set<FileInfo> fileInfos : publicFiles.values()) {
+        for (Set<FileInfo> fileInfos : fileIndex.getPublicFiles().values()) {
             filesToSend.addAll(fileInfos);
         }
 
 
-        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateSharedFiles.entrySet()) {
+        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : fileIndex.getPrivateSharedFiles().entrySet()) {
             FileInfo fileInfo = entry.getKey();
             Set<PeerInfo> allowedPeers = entry.getValue();
             if (allowedPeers.contains(peerInfo)) {
@@ -579,16 +557,154 @@ public class TrackerModel {
 
         if (filesToSend.isEmpty()) {
             logInfo("[TRACKER]: No shared files to send to " + peerInfo.getIp() + "|" + peerInfo.getPort() + " on " + getCurrentTime());
-            return RequestInfor.FILE_NOT_FOUND;
+            return WireFrame.reply(RequestInfor.FILE_NOT_FOUND);
         }
 
-        Type setType = new TypeToken<Set<FileInfo>>() {
-        }.getType();
-        Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter()).create();
-
-        String peers = gson.toJson(filesToSend, setType);
         logInfo("[TRACKER]: Sending share list (" + filesToSend.size() + " files) to " + peerInfo.getIp() + "|" + peerInfo.getPort() + " on " + getCurrentTime());
-        return (isRefresh ? RequestInfor.REFRESHED : RequestInfor.SHARED_LIST) + "|" + filesToSend.size() + "|" + peers;
+        return WireFrame.reply(isRefresh ? RequestInfor.REFRESHED : RequestInfor.SHARED_LIST)
+                .add(filesToSend.size())
+                .addJson(JsonCodec.FILE_GSON, filesToSend, JsonCodec.FILE_SET_TYPE);
     }
 
+    /**
+     * Handles one main-port connection. Requests run on {@code executor}, one thread per connection, and the frame
+     * is released once its request has been answered.
+     */
+    public static class TrackerHandler extends SimpleChannelInboundHandler<Object> {
+        private final TrackerModel trackerModel;
+        private final EventExecutor executor;
+
+        public TrackerHandler(TrackerModel trackerModel, EventExecutor executor) {
+            super(false);
+            this.trackerModel = trackerModel;
+            this.executor = executor;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            logInfo("[TRACKER]: SSL connection accepted from: " + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            logInfo("[TRACKER]: SSL connection closed: " + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+            executor.execute(() -> {
+                try {
+                    handle(ctx, msg);
+                } catch (RuntimeException e) {
+                    exceptionCaught(ctx, e);
+                } finally {
+                    ReferenceCountUtil.release(msg);
+                }
+            });
+        }
+
+        private void handle(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof WireMessage message) {
+                logInfo("[TRACKER]: SSL Received " + message.command() + " frame (" + message.size() + " fields) from "
+                        + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+                WireFrame response = message.getType() == WireFrame.TYPE_REQUEST
+                        ? trackerModel.processRequest(message)
+                        : WireFrame.reply("Lệnh không xác định");
+                // The reply (share lists included) is serialized directly into one pooled buffer
+                ByteBuf out = ctx.alloc().buffer();
+                try {
+                    response.writeTo(out);
+                } catch (RuntimeException e) {
+                    out.release();
+                    throw e;
+                }
+                ctx.writeAndFlush(out);
+            } else {
+                String request = ((String) msg).trim();
+                logInfo("[TRACKER]: SSL Received request: " + request + " from " + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+
+                String response = trackerModel.processRequest(request);
+                ctx.writeAndFlush(response + "\n");
+            }
+            logInfo("[TRACKER]: SSL Sent response to " + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logError("[TRACKER]: SSL connection error: " + cause.getMessage() + " on " + trackerModel.getCurrentTime(), null);
+            ctx.close();
+        }
+    }
+
+    public static class HeartbeatHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+        private final PeerTable knownPeers;
+
+        public HeartbeatHandler(PeerTable knownPeers) {
+            this.knownPeers = knownPeers;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+            String[] parts = packet.content().toString(StandardCharsets.UTF_8).trim().split("\\|");
+            if (parts.length != 3 || !parts[0].equals(RequestInfor.HEARTBEAT)) {
+                return;
+            }
+            PeerInfo peer;
+            try {
+                peer = new PeerInfo(parts[1], Integer.parseInt(parts[2]));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            String reply = knownPeers.renew(peer)
+                    ? RequestInfor.HEARTBEAT_ACK + "|" + Config.PEER_LEASE_MS
+                    : RequestInfor.HEARTBEAT_UNKNOWN;
+            ctx.writeAndFlush(new DatagramPacket(Unpooled.copiedBuffer(reply, StandardCharsets.UTF_8), packet.sender()));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logError("[TRACKER]: Heartbeat error: " + cause.getMessage(), null);
+        }
+    }
+
+    public static class EnrollmentHandler extends SimpleChannelInboundHandler<String> {
+        private final TrackerModel trackerModel;
+        private final EventExecutor executor; // ký chứng chỉ không chạy trên event loop
+        private final StringBuilder request = new StringBuilder();
+
+        public EnrollmentHandler(TrackerModel trackerModel, EventExecutor executor) {
+            this.trackerModel = trackerModel;
+            this.executor = executor;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            logInfo("[TRACKER-ENROLL]: Enrollment connection accepted from: " + ctx.channel().remoteAddress() + " on " + trackerModel.getCurrentTime());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String line) {
+            if (!line.equals("END_OF_REQUEST")) {
+                request.append(line).append("\n");
+                return;
+            }
+
+            String csr = request.toString().trim();
+            request.setLength(0);
+            executor.execute(() -> {
+                String response = trackerModel.processEnrollmentRequest(csr);
+                ctx.writeAndFlush(response + "\nEND_OF_RESPONSE\n").addListener(ChannelFutureListener.CLOSE);
+                logInfo("[TRACKER-ENROLL]: Sent response to " + ctx.channel().remoteAddress());
+            });
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logError("[TRACKER-ENROLL]: Connection error: " + cause.getMessage(), null);
+            ctx.close();
+        }
+    }
 }
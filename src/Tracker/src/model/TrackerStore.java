@@ -0,0 +1,603 @@
+package model;
+
+import utils.Config;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static utils.Log.*;
+
+/**
+ * Keeps the tracker index and the known peers on disk, so a restarted tracker answers from the same state
+ * right away instead of waiting for every peer to register again.
+ * <p>
+ * The state is a binary snapshot split into {@link Config#TRACKER_SNAPSHOT_SHARDS} files, plus an append-only
+ * log of every change since that snapshot. Each log record is {@code [int length][int crc32][op][payload]}; a
+ * torn or corrupt tail (the tracker died mid-write) ends the replay and is cut off. Records are written as
+ * changes happen and forced to disk once a second.
+ * <p>
+ * Snapshots and logs carry a generation: snapshot G holds the state at the moment log G was started. When the
+ * log grows past {@link Config#TRACKER_LOG_COMPACT_BYTES} a background thread starts log G+1, copies the index,
+ * writes snapshot G+1, points {@code CURRENT} at it and deletes older files. Until {@code CURRENT} moves,
+ * a restart still replays snapshot G and logs G and G+1, so a crash during compaction loses nothing.
+ * On start-up the shards are decoded and inserted into the index in parallel. The trigram name index is
+ * built afterwards on the store thread, so the tracker serves as soon as the files are loaded; QUERY scans the
+ * file names until then.
+ */
+public class TrackerStore {
+    private static final int MAGIC = 0x50325054; // "P2PT"
+    private static final int FORMAT_VERSION = 1;
+    private static final String CURRENT = "CURRENT";
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)-(\\d+)\\.bin");
+    private static final Pattern LOG_NAME = Pattern.compile("log-(\\d+)\\.bin");
+
+    private static final byte OP_ADD_PUBLIC = 1;
+    private static final byte OP_PUT_PRIVATE = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final byte OP_REMOVE_OWNER = 4;
+    private static final byte OP_ADD_PEER = 5;
+    private static final byte OP_SET_PEERS = 6; // chỉ còn đọc, log cũ trước khi có lease
+    private static final byte OP_REMOVE_PEERS = 7;
+    private static final byte OP_REMOVE_PEER_FILES = 8;
+
+    private final Path dir;
+    private final FileIndex fileIndex;
+    private final PeerTable knownPeers;
+    private final ScheduledExecutorService executor;
+    private final Object logLock = new Object();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+
+    private long generation;
+    private FileOutputStream logFile;
+    private DataOutputStream log;
+    private long logBytes;
+    private boolean dirty;
+    private boolean compacting;
+
+    public TrackerStore(FileIndex fileIndex, PeerTable knownPeers) {
+        this.dir = Paths.get(Config.TRACKER_STATE_DIR);
+        this.fileIndex = fileIndex;
+        this.knownPeers = knownPeers;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tracker-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the latest snapshot and replays the logs after it, then attaches the store to the index so further
+     * changes are logged.
+     */
+    public void open() throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(dir);
+        fileIndex.deferNameIndex();
+        long snapshotGeneration = readCurrent();
+        int files = snapshotGeneration > 0 ? loadSnapshot(snapshotGeneration) : 0;
+
+        generation = Math.max(snapshotGeneration, 1);
+        int records = 0;
+        long replayedBytes = 0;
+        for (long logGeneration : listGenerations(LOG_NAME, snapshotGeneration)) {
+            Path path = dir.resolve(logName(logGeneration));
+            records += replay(path);
+            replayedBytes += Files.size(path);
+            generation = logGeneration;
+        }
+        openLog(generation);
+        logBytes = replayedBytes; // Mọi log từ snapshot trở đi đều phải replay khi khởi động
+        fileIndex.setStore(this);
+
+        executor.scheduleWithFixedDelay(this::sync, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::sync));
+        logInfo("[TRACKER-STORE]: Loaded " + files + " snapshot entries and " + records + " log records (generation "
+                + generation + ") in " + (System.currentTimeMillis() - start) + " ms");
+        executor.execute(() -> {
+            long indexStart = System.currentTimeMillis();
+            fileIndex.buildNameIndex();
+            logInfo("[TRACKER-STORE]: Name index built in " + (System.currentTimeMillis() - indexStart) + " ms");
+        });
+        maybeCompact();
+    }
+
+    void logAddPublic(FileInfo fileInfo) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_ADD_PUBLIC);
+                writeFile(record, fileInfo);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    void logPutPrivate(FileInfo fileInfo, Set<PeerInfo> allowedPeers) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_PUT_PRIVATE);
+                writeFile(record, fileInfo);
+                writePeers(record, allowedPeers);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    void logRemove(FileInfo fileInfo) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_REMOVE);
+                writeFile(record, fileInfo);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    void logRemoveOwner(PeerInfo owner) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_REMOVE_OWNER);
+                writePeer(record, owner);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    void logRemovePeerFiles(PeerInfo peer) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_REMOVE_PEER_FILES);
+                writePeer(record, peer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    public void logAddPeer(PeerInfo peer) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_ADD_PEER);
+                writePeer(record, peer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    public void logRemovePeers(Collection<PeerInfo> peers) {
+        synchronized (logLock) {
+            try {
+                record.writeByte(OP_REMOVE_PEERS);
+                writePeers(record, peers);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append();
+        }
+    }
+
+    /**
+     * Writes the record built in {@link #record} to the log. Caller holds {@link #logLock}.
+     */
+    private void append() {
+        try {
+            crc.reset();
+            crc.update(recordBuffer.toByteArray(), 0, recordBuffer.size());
+            log.writeInt(recordBuffer.size());
+            log.writeInt((int) crc.getValue());
+            recordBuffer.writeTo(log);
+            log.flush();
+            logBytes += 8 + recordBuffer.size();
+            dirty = true;
+        } catch (IOException e) {
+            logError("[TRACKER-STORE]: Cannot append to the change log: " + e.getMessage(), e);
+        } finally {
+            recordBuffer.reset();
+        }
+        maybeCompact();
+    }
+
+    private void maybeCompact() {
+        synchronized (logLock) {
+            if (compacting || logBytes < Config.TRACKER_LOG_COMPACT_BYTES) {
+                return;
+            }
+            compacting = true;
+        }
+        executor.execute(this::compact);
+    }
+
+    private void compact() {
+        long start = System.currentTimeMillis();
+        long newGeneration;
+        List<FileInfo> publicFiles = new ArrayList<>();
+        Map<FileInfo, Set<PeerInfo>> privateFiles = new HashMap<>();
+        List<PeerInfo> peers;
+        try {
+            // Lock order is fileIndex -> logLock, the same as a logged index change
+            synchronized (fileIndex) {
+                synchronized (logLock) {
+                    newGeneration = generation + 1;
+                    closeLog();
+                    openLog(newGeneration);
+                    generation = newGeneration;
+                }
+                fileIndex.getPublicFiles().values().forEach(publicFiles::addAll);
+                fileIndex.getPrivateSharedFiles().forEach((fileInfo, acl) -> privateFiles.put(fileInfo, new HashSet<>(acl)));
+                peers = new ArrayList<>(knownPeers.snapshot());
+            }
+
+            writeSnapshot(newGeneration, publicFiles, privateFiles, peers);
+            deleteOlderThan(newGeneration);
+            logInfo("[TRACKER-STORE]: Compacted " + (publicFiles.size() + privateFiles.size()) + " entries into generation "
+                    + newGeneration + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            logError("[TRACKER-STORE]: Compaction failed: " + e.getMessage(), e);
+        } finally {
+            synchronized (logLock) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void sync() {
+        synchronized (logLock) {
+            if (!dirty || logFile == null) {
+                return;
+            }
+            try {
+                logFile.getFD().sync();
+                dirty = false;
+            } catch (IOException e) {
+                logError("[TRACKER-STORE]: Cannot sync the change log: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void openLog(long logGeneration) throws IOException {
+        Path path = dir.resolve(logName(logGeneration));
+        logFile = new FileOutputStream(path.toFile(), true);
+        log = new DataOutputStream(new BufferedOutputStream(logFile, 64 * 1024));
+        logBytes = Files.size(path);
+    }
+
+    private void closeLog() throws IOException {
+        log.flush();
+        logFile.getFD().sync();
+        log.close();
+        dirty = false;
+    }
+
+    private void writeSnapshot(long snapshotGeneration, List<FileInfo> publicFiles, Map<FileInfo, Set<PeerInfo>> privateFiles,
+                               List<PeerInfo> peers) throws IOException {
+        int shards = Math.max(1, Config.TRACKER_SNAPSHOT_SHARDS);
+        List<List<FileInfo>> publicShards = new ArrayList<>();
+        List<Map<FileInfo, Set<PeerInfo>>> privateShards = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            publicShards.add(new ArrayList<>());
+            privateShards.add(new HashMap<>());
+        }
+        for (int i = 0; i < publicFiles.size(); i++) {
+            publicShards.get(i % shards).add(publicFiles.get(i));
+        }
+        int index = 0;
+        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateFiles.entrySet()) {
+            privateShards.get(index++ % shards).put(entry.getKey(), entry.getValue());
+        }
+
+        for (int shard = 0; shard < shards; shard++) {
+            Path target = dir.resolve("snapshot-" + snapshotGeneration + "-" + shard + ".bin");
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            FileOutputStream file = new FileOutputStream(tmp.toFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(publicShards.get(shard).size());
+                for (FileInfo fileInfo : publicShards.get(shard)) {
+                    writeFile(out, fileInfo);
+                }
+                out.writeInt(privateShards.get(shard).size());
+                for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateShards.get(shard).entrySet()) {
+                    writeFile(out, entry.getKey());
+                    writePeers(out, entry.getValue());
+                }
+                writePeers(out, shard == 0 ? peers : List.of());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        syncDirectory();
+
+        // CURRENT chỉ trỏ sang thế hệ mới khi mọi shard đã nằm trên đĩa; log cũ chỉ bị xoá sau bước này
+        Path current = dir.resolve(CURRENT);
+        Path tmp = dir.resolve(CURRENT + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(Long.toString(snapshotGeneration).getBytes(StandardCharsets.US_ASCII));
+            out.getFD().sync();
+        }
+        Files.move(tmp, current, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    /**
+     * Makes the renames in the state directory durable. Not every platform can open a directory for fsync
+     * (Windows cannot); there the rename is left to the file system.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logInfo("[TRACKER-STORE]: Cannot fsync state directory " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteOlderThan(long keepGeneration) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher snapshot = SNAPSHOT_NAME.matcher(name);
+                Matcher log = LOG_NAME.matcher(name);
+                if ((snapshot.matches() && Long.parseLong(snapshot.group(1)) < keepGeneration)
+                        || (log.matches() && Long.parseLong(log.group(1)) < keepGeneration)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private long readCurrent() throws IOException {
+        Path current = dir.resolve(CURRENT);
+        if (!Files.exists(current)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(current, StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            logError("[TRACKER-STORE]: Ignoring unreadable " + current, e);
+            return 0;
+        }
+    }
+
+    private List<Long> listGenerations(Pattern pattern, long fromGeneration) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) >= fromGeneration) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Decodes every shard of a snapshot on its own thread, straight into the index.
+     *
+     * @return number of file entries loaded
+     */
+    private int loadSnapshot(long snapshotGeneration) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) == snapshotGeneration) {
+                    shards.add(file);
+                }
+            }
+        }
+
+        ExecutorService loaders = Executors.newFixedThreadPool(Math.max(1, Math.min(shards.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (Path shard : shards) {
+                results.add(loaders.submit(() -> loadShard(shard)));
+            }
+            int total = 0;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    total += results.get(i).get();
+                } catch (ExecutionException e) {
+                    logError("[TRACKER-STORE]: Cannot load snapshot shard " + shards.get(i) + ": " + e.getCause().getMessage(), e);
+                }
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the tracker snapshot");
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    private int loadShard(Path shard) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(shard));
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a tracker snapshot: " + shard);
+            }
+            int publicCount = in.getInt();
+            for (int i = 0; i < publicCount; i++) {
+                fileIndex.loadPublic(readFile(in));
+            }
+            int privateCount = in.getInt();
+            for (int i = 0; i < privateCount; i++) {
+                FileInfo fileInfo = readFile(in);
+                fileIndex.loadPrivate(fileInfo, readPeers(in));
+            }
+            readPeers(in).forEach(knownPeers::touch); // Lease mới: peer phải gửi heartbeat trước khi lease hết hạn
+            return publicCount + privateCount;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated tracker snapshot: " + shard, e);
+        }
+    }
+
+    /**
+     * Applies a log file record by record and cuts off a torn tail.
+     *
+     * @return number of records applied
+     */
+    private int replay(Path path) throws IOException {
+        int records = 0;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            CRC32 check = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > Config.MAX_REQUEST_FRAME_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int expected;
+                try {
+                    expected = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                check.reset();
+                check.update(payload);
+                if ((int) check.getValue() != expected) {
+                    break;
+                }
+                try {
+                    apply(ByteBuffer.wrap(payload));
+                } catch (BufferUnderflowException e) {
+                    break;
+                }
+                valid += 8 + length;
+                records++;
+            }
+        }
+        if (valid < Files.size(path)) {
+            logInfo("[TRACKER-STORE]: Truncating torn tail of " + path + " at " + valid + " bytes");
+            try (FileOutputStream out = new FileOutputStream(path.toFile(), true)) {
+                out.getChannel().truncate(valid);
+            }
+        }
+        return records;
+    }
+
+    private void apply(ByteBuffer in) throws IOException {
+        byte op = in.get();
+        switch (op) {
+            case OP_ADD_PUBLIC -> fileIndex.addPublic(readFile(in));
+            case OP_PUT_PRIVATE -> {
+                FileInfo fileInfo = readFile(in);
+                fileIndex.putPrivate(fileInfo, readPeers(in));
+            }
+            case OP_REMOVE -> fileIndex.remove(readFile(in));
+            case OP_REMOVE_OWNER -> fileIndex.removeOwnedBy(readPeer(in));
+            case OP_ADD_PEER -> knownPeers.touch(readPeer(in));
+            case OP_SET_PEERS -> {
+                Set<PeerInfo> peers = readPeers(in);
+                knownPeers.removeAll(knownPeers.snapshot().stream().filter(peer -> !peers.contains(peer)).toList());
+                peers.forEach(knownPeers::touch);
+            }
+            case OP_REMOVE_PEERS -> knownPeers.removeAll(readPeers(in));
+            case OP_REMOVE_PEER_FILES -> fileIndex.removePeer(readPeer(in));
+            default -> throw new IOException("Unknown log record " + op);
+        }
+    }
+
+    private static String logName(long logGeneration) {
+        return "log-" + logGeneration + ".bin";
+    }
+
+    private static void writeFile(DataOutputStream out, FileInfo fileInfo) throws IOException {
+        writeString(out, fileInfo.getFileName());
+        out.writeLong(fileInfo.getFileSize());
+        writeString(out, fileInfo.getFileHash());
+        writeString(out, fileInfo.getPiecesRoot());
+        writePeer(out, fileInfo.getPeerInfo());
+    }
+
+    private static FileInfo readFile(ByteBuffer in) {
+        String fileName = readString(in);
+        long fileSize = in.getLong();
+        String fileHash = readString(in);
+        String piecesRoot = readString(in);
+        FileInfo fileInfo = new FileInfo(fileName, fileSize, fileHash, readPeer(in));
+        fileInfo.setPiecesRoot(piecesRoot);
+        return fileInfo;
+    }
+
+    private static void writePeers(DataOutputStream out, Collection<PeerInfo> peers) throws IOException {
+        out.writeInt(peers.size());
+        for (PeerInfo peer : peers) {
+            writePeer(out, peer);
+        }
+    }
+
+    private static Set<PeerInfo> readPeers(ByteBuffer in) {
+        int count = in.getInt();
+        Set<PeerInfo> peers = new HashSet<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            peers.add(readPeer(in));
+        }
+        return peers;
+    }
+
+    private static void writePeer(DataOutputStream out, PeerInfo peer) throws IOException {
+        writeString(out, peer.getIp());
+        out.writeInt(peer.getPort());
+        writeString(out, peer.getUsername());
+    }
+
+    private static PeerInfo readPeer(ByteBuffer in) {
+        String ip = readString(in);
+        int port = in.getInt();
+        return new PeerInfo(ip, port, readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
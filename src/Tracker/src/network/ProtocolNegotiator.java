@@ -0,0 +1,83 @@
+package network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * First inbound handler of a server connection. Looks at the first line the client sends: a {@code P2PB/<version>}
+ * preface is answered with the agreed version and switches the channel to {@link WireMessage} frames; anything
+ * else is the legacy text protocol and is decoded as lines. Either way the handler then removes itself and hands
+ * the bytes it has seen to the decoders it installed.
+ */
+public class ProtocolNegotiator extends ByteToMessageDecoder {
+    private static final int MAX_PREFACE_BYTES = 16;
+    private static final byte[] PREFACE = WireFrame.PREFACE_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private final int maxLineBytes;
+    private final int maxFrameBytes;
+
+    public ProtocolNegotiator(int maxLineBytes, int maxFrameBytes) {
+        this.maxLineBytes = maxLineBytes;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int start = in.readerIndex();
+        int prefixLength = Math.min(in.readableBytes(), PREFACE.length);
+        for (int i = 0; i < prefixLength; i++) {
+            if (in.getByte(start + i) != PREFACE[i]) {
+                switchToText(ctx);
+                return;
+            }
+        }
+
+        int lineEnd = in.indexOf(start, in.writerIndex(), (byte) '\n');
+        if (lineEnd < 0) {
+            if (in.readableBytes() > MAX_PREFACE_BYTES) {
+                switchToText(ctx);
+            }
+            return;
+        }
+
+        int clientVersion = WireFrame.parsePreface(in.toString(start, lineEnd - start, StandardCharsets.US_ASCII));
+        if (clientVersion < 1) {
+            switchToText(ctx);
+            return;
+        }
+        in.readerIndex(lineEnd + 1);
+        int version = Math.min(clientVersion, WireFrame.VERSION);
+        ctx.writeAndFlush(Unpooled.copiedBuffer(WireFrame.prefaceLine(version), StandardCharsets.US_ASCII));
+        ctx.pipeline().addAfter(ctx.name(), null, new WireMessageDecoder(maxFrameBytes));
+        ctx.pipeline().remove(this);
+    }
+
+    private void switchToText(ChannelHandlerContext ctx) {
+        ctx.pipeline().addAfter(ctx.name(), null, new StringDecoder(StandardCharsets.UTF_8));
+        ctx.pipeline().addAfter(ctx.name(), null, new LineBasedFrameDecoder(maxLineBytes));
+        ctx.pipeline().remove(this);
+    }
+
+    /**
+     * Splits the stream on the 4-byte length prefix and parses each frame into a {@link WireMessage}.
+     */
+    public static class WireMessageDecoder extends LengthFieldBasedFrameDecoder {
+        public WireMessageDecoder(int maxFrameBytes) {
+            super(maxFrameBytes, 0, 4, 0, 4);
+        }
+
+        @Override
+        protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+            ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+            return frame == null ? null : WireMessage.parse(frame);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package network;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+
+/**
+ * The fields of one request or reply, whichever protocol carried it. Field 0 is the command (or reply status).
+ */
+public interface WireFields {
+    int size();
+
+    String text(int index);
+
+    /**
+     * Decodes a JSON field. Binary frames are parsed straight from the received bytes, without building a String.
+     */
+    <T> T json(int index, Gson gson, Type type);
+
+    default String command() {
+        return size() > 0 ? text(0) : "";
+    }
+
+    /**
+     * Fields of a legacy {@code |}-separated text line.
+     */
+    record Text(String[] parts) implements WireFields {
+        @Override
+        public int size() {
+            return parts.length;
+        }
+
+        @Override
+        public String text(int index) {
+            return parts[index];
+        }
+
+        @Override
+        public <T> T json(int index, Gson gson, Type type) {
+            return gson.fromJson(parts[index], type);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package network;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An outgoing message of the binary tracker/peer protocol.
+ * <p>
+ * A connection opts in by sending the line {@code P2PB/<version>} first; a server that understands it answers
+ * with {@code P2PB/<agreed version>} and both sides then exchange frames
+ * {@code [int length][byte type][short fieldCount]([int fieldLength][field bytes])*}, where length counts the
+ * bytes after itself. Any other first line is handled as the legacy {@code |}-separated text protocol, which
+ * {@link #toText()} still renders for peers that did not negotiate.
+ */
+public final class WireFrame {
+    public static final String PREFACE_PREFIX = "P2PB/";
+    public static final int VERSION = 1;
+    public static final byte TYPE_REQUEST = 1;
+    public static final byte TYPE_REPLY = 2;
+
+    private final byte type;
+    private final List<Object> fields = new ArrayList<>();
+
+    private WireFrame(byte type, String command) {
+        this.type = type;
+        this.fields.add(command);
+    }
+
+    public static WireFrame request(String command) {
+        return new WireFrame(TYPE_REQUEST, command);
+    }
+
+    public static WireFrame reply(String status) {
+        return new WireFrame(TYPE_REPLY, status);
+    }
+
+    public WireFrame add(Object value) {
+        fields.add(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Adds a JSON field that is only serialized when the frame is written, straight into the output buffer.
+     */
+    public WireFrame addJson(Gson gson, Object value, Type valueType) {
+        fields.add(new JsonField(gson, value, valueType));
+        return this;
+    }
+
+    public String command() {
+        return (String) fields.get(0);
+    }
+
+    public String toText() {
+        return fields.stream()
+                .map(field -> field instanceof JsonField json ? json.gson().toJson(json.value(), json.type()) : (String) field)
+                .collect(Collectors.joining("|"));
+    }
+
+    public void writeTo(ByteBuf out) {
+        int frameStart = out.writerIndex();
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeShort(fields.size());
+        for (Object field : fields) {
+            int fieldStart = out.writerIndex();
+            out.writeInt(0);
+            if (field instanceof JsonField json) {
+                try (Writer writer = new OutputStreamWriter(new ByteBufOutputStream(out), StandardCharsets.UTF_8)) {
+                    json.gson().toJson(json.value(), json.type(), writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                out.writeCharSequence((String) field, StandardCharsets.UTF_8);
+            }
+            out.setInt(fieldStart, out.writerIndex() - fieldStart - 4);
+        }
+        out.setInt(frameStart, out.writerIndex() - frameStart - 4);
+    }
+
+    public static String prefaceLine(int version) {
+        return PREFACE_PREFIX + version + "\n";
+    }
+
+    /**
+     * @return the version announced by a preface line, or -1 if the line is not a preface
+     */
+    public static int parsePreface(String line) {
+        if (line == null || !line.startsWith(PREFACE_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(line.substring(PREFACE_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private record JsonField(Gson gson, Object value, Type type) {
+    }
+}
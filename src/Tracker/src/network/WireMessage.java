@@ -0,0 +1,75 @@
+package network;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A received binary frame (see {@link WireFrame}). Fields are located once and read in place from the frame
+ * buffer, which the message owns and releases.
+ */
+public class WireMessage extends DefaultByteBufHolder implements WireFields {
+    private final byte type;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private WireMessage(ByteBuf frame, byte type, int[] offsets, int[] lengths) {
+        super(frame);
+        this.type = type;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Parses a frame without its length prefix. Takes ownership of {@code frame}.
+     */
+    public static WireMessage parse(ByteBuf frame) {
+        try {
+            int index = frame.readerIndex();
+            byte type = frame.getByte(index);
+            int count = frame.getUnsignedShort(index + 1);
+            index += 3;
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                int length = frame.getInt(index);
+                if (length < 0 || index + 4 + length > frame.writerIndex()) {
+                    throw new CorruptedFrameException("Field " + i + " overruns the frame");
+                }
+                offsets[i] = index + 4;
+                lengths[i] = length;
+                index += 4 + length;
+            }
+            return new WireMessage(frame, type, offsets, lengths);
+        } catch (RuntimeException e) {
+            frame.release();
+            throw e instanceof CorruptedFrameException ? e : new CorruptedFrameException("Malformed frame", e);
+        }
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    @Override
+    public String text(int index) {
+        return content().toString(offsets[index], lengths[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T json(int index, Gson gson, Type type) {
+        ByteBuf field = content().slice(offsets[index], lengths[index]);
+        return gson.fromJson(new InputStreamReader(new ByteBufInputStream(field), StandardCharsets.UTF_8), type);
+    }
+}
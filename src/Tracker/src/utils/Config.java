@@ -13,8 +13,16 @@ public interface Config {
     String KEYSTORE_PASSWORD = EnvUtils.getEnv("KEYSTORE_PASSWORD", "p2ppassword");
     int TRACKER_ENROLLMENT_PORT = EnvUtils.getEnvInt("TRACKER_ENROLLMENT_PORT", 9091);
     int SSL_TRACKER_PORT = EnvUtils.getEnvInt("SSL_TRACKER_PORT", 6001);
+    int TRACKER_HEARTBEAT_PORT = EnvUtils.getEnvInt("TRACKER_HEARTBEAT_PORT", 6002);
     int PEER_PORT = EnvUtils.getEnvInt("PEER_PORT", 5000);
     int SOCKET_TIMEOUT_MS = EnvUtils.getEnvInt("SOCKET_TIMEOUT_MS", 5000);
-    String BROADCAST_IP = NetworkUtils.getBroadcastIp();
+    int TRACKER_REQUEST_THREADS = EnvUtils.getEnvInt("TRACKER_REQUEST_THREADS", 10);
+    int MAX_REQUEST_LINE_BYTES = EnvUtils.getEnvInt("MAX_REQUEST_LINE_BYTES", 16 * 1024 * 1024);
+    int MAX_REQUEST_FRAME_BYTES = EnvUtils.getEnvInt("MAX_REQUEST_FRAME_BYTES", 64 * 1024 * 1024);
+    long PEER_LEASE_MS = EnvUtils.getEnvInt("PEER_LEASE_MS", 30_000);
+    int QUERY_MAX_RESULTS = EnvUtils.getEnvInt("QUERY_MAX_RESULTS", 200);
+    String TRACKER_STATE_DIR = EnvUtils.getEnv("TRACKER_STATE_DIR", "tracker_state");
+    int TRACKER_SNAPSHOT_SHARDS = EnvUtils.getEnvInt("TRACKER_SNAPSHOT_SHARDS", 8);
+    long TRACKER_LOG_COMPACT_BYTES = EnvUtils.getEnvInt("TRACKER_LOG_COMPACT_BYTES", 64 * 1024 * 1024);
     String LIST_SEPARATOR = ",";
 }
@@ -4,6 +4,9 @@ public interface RequestInfor {
     String REGISTER = "REGISTER";
     String REGISTERED = "REGISTERED";
     String SHARE = "SHARE";
+    String SYNC = "SYNC";
+    String SYNCED = "SYNCED";
+    String SYNC_MISMATCH = "SYNC_MISMATCH";
     String SEARCH = "SEARCH";
     String QUERY = "QUERY";
     String GET_CHUNK = "GET_CHUNK";
@@ -12,15 +15,23 @@ public interface RequestInfor {
     String PONG = "PONG";
     String SHARED_LIST = "SHARED_LIST";
     String PING = "PING";
+    String HEARTBEAT = "HEARTBEAT";
+    String HEARTBEAT_ACK = "HEARTBEAT_ACK";
+    String HEARTBEAT_UNKNOWN = "HEARTBEAT_UNKNOWN";
     String SHARE_LIST = "LSHARE";
     String UNSHARED_FILE = "UNSHARED_FILE";
     String REFRESH = "REFRESH";
     String REFRESHED = "REFRESHED";
     String GET_PEERS = "GET_PEERS";
+    String ACCESS_PUBLIC = "PUBLIC";
     String NOT_FOUND = "NOT_FOUND";
     String SHARE_TO_PEERS = "SHARE_TO_PEERS";
     String GET_SHARED_PEERS = "GET_SHARED_PEERS";
     String GET_KNOWN_PEERS = "GET_KNOWN_PEERS";
+    String ANNOUNCE = "ANNOUNCE";
+    String ANNOUNCED = "ANNOUNCED";
+    String ANNOUNCE_STARTED = "STARTED";
+    String ANNOUNCE_STOPPED = "STOPPED";
 
     // SSL/TLS Constants
     int SSL_PORT_OFFSET = 1000;
@@ -1,5 +1,8 @@
 package utils;
 
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
@@ -51,31 +54,41 @@ public class SSLUtils {
      * Configure SSL context for the Tracker server
      */
     public static SSLContext createSSLContext() throws Exception {
-        KeyStore keyStore = KeyStore.getInstance("JKS");
-        KeyStore trustStore = KeyStore.getInstance("JKS");
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(createKeyManagerFactory().getKeyManagers(), createTrustManagerFactory().getTrustManagers(), new SecureRandom());
+        return sslContext;
+    }
 
-        // Load keystore and truststore
+    /**
+     * Netty server context for the tracker's TLS ports.
+     *
+     * @param clientAuth REQUIRE on the main port, NONE on the enrollment port (peers have no certificate yet)
+     */
+    public static SslContext createServerSslContext(ClientAuth clientAuth) throws Exception {
+        return SslContextBuilder.forServer(createKeyManagerFactory())
+                .trustManager(createTrustManagerFactory())
+                .clientAuth(clientAuth)
+                .build();
+    }
+
+    private static KeyManagerFactory createKeyManagerFactory() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
         try (FileInputStream keyStoreFile = new FileInputStream(Paths.get(AppPaths.getCertificatePath().toString(), KEYSTORE_NAME).toString())) {
             keyStore.load(keyStoreFile, KEYSTORE_PASSWORD.toCharArray());
         }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+        return keyManagerFactory;
+    }
 
+    private static TrustManagerFactory createTrustManagerFactory() throws Exception {
+        KeyStore trustStore = KeyStore.getInstance("JKS");
         try (FileInputStream trustStoreFile = new FileInputStream(Paths.get(AppPaths.getCertificatePath().toString(), TRUSTSTORE_NAME).toString())) {
             trustStore.load(trustStoreFile, KEYSTORE_PASSWORD.toCharArray());
         }
-
-        // Create key managers
-        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
-
-        // Create trust managers
         TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
         trustManagerFactory.init(trustStore);
-
-        // Create SSL context
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
-
-        return sslContext;
+        return trustManagerFactory;
     }
 
     /**
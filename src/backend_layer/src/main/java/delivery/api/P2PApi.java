@@ -8,6 +8,7 @@ import domain.entity.FileInfo;
 import domain.entity.PeerInfo;
 import domain.entity.ProgressInfo;
 import delivery.dto.CleanupRequest;
+import utils.Config;
 import utils.Log;
 import utils.LogTag;
 
@@ -57,6 +58,8 @@ public class P2PApi implements IP2PApi {
     private Function<String, Boolean> resumeDownloadHandler;
     private TriFunction<String, Integer, List<PeerInfo>, String> sharePrivateFileHandler;
     private Callable<Set<PeerInfo>> getKnownPeersHandler;
+    private final ProgressStream progressStream = new ProgressStream(
+            () -> getProgressHandler == null ? null : getProgressHandler.call(), Config.PROGRESS_STREAM_INTERVAL_MS);
 
     /**
      * Constructor to initialize the P2PApi and start the API server.
@@ -228,6 +231,12 @@ public class P2PApi implements IP2PApi {
             return;
         }
 
+        // GET /api/progress/stream
+        if (method.equals("GET") && parts.length == 4 && parts[3].equals("stream")) {
+            handleProgressStream(exchange);
+            return;
+        }
+
         // POST /api/progress/cleanup
         if (method.equals("POST") && parts.length == 4 && parts[3].equals("cleanup")) {
             handleCleanupProgress(exchange);
@@ -531,6 +540,16 @@ public class P2PApi implements IP2PApi {
         }
     }
 
+    /**
+     * Handles GET /api/progress/stream
+     */
+    private void handleProgressStream(HttpExchange exchange) throws IOException {
+        if (getProgressHandler == null) throw new UnsupportedOperationException("GetProgress handler not set");
+
+        logInfo("Progress stream request");
+        progressStream.subscribe(exchange);
+    }
+
     /**
      * Handles POST /api/progress/cleanup
      */
@@ -0,0 +1,246 @@
+package delivery.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import domain.entity.ProgressInfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static utils.Log.logError;
+import static utils.Log.logInfo;
+
+/**
+ * Server-Sent Events feed behind GET /api/progress/stream.
+ * <p>
+ * One thread samples the progress map every {@code intervalMs} and sends each subscriber only the tasks whose
+ * summary changed since the previous sample, so a task produces at most one update per interval however many
+ * chunks it finished in between. The summary leaves out {@code downloadedChunks}; the UI only needs the counters.
+ * A new subscriber first gets every task in one {@code progress} event. Tasks that disappear from the map (cleanup)
+ * are announced in a {@code removed} event. Every {@link #SNAPSHOT_MS} every task is sent again, even if nothing
+ * changed, so the UI's stalled/timeout check still runs for a download that stopped moving; the snapshot also
+ * serves as the keep-alive that detects closed connections.
+ * <p>
+ * The sampling thread never writes to a socket: each subscriber has a bounded queue drained by its own writer
+ * thread. A subscriber that falls {@link #MAX_PENDING} events behind is dropped, and the browser reconnects.
+ * Subscriber list and {@code lastSent} are touched on the sampling thread only.
+ */
+public class ProgressStream {
+    private static final Gson gson = new Gson();
+    private static final long SNAPSHOT_MS = 15000;
+    private static final int MAX_PENDING = 16;
+
+    private final Callable<Map<String, ProgressInfo>> source;
+    private final long intervalMs;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final Map<String, String> lastSent = new HashMap<>(); // id -> summary JSON đã gửi
+    private ScheduledExecutorService sampler;
+    private long sinceSnapshotMs;
+
+    public ProgressStream(Callable<Map<String, ProgressInfo>> source, long intervalMs) {
+        this.source = source;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Answers the request with an open {@code text/event-stream} response and registers it for updates.
+     * The exchange stays open after the HTTP handler returns; it is closed when a write fails.
+     */
+    public void subscribe(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        sampler().execute(() -> {
+            if (subscribers.isEmpty()) {
+                sample(); // lastSent is stale while nobody listens
+            }
+            Subscriber subscriber = new Subscriber(exchange);
+            if (subscriber.offer(event("progress", join(lastSent)))) {
+                subscribers.add(subscriber);
+                logInfo("Progress stream subscriber added, total: " + subscribers.size());
+            }
+        });
+    }
+
+    private synchronized ScheduledExecutorService sampler() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "progress-stream");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return sampler;
+    }
+
+    private void tick() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, String> before = new HashMap<>(lastSent);
+            Map<String, String> changed = sample();
+            List<String> removed = new ArrayList<>();
+            for (String id : before.keySet()) {
+                if (!lastSent.containsKey(id)) {
+                    removed.add(id);
+                }
+            }
+
+            StringBuilder payload = new StringBuilder();
+            sinceSnapshotMs += intervalMs;
+            if (sinceSnapshotMs >= SNAPSHOT_MS) {
+                // gửi lại toàn bộ để UI kiểm tra task bị treo; cũng là keep-alive
+                payload.append(lastSent.isEmpty() ? ": keep-alive\n\n" : event("progress", join(lastSent)));
+                sinceSnapshotMs = 0;
+            } else if (!changed.isEmpty()) {
+                payload.append(event("progress", join(changed)));
+            }
+            if (!removed.isEmpty()) {
+                payload.append(event("removed", gson.toJson(removed)));
+            }
+            if (payload.length() > 0) {
+                broadcast(payload.toString());
+            }
+        } catch (Exception e) {
+            logError("Progress stream tick failed", e);
+        }
+    }
+
+    /**
+     * Rebuilds the summaries and returns the ones that differ from what was last sent.
+     */
+    private Map<String, String> sample() {
+        Map<String, ProgressInfo> progresses;
+        try {
+            progresses = source.call();
+        } catch (Exception e) {
+            logError("Cannot read progress for stream", e);
+            return Collections.emptyMap();
+        }
+        if (progresses == null) {
+            progresses = Collections.emptyMap();
+        }
+
+        Map<String, String> changed = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, ProgressInfo> entry : progresses.entrySet()) {
+            String id = entry.getKey();
+            String summary = summarize(entry.getValue()).toString();
+            seen.add(id);
+            if (!summary.equals(lastSent.put(id, summary))) {
+                changed.put(id, summary);
+            }
+        }
+        lastSent.keySet().retainAll(seen);
+        return changed;
+    }
+
+    private static JsonObject summarize(ProgressInfo progress) {
+        JsonObject summary = new JsonObject();
+        summary.addProperty("id", progress.getId());
+        summary.addProperty("status", progress.getStatus());
+        summary.addProperty("fileName", progress.getFileName());
+        summary.addProperty("taskType", progress.getTaskType());
+        summary.addProperty("progressPercentage", progress.getProgressPercentage());
+        summary.addProperty("bytesTransferred", progress.getBytesTransferred());
+        summary.addProperty("totalBytes", progress.getTotalBytes());
+        summary.addProperty("totalChunks", progress.getTotalChunks());
+        summary.addProperty("downloadedChunksCount", progress.getDownloadedChunksCount());
+        summary.addProperty("failedChunksCount", progress.getFailedChunksCount());
+        summary.addProperty("resumable", progress.isResumable());
+        return summary;
+    }
+
+    /**
+     * Joins already serialised summaries into one {@code {"id": summary, ...}} object, same shape as GET /api/progress.
+     */
+    private static String join(Map<String, String> summaries) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, String> entry : summaries.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(gson.toJson(entry.getKey())).append(':').append(entry.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    private static String event(String name, String data) {
+        return "event: " + name + "\ndata: " + data + "\n\n";
+    }
+
+    private void broadcast(String payload) {
+        subscribers.removeIf(subscriber -> !subscriber.offer(payload));
+    }
+
+    /**
+     * One open stream: events queued by the sampler and written by a dedicated thread.
+     */
+    private static final class Subscriber implements Runnable {
+        private final HttpExchange exchange;
+        private final BlockingQueue<String> pending = new ArrayBlockingQueue<>(MAX_PENDING);
+        private final Thread writer;
+        private volatile boolean closed;
+
+        Subscriber(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.writer = new Thread(this, "progress-stream-writer");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        }
+
+        /**
+         * Queues an event without blocking.
+         *
+         * @return false if the subscriber is gone or too far behind; it has been closed
+         */
+        boolean offer(String payload) {
+            if (closed) {
+                return false;
+            }
+            if (!pending.offer(payload)) {
+                logInfo("Progress stream subscriber too slow, dropping it");
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                OutputStream out = exchange.getResponseBody();
+                while (!closed) {
+                    String payload = pending.take();
+                    out.write(payload.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                logInfo("Progress stream subscriber disconnected");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+        }
+
+        private synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writer.interrupt();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package domain.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import domain.entity.ChunkMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Adapter for serializing and deserializing ChunkMap objects to and from JSON.
+ * The format used is {"size": totalChunks, "bits": "base64 bitfield"}.
+ * An array of per-chunk objects, as written by older .part.meta files, is still accepted: entries whose status is
+ * "completed" are marked.
+ */
+public class ChunkMapAdapter extends TypeAdapter<ChunkMap> {
+    @Override
+    public void write(JsonWriter jsonWriter, ChunkMap chunks) throws IOException {
+        if (chunks == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+        jsonWriter.beginObject();
+        jsonWriter.name("size").value(chunks.size());
+        jsonWriter.name("bits").value(Base64.getEncoder().encodeToString(chunks.toBytes()));
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public ChunkMap read(JsonReader jsonReader) throws IOException {
+        JsonToken token = jsonReader.peek();
+        if (token == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BEGIN_ARRAY) {
+            return readLegacy(jsonReader);
+        }
+
+        int size = -1;
+        byte[] bits = new byte[0];
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "size" -> size = jsonReader.nextInt();
+                case "bits" -> {
+                    try {
+                        bits = Base64.getDecoder().decode(jsonReader.nextString());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Invalid ChunkMap bits", e);
+                    }
+                }
+                default -> jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        if (size < 0) {
+            throw new IOException("Invalid ChunkMap format: missing size");
+        }
+        return ChunkMap.fromBytes(bits, size);
+    }
+
+    private static ChunkMap readLegacy(JsonReader jsonReader) throws IOException {
+        List<Integer> completed = new ArrayList<>();
+        int size = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            int index = size;
+            boolean done = false;
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "index" -> index = jsonReader.nextInt();
+                    case "status" -> {
+                        if (jsonReader.peek() == JsonToken.STRING) {
+                            done = "completed".equals(jsonReader.nextString());
+                        } else {
+                            jsonReader.skipValue();
+                        }
+                    }
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+            if (done) {
+                completed.add(index);
+            }
+            size++;
+        }
+        jsonReader.endArray();
+
+        ChunkMap chunks = new ChunkMap(size);
+        for (int index : completed) {
+            if (index >= 0 && index < size) {
+                chunks.set(index);
+            }
+        }
+        return chunks;
+    }
+}
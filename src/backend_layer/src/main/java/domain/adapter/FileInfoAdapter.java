@@ -10,18 +10,24 @@ import java.io.IOException;
 
 /**
  * Adapter for serializing and deserializing FileInfo objects to and from JSON.
- * The format used is "fileName'fileSize'fileHash'ip'port'username".
+ * The format used is "fileName'fileSize'fileHash'ip'port'username", followed by "'piecesRoot" when the
+ * sharer published per-chunk hashes.
  */
 public class FileInfoAdapter extends TypeAdapter<FileInfo> {
     @Override
     public void write(JsonWriter out, FileInfo value) throws IOException {
         out.value(value.getFileName() + "'" + value.getFileSize() + "'" + value.getFileHash() + "'" + value.getPeerInfo().getIp()
-                + "'" + value.getPeerInfo().getPort() + "'" + value.getPeerInfo().getUsername());
+                + "'" + value.getPeerInfo().getPort() + "'" + value.getPeerInfo().getUsername()
+                + (value.getPiecesRoot() != null ? "'" + value.getPiecesRoot() : ""));
     }
 
     @Override
     public FileInfo read(JsonReader in) throws IOException {
         String[] parts = in.nextString().split("'");
-        return new FileInfo(parts[0], Long.parseLong(parts[1]), parts[2], new PeerInfo(parts[3], Integer.parseInt(parts[4]), parts[5]));
+        FileInfo fileInfo = new FileInfo(parts[0], Long.parseLong(parts[1]), parts[2], new PeerInfo(parts[3], Integer.parseInt(parts[4]), parts[5]));
+        if (parts.length > 6) {
+            fileInfo.setPiecesRoot(parts[6]);
+        }
+        return fileInfo;
     }
 }
@@ -0,0 +1,141 @@
+package domain.entity;
+
+import com.google.gson.annotations.JsonAdapter;
+import domain.adapter.ChunkMapAdapter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size set of completed chunk indexes, one bit per chunk in an {@link AtomicLongArray}.
+ * Setting and reading a bit never locks, so the download workers, the peer server and progress reporting can share
+ * one instance. Bits are only ever set, never cleared.
+ * <p>
+ * A 100k-chunk file needs about 12 KB. In JSON the map is written as its size plus the bitfield in base64, using
+ * the same bit order as the wire bitfield (see {@link #toBytes()}).
+ */
+@JsonAdapter(ChunkMapAdapter.class)
+public class ChunkMap {
+    private final int size;
+    private final AtomicLongArray words;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public ChunkMap(int size) {
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Marks a chunk as completed.
+     *
+     * @return true if the chunk was not completed before
+     */
+    public boolean set(int index) {
+        checkIndex(index);
+        int word = index >>> 6;
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        count.incrementAndGet();
+        return true;
+    }
+
+    public boolean get(int index) {
+        return index >= 0 && index < size && (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    public int cardinality() {
+        return count.get();
+    }
+
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    public boolean isComplete() {
+        return count.get() >= size;
+    }
+
+    /**
+     * @return the first completed index at or after {@code from}, or -1
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int word = from >>> 6;
+        if (from >= size) {
+            return -1;
+        }
+        long bits = words.get(word) & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return index < size ? index : -1;
+            }
+            if (++word >= words.length()) {
+                return -1;
+            }
+            bits = words.get(word);
+        }
+    }
+
+    /**
+     * Marks every chunk that is completed in {@code other} (up to this map's size).
+     */
+    public void or(ChunkMap other) {
+        for (int i = other.nextSetBit(0); i >= 0 && i < size; i = other.nextSetBit(i + 1)) {
+            set(i);
+        }
+    }
+
+    /**
+     * Independent copy of the chunks completed so far.
+     */
+    public ChunkMap copy() {
+        ChunkMap copy = new ChunkMap(size);
+        copy.or(this);
+        return copy;
+    }
+
+    /**
+     * Encodes the map with the most significant bit of byte 0 standing for chunk 0, the layout of a BITFIELD reply.
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[(size + 7) / 8];
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            bytes[i >> 3] |= (byte) (0x80 >>> (i & 7));
+        }
+        return bytes;
+    }
+
+    public static ChunkMap fromBytes(byte[] bytes, int size) {
+        ChunkMap chunks = new ChunkMap(size);
+        for (int i = 0; i < size && (i >> 3) < bytes.length; i++) {
+            if ((bytes[i >> 3] & (0x80 >>> (i & 7))) != 0) {
+                chunks.set(i);
+            }
+        }
+        return chunks;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " out of range [0, " + size + ")");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkMap{" + cardinality() + "/" + size + "}";
+    }
+}
@@ -4,8 +4,6 @@ import utils.Config;
 
 import java.io.File;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Represents metadata for a resumable file download.
@@ -17,7 +15,8 @@ public class DownloadMetadata {
     private long fileSize;
     private int chunkSize;
     private String savePath;
-    private List<ChunkInfo> chunks;
+    private ChunkMap chunks; // completed chunks
+    private String piecesRoot; // root of the per-chunk hash list, so a resumed download can verify chunks
     private Instant createdAt;
     private Instant lastModified;
 
@@ -35,7 +34,6 @@ public class DownloadMetadata {
         this.fileSize = fileSize;
         this.chunkSize = Config.CHUNK_SIZE;
         this.savePath = savePath;
-        this.chunks = new ArrayList<>();
         this.createdAt = Instant.now();
         this.lastModified = Instant.now();
 
@@ -47,13 +45,7 @@ public class DownloadMetadata {
      */
     private void initializeChunks() {
         int totalChunks = (int) Math.ceil((double) fileSize / (double) chunkSize);
-        chunks.clear();
-
-        for (int i = 0; i < totalChunks; i++) {
-            long start = (long) i * chunkSize;
-            long end = Math.min(start + chunkSize - 1, fileSize - 1);
-            chunks.add(new ChunkInfo(i, start, end));
-        }
+        chunks = new ChunkMap(totalChunks);
     }
 
     // Getters and setters
@@ -72,8 +64,11 @@ public class DownloadMetadata {
     public String getSavePath() { return savePath; }
     public void setSavePath(String savePath) { this.savePath = savePath; }
 
-    public List<ChunkInfo> getChunks() { return chunks; }
-    public void setChunks(List<ChunkInfo> chunks) { this.chunks = chunks; }
+    public String getPiecesRoot() { return piecesRoot; }
+    public void setPiecesRoot(String piecesRoot) { this.piecesRoot = piecesRoot; }
+
+    public ChunkMap getChunks() { return chunks; }
+    public void setChunks(ChunkMap chunks) { this.chunks = chunks; }
 
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
@@ -96,29 +91,36 @@ public class DownloadMetadata {
     }
 
     /**
-     * Get chunks that need to be downloaded (pending or failed).
+     * Get the journal file path (chunks completed since the .meta file was written).
+     */
+    public String getJournalFilePath() {
+        return savePath + ".part.journal";
+    }
+
+    /**
+     * Get total chunks count.
      */
-    public List<ChunkInfo> getChunksToDownload() {
-        return chunks.stream()
-                .filter(chunk -> !chunk.isCompleted())
-                .toList();
+    public int getTotalChunks() {
+        return chunks.size();
     }
 
     /**
      * Get completed chunks count.
      */
     public int getCompletedChunksCount() {
-        return (int) chunks.stream().filter(ChunkInfo::isCompleted).count();
+        return chunks.cardinality();
     }
 
     /**
-     * Get total bytes downloaded.
+     * Get total bytes downloaded. Every chunk is full-sized except possibly the last one.
      */
     public long getDownloadedBytes() {
-        return chunks.stream()
-                .filter(ChunkInfo::isCompleted)
-                .mapToLong(ChunkInfo::getDownloadedBytes)
-                .sum();
+        long bytes = (long) chunks.cardinality() * chunkSize;
+        int last = chunks.size() - 1;
+        if (last >= 0 && chunks.get(last)) {
+            bytes -= (long) chunks.size() * chunkSize - fileSize;
+        }
+        return bytes;
     }
 
     /**
@@ -133,7 +135,7 @@ public class DownloadMetadata {
      * Check if all chunks are completed.
      */
     public boolean isComplete() {
-        return chunks.stream().allMatch(ChunkInfo::isCompleted);
+        return chunks.isComplete();
     }
 
     /**
@@ -143,16 +145,6 @@ public class DownloadMetadata {
         this.lastModified = Instant.now();
     }
 
-    /**
-     * Get chunk by index.
-     */
-    public ChunkInfo getChunk(int index) {
-        if (index >= 0 && index < chunks.size()) {
-            return chunks.get(index);
-        }
-        return null;
-    }
-
     /**
      * Check if .part file exists.
      */
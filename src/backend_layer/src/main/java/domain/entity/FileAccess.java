@@ -0,0 +1,40 @@
+package domain.entity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Who may fetch a file: everyone for a public file, or the peers on its access list for a private one.
+ * Peers are matched by IP, like the selective-share check, because the port of an incoming connection is not the
+ * peer's listening port.
+ */
+public final class FileAccess {
+    public static final FileAccess PUBLIC = new FileAccess(null);
+    public static final FileAccess NONE = new FileAccess(Collections.emptySet());
+
+    private final Set<String> allowedIps; // null for a public file
+
+    private FileAccess(Set<String> allowedIps) {
+        this.allowedIps = allowedIps;
+    }
+
+    /**
+     * @param allowedPeers The access list of a private file.
+     */
+    public static FileAccess of(Set<PeerInfo> allowedPeers) {
+        Set<String> ips = new HashSet<>();
+        for (PeerInfo peer : allowedPeers) {
+            ips.add(peer.getIp());
+        }
+        return new FileAccess(Collections.unmodifiableSet(ips));
+    }
+
+    public boolean isPublic() {
+        return allowedIps == null;
+    }
+
+    public boolean allows(PeerInfo peer) {
+        return allowedIps == null || allowedIps.contains(peer.getIp());
+    }
+}
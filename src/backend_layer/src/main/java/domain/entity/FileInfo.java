@@ -1,5 +1,7 @@
 package domain.entity;
 
+import java.io.File;
+import java.util.List;
 import java.util.Objects;
 import java.io.Serializable;
 
@@ -15,6 +17,9 @@ public class FileInfo implements Serializable {
     private String fileHash;
     private PeerInfo peerInfo;
     private boolean isSharedByMe;
+    private List<String> pieceHashes;
+    private String piecesRoot;
+    private long sourceLastModified;
 
     /**
      * Constructor to initialize FileInfo with file details and peer information.
@@ -120,6 +125,73 @@ public class FileInfo implements Serializable {
         isSharedByMe = sharedByMe;
     }
 
+    /**
+     * Gets the SHA-256 hash of every chunk, in chunk order. Only known for files shared by the local user.
+     *
+     * @return Hex-encoded chunk hashes, or null if they were not computed
+     */
+    public List<String> getPieceHashes() {
+        return pieceHashes;
+    }
+
+    /**
+     * Sets the SHA-256 hash of every chunk, in chunk order.
+     *
+     * @param pieceHashes Hex-encoded chunk hashes
+     */
+    public void setPieceHashes(List<String> pieceHashes) {
+        this.pieceHashes = pieceHashes;
+    }
+
+    /**
+     * Gets the SHA-256 hash over the concatenated chunk hashes, published through the tracker so that
+     * a downloader can check a chunk hash list received from any peer.
+     *
+     * @return Hex-encoded root, or null if the sharer did not publish one
+     */
+    public String getPiecesRoot() {
+        return piecesRoot;
+    }
+
+    /**
+     * Sets the SHA-256 hash over the concatenated chunk hashes.
+     *
+     * @param piecesRoot Hex-encoded root
+     */
+    public void setPiecesRoot(String piecesRoot) {
+        this.piecesRoot = piecesRoot;
+    }
+
+    /**
+     * Gets the modification time the shared file had when it was hashed. The shared copy is a hard link
+     * to the user's original whenever possible, so an edit to the original shows up here as a new time.
+     *
+     * @return Modification time in milliseconds, or 0 if it was not recorded
+     */
+    public long getSourceLastModified() {
+        return sourceLastModified;
+    }
+
+    /**
+     * Sets the modification time the shared file had when it was hashed.
+     *
+     * @param sourceLastModified Modification time in milliseconds
+     */
+    public void setSourceLastModified(long sourceLastModified) {
+        this.sourceLastModified = sourceLastModified;
+    }
+
+    /**
+     * Checks whether the file on disk still matches what was hashed and announced.
+     *
+     * @param file The file being served for this entry
+     * @return true if its size or modification time differ from the recorded ones
+     */
+    public boolean isStale(File file) {
+        return sourceLastModified > 0
+                && (file.length() != fileSize || file.lastModified() != sourceLastModified);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
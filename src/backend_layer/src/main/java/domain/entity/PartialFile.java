@@ -0,0 +1,76 @@
+package domain.entity;
+
+import java.io.File;
+
+/**
+ * A file that is still being downloaded but whose completed chunks can already be served to other peers.
+ * The chunk map is the download's own, so a chunk becomes servable as soon as the download marks it.
+ */
+public class PartialFile {
+    private final String fileHash;
+    private final long fileSize;
+    private final int totalChunks;
+    private final File file;
+    private final ChunkMap completedChunks;
+    private final FileAccess access;
+
+    /**
+     * Constructor to initialize PartialFile.
+     *
+     * @param fileHash        Hash of the complete file.
+     * @param fileSize        Size of the complete file in bytes.
+     * @param totalChunks     Number of chunks in the complete file.
+     * @param file            File on disk that the download writes into.
+     * @param completedChunks Chunks written and safe to serve; shared, not copied.
+     * @param access          Peers allowed to fetch the file, from the tracker's GET_PEERS reply.
+     */
+    public PartialFile(String fileHash, long fileSize, int totalChunks, File file, ChunkMap completedChunks, FileAccess access) {
+        this.fileHash = fileHash;
+        this.fileSize = fileSize;
+        this.totalChunks = totalChunks;
+        this.file = file;
+        this.completedChunks = completedChunks;
+        this.access = access;
+    }
+
+    /**
+     * Whether a peer may fetch chunks, the bitfield or HAVEs of this file.
+     */
+    public boolean allows(PeerInfo peer) {
+        return access.allows(peer);
+    }
+
+    public String getFileHash() {
+        return fileHash;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean hasChunk(int chunkIndex) {
+        return completedChunks.get(chunkIndex);
+    }
+
+    public boolean hasAnyChunk() {
+        return !completedChunks.isEmpty();
+    }
+
+    /**
+     * Get the completed chunks. The map is live; encoding it while the download keeps writing is safe because
+     * chunks are only ever added.
+     *
+     * @return The completed chunk map.
+     */
+    public ChunkMap getCompletedChunks() {
+        return completedChunks;
+    }
+}
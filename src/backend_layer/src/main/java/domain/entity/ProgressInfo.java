@@ -1,19 +1,16 @@
 package domain.entity;
 
-import java.util.Set;
-import java.util.HashSet;
-
 /**
  * Class representing the progress information of a file transfer task.
  */
 public class ProgressInfo {
     private String id;
-    private String status;
+    private volatile String status;
     private String fileName;
     private long bytesTransferred;
     private long totalBytes;
-    private int progressPercentage = 0;
-    private Set<Integer> downloadedChunks = new HashSet<>();
+    private volatile int progressPercentage = 0;
+    private ChunkMap downloadedChunks; // shared with the running download, null until it knows the chunk count
     private String fileHash;
     private String savePath;
     private String taskType;
@@ -25,7 +22,6 @@ public class ProgressInfo {
     private String partFilePath;
     private String metaFilePath;
     private int totalChunks = 0;
-    private int downloadedChunksCount = 0;
     private int failedChunksCount = 0;
 
     /**
@@ -79,6 +75,10 @@ public class ProgressInfo {
         this.progressPercentage = progressPercentage;
     }
 
+    public int getProgressPercentage() {
+        return progressPercentage;
+    }
+
     /**
      * Get Bytes transferred so far.
      *
@@ -109,6 +109,10 @@ public class ProgressInfo {
         this.totalBytes = totalBytes;
     }
 
+    public String getTaskType() {
+        return taskType;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -169,16 +173,18 @@ public class ProgressInfo {
         this.savePath = savePath;
     }
 
-    public Set<Integer> getDownloadedChunks() {
+    public ChunkMap getDownloadedChunks() {
         return downloadedChunks;
     }
 
-    public void setDownloadedChunks(Set<Integer> downloadedChunks) {
+    /**
+     * Set the completed chunk map; the total chunk count follows its size.
+     *
+     * @param downloadedChunks The chunk map, usually the one the download marks as chunks arrive.
+     */
+    public void setDownloadedChunks(ChunkMap downloadedChunks) {
         this.downloadedChunks = downloadedChunks;
-    }
-
-    public void addDownloadedChunk(int chunkIndex) {
-        this.downloadedChunks.add(chunkIndex);
+        this.totalChunks = downloadedChunks.size();
     }
 
     public boolean isResumable() {
@@ -214,15 +220,8 @@ public class ProgressInfo {
     }
 
     public int getDownloadedChunksCount() {
-        return downloadedChunksCount;
-    }
-
-    public void setDownloadedChunksCount(int downloadedChunksCount) {
-        this.downloadedChunksCount = downloadedChunksCount;
-    }
-
-    public void incrementDownloadedChunksCount() {
-        this.downloadedChunksCount++;
+        ChunkMap chunks = downloadedChunks;
+        return chunks == null ? 0 : chunks.cardinality();
     }
 
     public int getFailedChunksCount() {
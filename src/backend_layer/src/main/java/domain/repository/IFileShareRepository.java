@@ -15,6 +15,8 @@ public interface IFileShareRepository {
 
     boolean shareFileList(List<FileInfo> publicFiles, Map<FileInfo, Set<PeerInfo>> privateFiles);
 
+    boolean syncSharedFiles();
+
     void sharePrivateFile(File file, FileInfo oldFileInfo, int isReplace, String progressId, List<PeerInfo> peerList);
 
     int refreshFiles();
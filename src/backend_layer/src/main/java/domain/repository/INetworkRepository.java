@@ -6,4 +6,5 @@ public interface INetworkRepository {
     void startUDPServer();
     int registerWithTracker();
     void processRequest(String request, String clientIP, io.netty.channel.Channel channel);
+    void announceHave(String fileHash, int chunkIndex);
 }
@@ -1,5 +1,6 @@
 package domain.repository;
 
+import domain.entity.FileAccess;
 import domain.entity.PeerInfo;
 
 import java.util.List;
@@ -10,5 +11,12 @@ public interface IPeerDiscoveryRepository {
 
     List<PeerInfo> getPeersWithFile(String fileHash);
 
+    /**
+     * Access list of a file as reported by the last GET_PEERS reply for it; {@link FileAccess#NONE} if unknown.
+     */
+    FileAccess getFileAccess(String fileHash);
+
     List<PeerInfo> getSelectivePeers(String fileHash);
+
+    void announceDownload(String fileHash, String state);
 }
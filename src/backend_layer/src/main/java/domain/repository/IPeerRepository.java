@@ -1,5 +1,6 @@
 package domain.repository;
 
+import domain.entity.PartialFile;
 import domain.entity.PeerInfo;
 import io.netty.channel.socket.SocketChannel;
 import domain.entity.ProgressInfo;
@@ -15,7 +16,6 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.locks.ReentrantLock;
 
 public interface IPeerRepository extends IFileDownloadRepository, IFileShareRepository, INetworkRepository, IPeerDiscoveryRepository {
     List<PeerInfo> getSharedPeers(String fileName);
@@ -24,10 +24,10 @@ public interface IPeerRepository extends IFileDownloadRepository, IFileShareRepo
 
     Map<String, ProgressInfo> getProcesses();
 
-    ReentrantLock getFileLock();
-
     Map<String, List<Future<Boolean>>> getFutures();
 
+    Map<String, PartialFile> getPartialFiles();
+
     Map<String, CopyOnWriteArrayList<SSLSocket>> getOpenChannels();
 
     Selector getSelector();
@@ -0,0 +1,43 @@
+package infras.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.List;
+
+/**
+ * Splits the byte stream of a pooled peer connection into {@link ChunkResponse} frames.
+ * Frame layout: [int requestId][int chunkIndex (-1 on error)][int length][length bytes].
+ */
+public class ChunkFrameDecoder extends ByteToMessageDecoder {
+    static final int HEADER_LENGTH = 12;
+
+    private final int maxFrameLength;
+
+    public ChunkFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < HEADER_LENGTH) {
+            return;
+        }
+
+        int start = in.readerIndex();
+        int requestId = in.getInt(start);
+        int chunkIndex = in.getInt(start + 4);
+        int length = in.getInt(start + 8);
+        if (length < 0 || length > maxFrameLength) {
+            throw new CorruptedFrameException("Invalid chunk frame length: " + length);
+        }
+        if (in.readableBytes() < HEADER_LENGTH + length) {
+            return;
+        }
+
+        in.skipBytes(HEADER_LENGTH);
+        out.add(new ChunkResponse(requestId, chunkIndex, in.readRetainedSlice(length)));
+    }
+}
@@ -0,0 +1,53 @@
+package infras.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One reply frame read from a pooled peer connection.
+ * For MGET_CHUNK replies the index field is the chunk index; for MBITFIELD replies it is the chunk count.
+ * The payload is a retained slice of the inbound buffer; whoever consumes the response must call {@link #release()}.
+ */
+public class ChunkResponse {
+    public static final int ERROR_INDEX = -1;
+
+    private final int requestId;
+    private final int chunkIndex;
+    private final ByteBuf data;
+
+    public ChunkResponse(int requestId, int chunkIndex, ByteBuf data) {
+        this.requestId = requestId;
+        this.chunkIndex = chunkIndex;
+        this.data = data;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public ByteBuf getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return data.readableBytes();
+    }
+
+    public boolean isError() {
+        return chunkIndex == ERROR_INDEX;
+    }
+
+    public String getErrorMessage() {
+        return data.toString(StandardCharsets.UTF_8);
+    }
+
+    public void release() {
+        ReferenceCountUtil.safeRelease(data);
+    }
+}
@@ -0,0 +1,49 @@
+package infras.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client half of the protocol negotiation (see {@link ProtocolNegotiator}). Reads the server's answer to our
+ * {@code P2PB/} preface and completes {@code agreedVersion} with the version both sides speak, or 0 when the
+ * server only knows the text protocol (it answers the preface like any unknown command). Removes itself
+ * afterwards, passing whatever follows to the frame decoder behind it.
+ */
+public class ClientPreface extends ByteToMessageDecoder {
+    private static final int MAX_ANSWER_BYTES = 1024;
+
+    private final CompletableFuture<Integer> agreedVersion;
+
+    public ClientPreface(CompletableFuture<Integer> agreedVersion) {
+        this.agreedVersion = agreedVersion;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        int lineEnd = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+        if (lineEnd < 0) {
+            if (in.readableBytes() > MAX_ANSWER_BYTES) {
+                throw new TooLongFrameException("Preface answer too long");
+            }
+            return;
+        }
+
+        String answer = in.toString(in.readerIndex(), lineEnd - in.readerIndex(), StandardCharsets.UTF_8);
+        in.readerIndex(lineEnd + 1);
+        int version = WireFrame.parsePreface(answer);
+        ctx.pipeline().remove(this);
+        agreedVersion.complete(Math.max(0, Math.min(version, WireFrame.VERSION)));
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        agreedVersion.completeExceptionally(new IllegalStateException("Connection closed during protocol negotiation"));
+        super.channelInactive(ctx);
+    }
+}
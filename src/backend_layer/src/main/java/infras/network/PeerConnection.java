@@ -0,0 +1,137 @@
+package infras.network;
+
+import domain.entity.PeerInfo;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import utils.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived TLS channel to one peer on which chunk and bitfield requests are pipelined.
+ * Every request carries an id that the peer echoes back, so replies may arrive in any order.
+ * Frames with id 0 are unsolicited HAVE announcements and go to the pool's {@link PeerConnectionPool.HaveListener}.
+ */
+public class PeerConnection extends SimpleChannelInboundHandler<ChunkResponse> {
+    private final PeerInfo peerInfo;
+    private final String peerAddress;
+    private final PeerConnectionPool.HaveListener haveListener;
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, CompletableFuture<ChunkResponse>> pendingRequests = new ConcurrentHashMap<>();
+    private volatile Channel channel;
+    private volatile boolean binary;
+
+    public PeerConnection(PeerInfo peerInfo, PeerConnectionPool.HaveListener haveListener) {
+        this.peerInfo = peerInfo;
+        this.peerAddress = peerInfo.getIp() + ":" + peerInfo.getPort();
+        this.haveListener = haveListener;
+    }
+
+    public boolean isActive() {
+        Channel current = channel;
+        return current != null && current.isActive();
+    }
+
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Set once the peer accepted the binary protocol during negotiation; requests are then sent as {@link WireFrame}s.
+     */
+    void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Sends one request (fields: command, requestId, arguments) and completes {@code response} when the matching
+     * frame arrives. If the future is cancelled or times out first, the late frame is released on arrival.
+     */
+    void send(String command, CompletableFuture<ChunkResponse> response, Object... arguments) {
+        if (response.isDone()) {
+            return;
+        }
+
+        int requestId = nextRequestId.getAndUpdate(id -> id == Integer.MAX_VALUE ? 1 : id + 1);
+        pendingRequests.put(requestId, response);
+        response.whenComplete((result, error) -> pendingRequests.remove(requestId, response));
+
+        WireFrame request = WireFrame.request(command).add(requestId);
+        for (Object argument : arguments) {
+            request.add(argument);
+        }
+        ByteBuf encoded;
+        if (binary) {
+            encoded = channel.alloc().buffer();
+            request.writeTo(encoded);
+        } else {
+            encoded = Unpooled.copiedBuffer(request.toText() + "\n", StandardCharsets.UTF_8);
+        }
+        channel.writeAndFlush(encoded).addListener(future -> {
+            if (!future.isSuccess()) {
+                response.completeExceptionally(future.cause());
+            }
+        });
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.channel = ctx.channel();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ChunkResponse msg) {
+        if (msg.getRequestId() == PeerConnectionPool.HAVE_REQUEST_ID) {
+            try {
+                if (haveListener != null) {
+                    haveListener.onHave(peerInfo, msg.getData().toString(StandardCharsets.UTF_8), msg.getChunkIndex());
+                }
+            } finally {
+                msg.release();
+            }
+            return;
+        }
+
+        CompletableFuture<ChunkResponse> response = pendingRequests.remove(msg.getRequestId());
+        if (response == null || !response.complete(msg)) {
+            msg.release();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Log.logInfo("Pooled connection closed: " + peerAddress + " (" + pendingRequests.size() + " pending requests)");
+        IOException closed = new IOException("Connection to " + peerAddress + " closed");
+        for (CompletableFuture<ChunkResponse> response : pendingRequests.values()) {
+            response.completeExceptionally(closed);
+        }
+        pendingRequests.clear();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && pendingRequests.isEmpty()) {
+            Log.logInfo("Closing idle pooled connection: " + peerAddress);
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        Log.logError("Exception on pooled connection " + peerAddress + ": " + cause.getMessage(), null);
+        ctx.close();
+    }
+}
@@ -0,0 +1,190 @@
+package infras.network;
+
+import domain.entity.PeerInfo;
+import infras.utils.FileUtils;
+import infras.utils.SSLUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import utils.Config;
+import utils.Log;
+import utils.RequestInfor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps at most one persistent TLS connection per peer and multiplexes requests over it.
+ * Connections are opened lazily, reused for every download from that peer, and closed after
+ * {@link Config#PEER_CONNECTION_IDLE_S} seconds without traffic.
+ */
+public class PeerConnectionPool {
+    /**
+     * Request id reserved for HAVE frames a partially downloaded peer pushes as it completes chunks.
+     */
+    public static final int HAVE_REQUEST_ID = 0;
+    /**
+     * Largest reply frame: a chunk, or the piece-hash list of the biggest file allowed ({@link Config#MAX_FILE_CHUNKS}).
+     */
+    private static final int MAX_REPLY_BYTES = (int) Math.max(Config.CHUNK_SIZE,
+            Math.min(Integer.MAX_VALUE - 64L, (long) Config.MAX_FILE_CHUNKS * FileUtils.PIECE_HASH_LENGTH));
+
+    private final EventLoopGroup group;
+    private final Map<String, CompletableFuture<PeerConnection>> connections = new ConcurrentHashMap<>();
+    private volatile SslContext sslContext;
+    private volatile HaveListener haveListener;
+
+    public PeerConnectionPool() {
+        this.group = new NioEventLoopGroup(Config.PEER_CLIENT_IO_THREADS, new DefaultThreadFactory("peer-client", true));
+    }
+
+    /**
+     * Requests one chunk from a peer. The returned future completes with the reply frame (which the
+     * caller must release), or exceptionally if the connection fails or the request times out.
+     */
+    public CompletableFuture<ChunkResponse> requestChunk(PeerInfo peerInfo, String fileHash, int chunkIndex) {
+        return request(peerInfo, RequestInfor.MGET_CHUNK, fileHash, chunkIndex);
+    }
+
+    /**
+     * Asks a peer which chunks of a file it holds. The reply's index field carries the chunk count
+     * and its payload the bitfield (see {@link PieceScheduler#fromBytes}).
+     */
+    public CompletableFuture<ChunkResponse> requestBitfield(PeerInfo peerInfo, String fileHash) {
+        return request(peerInfo, RequestInfor.MBITFIELD, fileHash);
+    }
+
+    /**
+     * Asks a peer for the SHA-256 of every chunk of a file. The reply's index field carries the chunk count
+     * and its payload the concatenated 32-byte digests.
+     */
+    public CompletableFuture<ChunkResponse> requestPieceHashes(PeerInfo peerInfo, String fileHash) {
+        return request(peerInfo, RequestInfor.MPIECE_HASHES, fileHash);
+    }
+
+    private CompletableFuture<ChunkResponse> request(PeerInfo peerInfo, String command, Object... arguments) {
+        CompletableFuture<ChunkResponse> response = new CompletableFuture<>();
+        acquire(peerInfo).whenComplete((connection, error) -> {
+            if (error != null) {
+                response.completeExceptionally(error);
+            } else {
+                connection.send(command, response, arguments);
+            }
+        });
+        return response.orTimeout(Config.CHUNK_REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void setHaveListener(HaveListener haveListener) {
+        this.haveListener = haveListener;
+    }
+
+    public void shutdown() {
+        group.shutdownGracefully();
+        connections.clear();
+    }
+
+    private CompletableFuture<PeerConnection> acquire(PeerInfo peerInfo) {
+        String key = peerInfo.getIp() + ":" + peerInfo.getPort();
+        return connections.compute(key, (k, existing) -> {
+            if (existing != null && !existing.isCompletedExceptionally()
+                    && (!existing.isDone() || existing.join().isActive())) {
+                return existing;
+            }
+            return connect(k, peerInfo);
+        });
+    }
+
+    private CompletableFuture<PeerConnection> connect(String key, PeerInfo peerInfo) {
+        CompletableFuture<PeerConnection> ready = new CompletableFuture<>();
+        PeerConnection connection = new PeerConnection(new PeerInfo(peerInfo.getIp(), peerInfo.getPort()), haveListener);
+        CompletableFuture<Integer> agreedVersion = new CompletableFuture<>();
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Config.SOCKET_TIMEOUT_MS)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(getSslContext().newHandler(ch.alloc(), peerInfo.getIp(), peerInfo.getPort()));
+                        ch.pipeline().addLast(new IdleStateHandler(0, 0, Config.PEER_CONNECTION_IDLE_S));
+                        ch.pipeline().addLast(new ClientPreface(agreedVersion));
+                        ch.pipeline().addLast(new ChunkFrameDecoder(MAX_REPLY_BYTES));
+                        ch.pipeline().addLast(connection);
+                    }
+                });
+
+        bootstrap.connect(peerInfo.getIp(), peerInfo.getPort()).addListener((ChannelFuture connectFuture) -> {
+            if (!connectFuture.isSuccess()) {
+                ready.completeExceptionally(connectFuture.cause());
+                return;
+            }
+
+            Channel channel = connectFuture.channel();
+            channel.closeFuture().addListener(f -> connections.remove(key, ready));
+            channel.pipeline().get(SslHandler.class).handshakeFuture().addListener(handshake -> {
+                if (!handshake.isSuccess()) {
+                    ready.completeExceptionally(handshake.cause());
+                    channel.close();
+                    return;
+                }
+                // Offer the binary protocol; a peer that only speaks text answers the preface as an unknown command
+                channel.writeAndFlush(Unpooled.copiedBuffer(WireFrame.prefaceLine(WireFrame.VERSION), StandardCharsets.US_ASCII));
+                agreedVersion.orTimeout(Config.SOCKET_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((version, error) -> {
+                    if (error != null) {
+                        ready.completeExceptionally(error);
+                        channel.close();
+                        return;
+                    }
+                    connection.setBinary(version >= 1);
+                    Log.logInfo("Opened pooled SSL connection to " + key + (version >= 1 ? " (binary protocol v" + version + ")" : " (text protocol)"));
+                    ready.complete(connection);
+                });
+            });
+        });
+        return ready;
+    }
+
+    private SslContext getSslContext() throws Exception {
+        SslContext context = sslContext;
+        if (context == null) {
+            synchronized (this) {
+                context = sslContext;
+                if (context == null) {
+                    // Peers identify themselves by certificate, not host name, matching the SSLSocket client.
+                    context = SslContextBuilder.forClient()
+                            .keyManager(SSLUtils.getKeyManagerFactory())
+                            .trustManager(SSLUtils.getTrustManagerFactory())
+                            .endpointIdentificationAlgorithm(null)
+                            .sessionCacheSize(Config.TLS_SESSION_CACHE_SIZE)
+                            .sessionTimeout(Config.TLS_SESSION_TIMEOUT_S)
+                            .build();
+                    sslContext = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    @FunctionalInterface
+    public interface HaveListener {
+        void onHave(PeerInfo peerInfo, String fileHash, int chunkIndex);
+    }
+}
@@ -0,0 +1,198 @@
+package infras.network;
+
+import domain.entity.ChunkMap;
+import domain.entity.PeerInfo;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which chunk each peer should be asked for next.
+ * It tracks which chunks every peer advertised in its bitfield, hands out the rarest missing chunk
+ * the peer holds (random tie-break so downloaders spread their requests), and once every missing chunk
+ * is already in flight, or only {@code endGameThreshold} remain, switches to end-game mode where
+ * in-flight chunks may be requested from additional peers so one slow seeder cannot stall the tail.
+ * <p>
+ * Completion is read from and recorded in the download's shared {@link ChunkMap}, the same map the
+ * {@code PartialFile} serves from and the progress reports, so there is no second copy to keep in step.
+ */
+public class PieceScheduler {
+    private final int totalChunks;
+    private final int endGameThreshold;
+    private final int maxChunkAttempts;
+    private final ChunkMap completed;
+    private final BitSet abandoned = new BitSet();
+    private final int[] availability;
+    private final int[] failedAttempts;
+    private final Map<PeerInfo, BitSet> peerChunks = new HashMap<>();
+    private final Map<Integer, Set<PeerInfo>> inFlight = new HashMap<>();
+
+    /**
+     * @param completed Chunk map of the download, already holding the verified chunks; marked by {@link #markCompleted}.
+     */
+    public PieceScheduler(int totalChunks, ChunkMap completed, int endGameThreshold, int maxChunkAttempts) {
+        this.totalChunks = totalChunks;
+        this.endGameThreshold = endGameThreshold;
+        this.maxChunkAttempts = maxChunkAttempts;
+        this.availability = new int[totalChunks];
+        this.failedAttempts = new int[totalChunks];
+        this.completed = completed;
+    }
+
+    /**
+     * Starts scheduling {@code peer} with the chunks from its bitfield, replacing any bitfield it sent before.
+     */
+    public synchronized void addPeer(PeerInfo peer, ChunkMap chunks) {
+        BitSet owned = new BitSet(totalChunks);
+        for (int i = chunks.nextSetBit(0); i >= 0 && i < totalChunks; i = chunks.nextSetBit(i + 1)) {
+            owned.set(i);
+        }
+        BitSet previous = peerChunks.put(peer, owned);
+        if (previous != null) {
+            adjustAvailability(previous, -1);
+        }
+        adjustAvailability(owned, 1);
+    }
+
+    public synchronized void removePeer(PeerInfo peer) {
+        BitSet owned = peerChunks.remove(peer);
+        if (owned != null) {
+            adjustAvailability(owned, -1);
+        }
+    }
+
+    /**
+     * Records that a peer announced a newly completed chunk.
+     */
+    public synchronized void onHave(PeerInfo peer, int chunkIndex) {
+        BitSet owned = peerChunks.get(peer);
+        if (owned != null && chunkIndex >= 0 && chunkIndex < totalChunks && !owned.get(chunkIndex)) {
+            owned.set(chunkIndex);
+            availability[chunkIndex]++;
+        }
+    }
+
+    /**
+     * Picks the next chunk to request from {@code peer} and marks it in flight.
+     *
+     * @return the chunk index, or -1 if the peer has nothing useful to request right now
+     */
+    public synchronized int nextChunk(PeerInfo peer) {
+        BitSet owned = peerChunks.get(peer);
+        if (owned == null) {
+            return -1;
+        }
+
+        int chosen = pickRarest(owned, false, peer);
+        if (chosen < 0 && isEndGame()) {
+            chosen = pickRarest(owned, true, peer);
+        }
+        if (chosen >= 0) {
+            inFlight.computeIfAbsent(chosen, k -> new HashSet<>()).add(peer);
+        }
+        return chosen;
+    }
+
+    /**
+     * Marks a chunk as written to disk.
+     *
+     * @return true for the first completion, false if another peer already delivered it (end-game duplicate)
+     */
+    public synchronized boolean markCompleted(PeerInfo peer, int chunkIndex) {
+        inFlight.remove(chunkIndex);
+        return completed.set(chunkIndex);
+    }
+
+    /**
+     * Returns a failed request to the pool. After {@code maxChunkAttempts} failures the chunk is abandoned
+     * so the download can finish (and report failure) instead of retrying forever.
+     */
+    public synchronized void markFailed(PeerInfo peer, int chunkIndex) {
+        Set<PeerInfo> requesters = inFlight.get(chunkIndex);
+        if (requesters != null) {
+            requesters.remove(peer);
+            if (requesters.isEmpty()) {
+                inFlight.remove(chunkIndex);
+            }
+        }
+        if (!completed.get(chunkIndex) && ++failedAttempts[chunkIndex] >= maxChunkAttempts) {
+            abandoned.set(chunkIndex);
+        }
+    }
+
+    public boolean isCompleted(int chunkIndex) {
+        return completed.get(chunkIndex);
+    }
+
+    public boolean isComplete() {
+        return completed.isComplete();
+    }
+
+    public int getCompletedCount() {
+        return completed.cardinality();
+    }
+
+    /**
+     * Whether the peer is still scheduled and lacks some chunks, so HAVE announcements may give it new work.
+     */
+    public synchronized boolean mayGainChunks(PeerInfo peer) {
+        BitSet owned = peerChunks.get(peer);
+        return owned != null && owned.cardinality() < totalChunks;
+    }
+
+    /**
+     * Whether the peer still holds a chunk that is neither completed nor abandoned.
+     */
+    public synchronized boolean hasWorkFor(PeerInfo peer) {
+        BitSet owned = peerChunks.get(peer);
+        if (owned == null) {
+            return false;
+        }
+        for (int i = owned.nextSetBit(0); i >= 0; i = owned.nextSetBit(i + 1)) {
+            if (!completed.get(i) && !abandoned.get(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isEndGame() {
+        int missing = totalChunks - completed.cardinality();
+        return missing <= endGameThreshold || inFlight.size() >= missing - abandoned.cardinality();
+    }
+
+    private int pickRarest(BitSet owned, boolean endGame, PeerInfo peer) {
+        int chosen = -1;
+        int bestAvailability = Integer.MAX_VALUE;
+        int ties = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = owned.nextSetBit(0); i >= 0; i = owned.nextSetBit(i + 1)) {
+            if (completed.get(i) || abandoned.get(i)) {
+                continue;
+            }
+            Set<PeerInfo> requesters = inFlight.get(i);
+            if (endGame ? (requesters == null || requesters.contains(peer)) : requesters != null) {
+                continue;
+            }
+            int count = availability[i];
+            if (count < bestAvailability) {
+                bestAvailability = count;
+                chosen = i;
+                ties = 1;
+            } else if (count == bestAvailability && random.nextInt(++ties) == 0) {
+                chosen = i;
+            }
+        }
+        return chosen;
+    }
+
+    private void adjustAvailability(BitSet chunks, int delta) {
+        for (int i = chunks.nextSetBit(0); i >= 0 && i < totalChunks; i = chunks.nextSetBit(i + 1)) {
+            availability[i] += delta;
+        }
+    }
+}
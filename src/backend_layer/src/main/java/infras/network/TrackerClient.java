@@ -0,0 +1,81 @@
+package infras.network;
+
+import domain.entity.PeerInfo;
+import infras.utils.SSLUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import utils.Config;
+
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends one request to the tracker over a fresh mutual-TLS connection and returns its reply.
+ * The connection opens with the {@code P2PB/} preface; when the tracker accepts it the request and reply travel as
+ * length-prefixed {@link WireFrame}s, so JSON fields may contain any character and are not limited by a line
+ * length. A tracker that only speaks text gets the same request as a {@code |}-separated line instead.
+ */
+public final class TrackerClient {
+    private TrackerClient() {
+    }
+
+    /**
+     * @return the reply fields (field 0 is the reply status), or null if the tracker closed without answering
+     */
+    public static WireFields call(WireFrame request) throws Exception {
+        try (SSLSocket socket = SSLUtils.createSecureSocket(new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT))) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            out.write(WireFrame.prefaceLine(WireFrame.VERSION).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            if (WireFrame.parsePreface(readLine(in)) < 1) {
+                out.write((request.toText() + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                String response = readLine(in);
+                return response == null ? null : new WireFields.Text(response.split("\\|"));
+            }
+
+            ByteBuf frame = Unpooled.buffer();
+            try {
+                request.writeTo(frame);
+                frame.readBytes(out, frame.readableBytes());
+            } finally {
+                frame.release();
+            }
+            out.flush();
+            return readFrame(new DataInputStream(in));
+        }
+    }
+
+    private static WireMessage readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 3 || length > Config.TRACKER_MAX_FRAME_BYTES) {
+            throw new IOException("Invalid tracker frame length: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return WireMessage.parse(Unpooled.wrappedBuffer(body));
+    }
+
+    /**
+     * Reads one line byte by byte, so nothing after it is consumed from the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8).trim();
+    }
+}
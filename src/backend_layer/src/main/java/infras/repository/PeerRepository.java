@@ -2,7 +2,9 @@ package infras.repository;
 
 import domain.repository.*;
 import io.netty.channel.socket.SocketChannel;
+import domain.entity.FileAccess;
 import domain.entity.FileInfo;
+import domain.entity.PartialFile;
 import domain.entity.PeerInfo;
 import domain.entity.ProgressInfo;
 import infras.subrepo.*;
@@ -17,7 +19,6 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Selector;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantLock;
 
 
 public class PeerRepository implements IPeerRepository, AutoCloseable {
@@ -33,8 +34,8 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
     private final ConcurrentHashMap<String, CopyOnWriteArrayList<SSLSocket>> openChannels;
     private final ConcurrentHashMap<String, List<Future<Boolean>>> futures;
     private final ConcurrentHashMap<String, ProgressInfo> processes;
+    private final ConcurrentHashMap<String, PartialFile> partialFiles;
     private boolean isRunning;
-    private final ReentrantLock fileLock;
 
     // Sub-models
     private final IFileDownloadRepository fileDownloadModel;
@@ -46,7 +47,7 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
         this.openChannels = new ConcurrentHashMap<>();
         this.futures = new ConcurrentHashMap<>();
         this.processes = new ConcurrentHashMap<>();
-        this.fileLock = new ReentrantLock();
+        this.partialFiles = new ConcurrentHashMap<>();
         this.publicSharedFiles = new ConcurrentHashMap<>();
         this.privateSharedFiles = new ConcurrentHashMap<>();
         this.sharedFileNames = new HashSet<>();
@@ -143,6 +144,11 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
         return fileShareModel.shareFileList(publicFiles, privateFiles);
     }
 
+    @Override
+    public boolean syncSharedFiles() {
+        return fileShareModel.syncSharedFiles();
+    }
+
     @Override
     public void sharePrivateFile(File file, FileInfo oldFileInfo, int isReplace, String progressId, List<PeerInfo> peerList) {
         fileShareModel.sharePrivateFile(file, oldFileInfo, isReplace, progressId, peerList);
@@ -224,11 +230,21 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
         return peerDiscoveryModel.getPeersWithFile(fileHash);
     }
 
+    @Override
+    public FileAccess getFileAccess(String fileHash) {
+        return peerDiscoveryModel.getFileAccess(fileHash);
+    }
+
     @Override
     public List<PeerInfo> getSelectivePeers(String fileHash) {
         return peerDiscoveryModel.getSelectivePeers(fileHash);
     }
 
+    @Override
+    public void announceDownload(String fileHash, String state) {
+        peerDiscoveryModel.announceDownload(fileHash, state);
+    }
+
     public ExecutorService getExecutor() {
         return executor;
     }
@@ -237,14 +253,14 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
         return processes;
     }
 
-    public ReentrantLock getFileLock() {
-        return fileLock;
-    }
-
     public Map<String, List<Future<Boolean>>> getFutures() {
         return futures;
     }
 
+    public Map<String, PartialFile> getPartialFiles() {
+        return partialFiles;
+    }
+
     public Map<String, CopyOnWriteArrayList<SSLSocket>> getOpenChannels() {
         return openChannels;
     }
@@ -293,6 +309,11 @@ public class PeerRepository implements IPeerRepository, AutoCloseable {
         networkModel.processRequest(request, clientIP, channel);
     }
 
+    @Override
+    public void announceHave(String fileHash, int chunkIndex) {
+        networkModel.announceHave(fileHash, chunkIndex);
+    }
+
     // Removed duplicate method - using the delegated one above
 
     @Override
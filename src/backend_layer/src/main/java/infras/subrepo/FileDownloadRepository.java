@@ -1,36 +1,59 @@
 package infras.subrepo;
 
-import domain.entity.ChunkInfo;
+import domain.entity.ChunkMap;
 import domain.entity.DownloadMetadata;
 import domain.entity.FileInfo;
+import domain.entity.PartialFile;
 import domain.entity.PeerInfo;
 import domain.entity.ProgressInfo;
 import domain.repository.IFileDownloadRepository;
 import domain.repository.IPeerRepository;
+import infras.network.ChunkResponse;
+import infras.network.PeerConnectionPool;
+import infras.network.PieceScheduler;
+import infras.utils.ChunkJournal;
+import infras.utils.FileHasher;
 import infras.utils.FileUtils;
+import infras.utils.HashCache;
 import infras.utils.MetadataUtils;
-import infras.utils.SSLUtils;
+import io.netty.buffer.ByteBufUtil;
 import utils.Config;
 import utils.Log;
 import utils.LogTag;
+import utils.RequestInfor;
 
 import javax.net.ssl.SSLSocket;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileDownloadRepository implements IFileDownloadRepository {
 
     private final IPeerRepository peerModel;
     private final ExecutorService executorService;
+    private final ExecutorService downloadWorkers;
+    private final PeerConnectionPool connectionPool;
+    private final Map<String, DownloadSession> activeSessions = new ConcurrentHashMap<>(); // file hash -> running download
 
     public FileDownloadRepository(IPeerRepository peerModel) {
         this.peerModel = peerModel;
         this.executorService = Executors.newFixedThreadPool(10);
+        this.downloadWorkers = Executors.newCachedThreadPool();
+        this.connectionPool = new PeerConnectionPool();
+        this.connectionPool.setHaveListener((peerInfo, fileHash, chunkIndex) -> {
+            DownloadSession session = this.activeSessions.get(fileHash);
+            if (session != null) {
+                session.scheduler.onHave(peerInfo, chunkIndex);
+                this.downloadWorkers.execute(() -> this.pump(session));
+            }
+        });
     }
 
     @Override
@@ -94,6 +117,7 @@ public class FileDownloadRepository implements IFileDownloadRepository {
                                 metadata.getFileHash(),
                                 null // peer not needed for metadata resumption
                         );
+                        fileInfo.setPiecesRoot(metadata.getPiecesRoot());
 
                         progress.setStatus(ProgressInfo.ProgressStatus.DOWNLOADING);
                         progress.updateProgressTime();
@@ -153,42 +177,56 @@ public class FileDownloadRepository implements IFileDownloadRepository {
 
             // Load existing metadata if available
             String metaFilePath = progressInfo.getSavePath() + ".part.meta";
-            DownloadMetadata metadata = MetadataUtils.loadMetadata(metaFilePath);
+            DownloadMetadata metadata = new File(metaFilePath).exists() ? MetadataUtils.loadMetadata(metaFilePath) : null;
+            if (metadata != null && (!Objects.equals(metadata.getFileHash(), fileInfo.getFileHash()) || metadata.getChunks() == null)) {
+                metadata = null; // metadata của một tệp khác cùng đường dẫn
+            }
+
+            long chunks = (fileInfo.getFileSize() + Config.CHUNK_SIZE - 1) / Config.CHUNK_SIZE;
+            if (chunks > Config.MAX_FILE_CHUNKS) {
+                Log.logError("Cannot download " + fileInfo.getFileName() + ": " + chunks + " chunks exceed MAX_FILE_CHUNKS ("
+                        + Config.MAX_FILE_CHUNKS + ")", null);
+                progressInfo.setStatus(ProgressInfo.ProgressStatus.FAILED);
+                return LogTag.I_ERROR;
+            }
 
             try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
                 raf.setLength(fileInfo.getFileSize());
-                ConcurrentHashMap<Integer, List<PeerInfo>> peerOfChunk = new ConcurrentHashMap<>();
                 int totalChunk = (int) Math.ceil((double) fileInfo.getFileSize() / (double) Config.CHUNK_SIZE);
-                this.initializeHashMap(peerOfChunk, totalChunk);
-
-                // Initialize downloaded chunks from metadata
-                if (metadata != null) {
-                    synchronized (progressInfo) {
-                        for (int i = 0; i < metadata.getChunks().size(); i++) {
-                            ChunkInfo chunk = metadata.getChunks().get(i);
-                            if (chunk.isCompleted()) {
-                                progressInfo.getDownloadedChunks().add(i);
-                            }
-                        }
-                        chunkCount.set(progressInfo.getDownloadedChunks().size());
-                        progressInfo.setProgressPercentage((int) ((double) chunkCount.get() * 100.0 / totalChunk));
-                        progressInfo.setBytesTransferred((long) chunkCount.get() * Config.CHUNK_SIZE);
-                    }
-                }
 
-                int result = this.downloadAllChunks(metadata, fileInfo, peerInfos, progressId, chunkCount, raf, peerOfChunk);
+                List<String> pieceHashes = this.fetchPieceHashes(fileInfo, peerInfos, totalChunk);
+                if (pieceHashes == null && fileInfo.getPiecesRoot() != null) {
+                    // Không tải mà bỏ qua xác minh từng chunk khi tệp đã công bố pieces root
+                    Log.logError("No peer provided piece hashes matching the published root of " + fileInfo.getFileName()
+                            + ", download aborted", null);
+                    progressInfo.setStatus(ProgressInfo.ProgressStatus.FAILED);
+                    return LogTag.I_ERROR;
+                }
+                int result = this.downloadAllChunks(metadata, fileInfo, file, peerInfos, progressId, chunkCount, raf, pieceHashes);
                 if (result == LogTag.I_CANCELLED) {
-                    this.cancelDownload(file.getPath());
+                    // Tạm dừng: giữ dữ liệu và trạng thái để tiếp tục, chỉ xóa khi thực sự hủy
+                    if (!ProgressInfo.ProgressStatus.PAUSED.equals(progressInfo.getStatus())) {
+                        this.cancelDownload(file.getPath());
+                    }
                     return LogTag.I_CANCELLED;
                 } else {
-                    String fileHash = FileUtils.computeFileHash(file);
+                    // Every chunk was checked against the published piece hashes, so the full-file rehash is redundant
+                    String fileHash = pieceHashes != null && result == LogTag.I_SUCCESS
+                            ? fileInfo.getFileHash()
+                            : FileUtils.computeFileHash(file);
                     if (fileHash.equals(LogTag.S_ERROR)) {
+                        MetadataUtils.deleteResumeState(file.getPath());
                         return LogTag.I_ERROR;
                     } else {
                         String expectedFileHash = fileInfo.getFileHash();
                         if (!fileHash.equalsIgnoreCase(expectedFileHash)) {
+                            // The chunk map cannot be trusted against this data, so the next attempt starts over
+                            MetadataUtils.deleteResumeState(file.getPath());
                             return LogTag.I_HASH_MISMATCH;
                         } else {
+                            MetadataUtils.deleteResumeState(progressInfo.getSavePath());
+                            // Chia sẻ lại tệp vừa tải sẽ dùng mã băm đã xác minh thay vì đọc lại toàn bộ tệp
+                            HashCache.put(file, HashCache.stamp(file), new FileHasher.Result(fileHash, pieceHashes, fileInfo.getPiecesRoot()));
                             ProgressInfo finalProgress = peerModel.getProcesses().get(progressId);
                             if (finalProgress != null) {
                                 synchronized (finalProgress) {
@@ -207,155 +245,361 @@ public class FileDownloadRepository implements IFileDownloadRepository {
                 }
             } catch (Exception e) {
                 Log.logError("Error during file download: " + e.getMessage(), e);
-                this.cancelDownload(file.getPath());
+                if (!ProgressInfo.ProgressStatus.PAUSED.equals(progressInfo.getStatus())) {
+                    this.cancelDownload(file.getPath());
+                }
                 return LogTag.I_ERROR;
             }
         }
     }
 
-    private Integer downloadAllChunks(DownloadMetadata metadata, FileInfo file, List<PeerInfo> peerInfos, String progressId, AtomicInteger
-                                              chunkCount,
-                                      RandomAccessFile raf, ConcurrentHashMap<Integer, List<PeerInfo>> peerOfChunk) throws
-            InterruptedException {
+    /**
+     * Downloads every missing chunk using a {@link PieceScheduler}: each peer is first asked for its bitfield,
+     * then requests are kept outstanding in bounded windows ({@link Config#PEER_PARALLEL_REQUESTS} per peer,
+     * {@link Config#DOWNLOAD_MAX_IN_FLIGHT} per download) and every completion refills them, until the file is
+     * complete or no peer has anything left to offer. No thread blocks per chunk.
+     * While it runs the download is registered as a {@link PartialFile}, so completed chunks are served to
+     * other peers and announced to the tracker. With {@code pieceHashes} every chunk, including those kept
+     * from a previous attempt, is verified and a corrupt one is simply fetched again.
+     */
+    private Integer downloadAllChunks(DownloadMetadata metadata, FileInfo file, File saveFile, List<PeerInfo> peerInfos,
+                                      String progressId, AtomicInteger chunkCount, RandomAccessFile raf,
+                                      List<String> pieceHashes) throws InterruptedException, IOException {
         int totalChunk = (int) Math.ceil((double) file.getFileSize() / (double) Config.CHUNK_SIZE);
-        ArrayList<Integer> failedChunks = new ArrayList<>();
         ProgressInfo progressInfo = this.peerModel.getProcesses().get(progressId);
+        if (progressInfo == null) {
+            Log.logError("No progress entry for download " + progressId + " of " + file.getFileName(), null);
+            return LogTag.I_ERROR;
+        }
 
-        for (int i = 0; i < totalChunk; ++i) {
-            // Skip completed chunks from metadata
-            if (metadata != null && metadata.getChunks().get(i).isCompleted()) {
-                continue;
-            }
-
-            if (progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
-                    progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED) ||
-                    Thread.currentThread().isInterrupted()) {
-                return LogTag.I_CANCELLED;
-            }
-
-            while (((ThreadPoolExecutor) executorService).getActiveCount() >= 6) {
-                Thread.sleep(50L);
-                if (progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
-                        progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED)) {
-                    return LogTag.I_CANCELLED;
+        ChunkMap completedChunks = new ChunkMap(totalChunk);
+        if (metadata != null) {
+            ChunkMap stored = metadata.getChunks();
+            for (int i = stored.nextSetBit(0); i >= 0 && i < totalChunk; i = stored.nextSetBit(i + 1)) {
+                if (pieceHashes == null || this.verifyStoredChunk(raf.getChannel(), file.getFileSize(), i, pieceHashes.get(i))) {
+                    completedChunks.set(i);
                 }
             }
-
-            if (!this.downloadChunkWithRetry(i, peerInfos, raf, file, progressId, chunkCount, peerOfChunk)) {
-                Log.logInfo("Chunk " + i + "Failed to download, adding to retry list");
-                failedChunks.add(i);
-            }
+        }
+        // Tiến trình tính từ các chunk đã xác minh, không phải từ metadata
+        chunkCount.set(completedChunks.cardinality());
+        long bytes = (long) chunkCount.get() * Config.CHUNK_SIZE;
+        if (completedChunks.get(totalChunk - 1)) {
+            bytes -= (long) totalChunk * Config.CHUNK_SIZE - file.getFileSize(); // chunk cuối ngắn hơn
+        }
+        synchronized (progressInfo) {
+            // Bản đồ chunk dùng chung: PartialFile và scheduler đánh dấu, tiến trình và metadata đọc cùng một đối tượng
+            progressInfo.setDownloadedChunks(completedChunks);
+            progressInfo.setProgressPercentage((int) ((double) chunkCount.get() * 100.0 / totalChunk));
+            progressInfo.setBytesTransferred(bytes);
+        }
+        PieceScheduler scheduler = new PieceScheduler(totalChunk, completedChunks, Config.END_GAME_CHUNKS, Config.CHUNK_MAX_ATTEMPTS);
+        if (scheduler.isComplete()) {
+            return LogTag.I_SUCCESS;
         }
 
-        int maxRetryCount = 2;
+        DownloadMetadata resumeState = new DownloadMetadata(file.getFileName(), file.getFileHash(), file.getFileSize(), progressInfo.getSavePath());
+        resumeState.setChunks(completedChunks);
+        resumeState.setPiecesRoot(file.getPiecesRoot());
+        if (metadata != null) {
+            resumeState.setCreatedAt(metadata.getCreatedAt());
+        }
+        ChunkJournal journal = null;
+        try {
+            journal = ChunkJournal.open(resumeState, raf.getChannel());
+        } catch (IOException e) {
+            Log.logError("Cannot open chunk journal for " + file.getFileName() + ", progress will only be saved on pause", e);
+        }
 
-        for (int i = 1; i <= maxRetryCount && !failedChunks.isEmpty(); ++i) {
-            Log.logInfo("Retrying failed chunks, round " + i + " with " + failedChunks.size() + " chunks");
-            ArrayList<Integer> stillFailed = new ArrayList<>();
+        PartialFile partialFile = new PartialFile(file.getFileHash(), file.getFileSize(), totalChunk, saveFile, completedChunks,
+                this.peerModel.getFileAccess(file.getFileHash()));
+        DownloadSession session = new DownloadSession(file, progressId, scheduler, partialFile, raf, chunkCount, pieceHashes, journal);
+        this.activeSessions.put(file.getFileHash(), session);
+        this.peerModel.getPartialFiles().put(file.getFileHash(), partialFile);
+        if (partialFile.hasAnyChunk()) {
+            this.announce(session, RequestInfor.ANNOUNCE_STARTED);
+        }
 
-            for (int j : failedChunks) {
-                if (progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
-                        progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED)) {
-                    return LogTag.I_CANCELLED;
+        try {
+            Map<PeerInfo, CompletableFuture<ChunkResponse>> bitfieldRequests = new LinkedHashMap<>();
+            for (PeerInfo peerInfo : peerInfos) {
+                bitfieldRequests.putIfAbsent(peerInfo, this.connectionPool.requestBitfield(peerInfo, file.getFileHash()));
+            }
+            List<PeerInfo> sources = new ArrayList<>();
+            for (Map.Entry<PeerInfo, CompletableFuture<ChunkResponse>> entry : bitfieldRequests.entrySet()) {
+                ChunkMap peerChunks = this.receiveBitfield(entry.getKey(), entry.getValue(), totalChunk);
+                if (peerChunks != null) {
+                    scheduler.addPeer(entry.getKey(), peerChunks);
+                    sources.add(entry.getKey());
                 }
+            }
+            Log.logInfo("Scheduling " + (totalChunk - scheduler.getCompletedCount()) + " chunks of " + file.getFileName() + " across " + sources.size() + " peers");
 
-                if (!this.downloadChunkWithRetry(j, peerInfos, raf, file, progressId, chunkCount, peerOfChunk)) {
-                    stillFailed.add(j);
+            long now = System.currentTimeMillis();
+            synchronized (session) {
+                for (PeerInfo peerInfo : sources) {
+                    session.windows.put(peerInfo, new PeerWindow(peerInfo, now));
                 }
             }
+            this.peerModel.getFutures().get(progressId).add(session.done);
+            this.pump(session);
 
-            failedChunks = stillFailed;
+            try {
+                session.done.get();
+            } catch (CancellationException ignore) {
+            } catch (ExecutionException e) {
+                Log.logError("Download failed for " + progressId + ": " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                session.done.cancel(false);
+                throw e;
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            this.activeSessions.remove(file.getFileHash(), session);
+            this.peerModel.getPartialFiles().remove(file.getFileHash(), partialFile);
+            if (session.announced.get()) {
+                this.announce(session, RequestInfor.ANNOUNCE_STOPPED);
+            }
         }
 
-        if (!failedChunks.isEmpty()) {
+        if (progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
+                progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED)) {
+            return LogTag.I_CANCELLED;
+        }
+        if (!scheduler.isComplete()) {
+            Log.logInfo("Download incomplete for " + progressId + ": " + scheduler.getCompletedCount() + "/" + totalChunk + " chunks");
             return LogTag.I_FAILURE;
-        } else {
-            return LogTag.I_SUCCESS;
         }
+        return LogTag.I_SUCCESS;
     }
 
-    private boolean downloadChunkWithRetry(int chunkIndex, List<PeerInfo> peerInfos, RandomAccessFile
-            raf, FileInfo file, String progressId, AtomicInteger
-                                                   chunkCount, ConcurrentHashMap<Integer, List<PeerInfo>> peerOfChunk) throws InterruptedException {
-        int maxRetries = 3;
+    /**
+     * Fetches the per-chunk hash list from the first peer whose list matches the pieces root published by
+     * the tracker. Returns null when the file has no root, and the download then verifies the whole file at the
+     * end; a file with a root whose list no peer could provide is not downloaded at all.
+     */
+    private List<String> fetchPieceHashes(FileInfo fileInfo, List<PeerInfo> peerInfos, int totalChunk) throws InterruptedException {
+        if (fileInfo.getPiecesRoot() == null) {
+            return null;
+        }
+        for (PeerInfo peerInfo : new LinkedHashSet<>(peerInfos)) {
+            ChunkResponse response = null;
+            CompletableFuture<ChunkResponse> request = this.connectionPool.requestPieceHashes(peerInfo, fileInfo.getFileHash());
+            try {
+                response = request.get();
+                if (response.isError()) {
+                    Log.logInfo("Peer " + peerInfo + " has no piece hashes: " + response.getErrorMessage());
+                    continue;
+                }
+                if (response.getChunkIndex() != totalChunk || response.getLength() != totalChunk * FileUtils.PIECE_HASH_LENGTH) {
+                    Log.logInfo("Peer " + peerInfo + " sent " + response.getChunkIndex() + " piece hashes, expected " + totalChunk);
+                    continue;
+                }
+                List<String> pieceHashes = FileUtils.unpackPieceHashes(ByteBufUtil.getBytes(response.getData()));
+                if (!fileInfo.getPiecesRoot().equalsIgnoreCase(FileUtils.computePiecesRoot(pieceHashes))) {
+                    Log.logInfo("Piece hashes from peer " + peerInfo + " do not match the published root");
+                    continue;
+                }
+                return pieceHashes;
+            } catch (InterruptedException e) {
+                request.cancel(false);
+                throw e;
+            } catch (ExecutionException e) {
+                Log.logError("Error requesting piece hashes from peer " + peerInfo + ": " + e.getMessage(), e);
+            } finally {
+                if (response != null) {
+                    response.release();
+                }
+            }
+        }
+        return null;
+    }
 
-        for (int i = 0; i < maxRetries; ++i) {
-            PeerInfo peerInfo = this.selectAvailablePeer(progressId, peerInfos, chunkIndex, peerOfChunk.getOrDefault(chunkIndex, new ArrayList<>()));
-            if (peerInfo == null) {
-                Log.logInfo("No available peers for chunk " + chunkIndex);
+    private boolean verifyStoredChunk(FileChannel fileChannel, long fileSize, int chunkIndex, String expectedChecksum) throws IOException {
+        long position = (long) chunkIndex * (long) Config.CHUNK_SIZE;
+        ByteBuffer chunkData = ByteBuffer.allocate((int) Math.min(Config.CHUNK_SIZE, fileSize - position));
+        while (chunkData.hasRemaining()) {
+            int read = fileChannel.read(chunkData, position + chunkData.position());
+            if (read < 0) {
                 return false;
             }
+        }
+        chunkData.flip();
+        return MetadataUtils.verifyChunkChecksum(chunkData, expectedChecksum);
+    }
 
-            try {
-                Log.logInfo("Retrying to download chunk " + chunkIndex + " from peer " + peerInfo.getIp() + ":" + peerInfo.getPort() + " (attempt " + (i + 1) + ")");
-                peerInfo.addTaskForDownload();
-                peerOfChunk.computeIfAbsent(chunkIndex, (v) -> new ArrayList<>()).add(peerInfo);
-                Future<Boolean> future = this.executorService.submit(() -> {
-                    this.peerModel.getFileLock().lock();
+    private ChunkMap receiveBitfield(PeerInfo peerInfo, CompletableFuture<ChunkResponse> request, int totalChunk) throws InterruptedException {
+        ChunkResponse response = null;
+        try {
+            response = request.get();
+            if (response.isError()) {
+                Log.logInfo("Peer " + peerInfo + " refused bitfield request: " + response.getErrorMessage());
+                return null;
+            }
+            if (response.getChunkIndex() != totalChunk) {
+                Log.logInfo("Peer " + peerInfo + " reported " + response.getChunkIndex() + " chunks, expected " + totalChunk);
+                return null;
+            }
+            return ChunkMap.fromBytes(ByteBufUtil.getBytes(response.getData()), totalChunk);
+        } catch (InterruptedException e) {
+            request.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Log.logError("Error requesting bitfield from peer " + peerInfo + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            if (response != null) {
+                response.release();
+            }
+        }
+    }
 
-                    boolean result;
-                    try {
-                        result = this.downloadChunk(peerInfo, chunkIndex, raf, file, progressId, chunkCount);
-                    } finally {
-                        this.peerModel.getFileLock().unlock();
+    /**
+     * Fills the free request slots of every peer window with the rarest chunk that peer holds.
+     * Called whenever the picture may have changed: a request completed, a HAVE arrived or a back-off
+     * or idle deadline passed. When nothing is in flight and no peer can still contribute, the download ends.
+     */
+    private void pump(DownloadSession session) {
+        PieceScheduler scheduler = session.scheduler;
+        ProgressInfo progressInfo = this.peerModel.getProcesses().get(session.progressId);
+        synchronized (session) {
+            if (session.done.isDone()) {
+                return;
+            }
+            if (progressInfo == null ||
+                    progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
+                    progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED)) {
+                Log.logInfo("Process paused/cancelled by user while downloading " + session.file.getFileName());
+                session.done.complete(false);
+                return;
+            }
+            if (scheduler.isComplete()) {
+                session.done.complete(true);
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            boolean issued = true;
+            while (issued && session.inFlight < Config.DOWNLOAD_MAX_IN_FLIGHT) {
+                issued = false;
+                for (PeerWindow window : session.windows.values()) {
+                    if (session.inFlight >= Config.DOWNLOAD_MAX_IN_FLIGHT) {
+                        break;
+                    }
+                    if (window.inFlight >= Config.PEER_PARALLEL_REQUESTS || window.retryAt > now) {
+                        continue;
                     }
+                    int chunkIndex = scheduler.nextChunk(window.peerInfo);
+                    if (chunkIndex < 0) {
+                        continue;
+                    }
+                    window.inFlight++;
+                    session.inFlight++;
+                    issued = true;
+                    this.connectionPool.requestChunk(window.peerInfo, session.file.getFileHash(), chunkIndex)
+                            .whenCompleteAsync((response, error) -> this.onChunkResponse(session, window, chunkIndex, response, error),
+                                    this.downloadWorkers);
+                }
+            }
 
-                    return result;
-                });
-                this.peerModel.getFutures().get(progressId).add(future);
-                if (future.get()) {
-                    Log.logInfo("Chunk " + chunkIndex + " downloaded successfully from peer " + peerInfo.getIp() + ":" + peerInfo.getPort());
-                    return true;
+            // Peers with requests in flight are pumped again by their completions; the others may be
+            // waiting out a back-off or, for partial peers, HAVE announcements until they go idle.
+            long wakeAt = Long.MAX_VALUE;
+            for (PeerWindow window : session.windows.values()) {
+                if (window.inFlight > 0) {
+                    continue;
+                }
+                if (scheduler.hasWorkFor(window.peerInfo)) {
+                    if (window.retryAt > now) {
+                        wakeAt = Math.min(wakeAt, window.retryAt);
+                    }
+                } else if (scheduler.mayGainChunks(window.peerInfo)
+                        && now - window.lastActivity < Config.CHUNK_REQUEST_TIMEOUT_MS) {
+                    wakeAt = Math.min(wakeAt, window.lastActivity + Config.CHUNK_REQUEST_TIMEOUT_MS);
                 }
+            }
 
-                Log.logInfo("Chunk " + chunkIndex + " download failed from peer " + peerInfo.getIp() + ":" + peerInfo.getPort() + " (attempt " + (i + 1) + ")");
-                Thread.sleep(50L * (long) (i + 1));
-            } catch (Exception e) {
-                Log.logError("Error downloading chunk " + chunkIndex + " from peer " + peerInfo.getIp() + ":" + peerInfo.getPort() + ": " + e.getMessage(), e);
-                Thread.sleep(50L * (long) (i + 1));
-            } finally {
-                peerInfo.removeTaskForDownload();
+            if (session.inFlight == 0 && wakeAt == Long.MAX_VALUE) {
+                session.done.complete(scheduler.isComplete());
+            } else if (wakeAt < session.wakeupAt) {
+                this.scheduleWakeup(session, wakeAt, now);
             }
         }
-
-        Log.logInfo("Failed to download chunk " + chunkIndex + " after " + maxRetries + " attempts");
-        return false;
     }
 
-    private PeerInfo selectAvailablePeer(String progressId, List<PeerInfo> peerInfos, int chunkIndex, List<
-            PeerInfo> usedPeers) throws InterruptedException {
-        int retryCount = 0;
-        final int MAX_RETRY = 20;
-
-        while (retryCount++ < MAX_RETRY) {
-            if ((this.peerModel.getProcesses().get(progressId)).getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
-                    (this.peerModel.getProcesses().get(progressId)).getStatus().equals(ProgressInfo.ProgressStatus.PAUSED)) {
-                return null;
+    private void scheduleWakeup(DownloadSession session, long wakeAt, long now) {
+        session.wakeupAt = wakeAt;
+        Executor delayed = CompletableFuture.delayedExecutor(wakeAt - now, TimeUnit.MILLISECONDS, this.downloadWorkers);
+        delayed.execute(() -> {
+            synchronized (session) {
+                if (session.wakeupAt == wakeAt) {
+                    session.wakeupAt = Long.MAX_VALUE;
+                }
             }
+            this.pump(session);
+        });
+    }
 
-            PeerInfo peerInfo = peerInfos.stream().filter(
-                            (peer) -> !usedPeers.contains(peer) && peer.isAvailableForDownload())
-                    .min(Comparator.comparingInt(PeerInfo::getTaskForDownload))
-                    .orElse(null);
-            if (peerInfo != null) {
-                return peerInfo;
+    private void onChunkResponse(DownloadSession session, PeerWindow window, int chunkIndex, ChunkResponse response, Throwable error) {
+        boolean stored = false;
+        try {
+            if (session.done.isDone()) {
+                return;
             }
-
-            Log.logInfo("Waiting for available peer for chunk " + chunkIndex + " (retry " + retryCount + ")");
-            Thread.sleep(50L);
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                Log.logInfo("Request for chunk " + chunkIndex + " from peer " + window.peerInfo + " failed: " + cause);
+            } else {
+                stored = this.storeChunk(window.peerInfo, chunkIndex, response, session);
+            }
+        } finally {
+            if (response != null) {
+                response.release();
+            }
+            this.finishRequest(session, window, chunkIndex, stored);
         }
+        this.pump(session);
+    }
 
-        return null;
+    private void finishRequest(DownloadSession session, PeerWindow window, int chunkIndex, boolean stored) {
+        synchronized (session) {
+            window.inFlight--;
+            session.inFlight--;
+            long now = System.currentTimeMillis();
+            window.lastActivity = now;
+            if (stored) {
+                window.consecutiveFailures = 0;
+                return;
+            }
+            if (session.done.isDone()) {
+                return;
+            }
+            session.scheduler.markFailed(window.peerInfo, chunkIndex);
+            if (++window.consecutiveFailures >= Config.MAX_RETRIES) {
+                Log.logInfo("Dropping peer " + window.peerInfo + " after " + window.consecutiveFailures + " consecutive failures");
+                session.scheduler.removePeer(window.peerInfo);
+                session.windows.remove(window.peerInfo);
+            } else {
+                window.retryAt = now + 50L * (long) window.consecutiveFailures;
+            }
+        }
     }
 
-    private void initializeHashMap(ConcurrentHashMap<Integer, List<PeerInfo>> peerOfChunk, int totalChunks) {
-        for (int i = 0; i < totalChunks; ++i) {
-            peerOfChunk.putIfAbsent(i, new ArrayList<>());
+    private void announce(DownloadSession session, String state) {
+        if (state.equals(RequestInfor.ANNOUNCE_STARTED)) {
+            session.announced.set(true);
         }
+        CompletableFuture.runAsync(() -> this.peerModel.announceDownload(session.file.getFileHash(), state), this.downloadWorkers);
     }
 
+    /**
+     * Deletes the partial file and its resume state (.part.meta and .part.journal).
+     */
     private void cancelDownload(String savePath) {
         Log.logInfo("Download process cancelled for file: " + savePath);
+        MetadataUtils.deleteResumeState(savePath);
         File file = new File(savePath);
         Path path = file.toPath();
         if (Files.exists(path) && file.delete()) {
@@ -365,98 +609,71 @@ public class FileDownloadRepository implements IFileDownloadRepository {
         }
     }
 
-    private boolean downloadChunk(PeerInfo peerInfo, int chunkIndex, RandomAccessFile raf, FileInfo file, String
-            progressId, AtomicInteger chunkCount) {
-        int retryCount = 3;
-        ProgressInfo progressInfo = this.peerModel.getProcesses().get(progressId);
-        if (!progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED)) {
-            for (int i = 1; i <= retryCount; ++i) {
-                if (progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED) ||
-                        progressInfo.getStatus().equals(ProgressInfo.ProgressStatus.PAUSED) ||
-                        Thread.currentThread().isInterrupted()) {
-                    Log.logInfo("Process paused/cancelled by user while downloading chunk " + chunkIndex + " from peer " + peerInfo.toString());
-                    return false;
-                }
-                SSLSocket sslSocket = null;
-                try {
-                    sslSocket = SSLUtils.createSecureSocket(peerInfo);
-                    String fileHash = file.getFileHash();
-                    String request = "GET_CHUNK|" + fileHash + "|" + chunkIndex + "\n";
-                    sslSocket.getOutputStream().write(request.getBytes());
-                    sslSocket.getOutputStream().flush();
-
-                    DataInputStream dis = new DataInputStream(sslSocket.getInputStream());
-
-                    int receivedIndex = dis.readInt();
-                    int chunkLength = dis.readInt();
-
-                    if (receivedIndex == chunkIndex && chunkLength > 0) {
-                        byte[] chunkDataByteArray = new byte[chunkLength];
-                        dis.readFully(chunkDataByteArray);
-
-                        if (new String(chunkDataByteArray, StandardCharsets.UTF_8).equals("ACCESS_DENIED")) {
-                            Log.logInfo("Access denied for chunk " + chunkIndex + " from peer " + peerInfo);
-                            return false;
-                        }
-
-                        if (chunkLength > 0) {
-                            synchronized (raf) {
-                                raf.seek((long) chunkIndex * (long) Config.CHUNK_SIZE);
-                                raf.write(chunkDataByteArray);
-                            }
-
-                            long totalChunks = (file.getFileSize() + (long) Config.CHUNK_SIZE - 1L) / (long) Config.CHUNK_SIZE;
-                            long downloadedChunks = chunkCount.incrementAndGet();
-                            int percent = (int) ((double) downloadedChunks * (double) 100.0F / (double) totalChunks);
-                            ProgressInfo progress = peerModel.getProcesses().get(progressId);
-                            if (progress != null) {
-                                synchronized (progress) {
-                                    progress.addBytesTransferred(chunkLength);
-                                    progress.setProgressPercentage(percent);
-                                    progress.addDownloadedChunk(chunkIndex);
-                                    progress.updateProgressTime();
-                                }
-                            }
-                            Log.logInfo("Successfully downloaded chunk " + chunkIndex + " from peer " + peerInfo + " (attempt " + i + ")");
-                            return true;
-                        }
-
-                        if (receivedIndex == -1) {
-                            byte[] errorData = new byte[chunkLength];
-                            dis.readFully(errorData);
-                            String errorMsg = new String(errorData, StandardCharsets.UTF_8);
-                            Log.logInfo("Received error (" + errorMsg + ") for chunk " + chunkIndex + " from peer " + peerInfo + " (attempt " + i + ")");
-                        } else {
-                            Log.logInfo("Failed to receive valid chunk " + chunkIndex + " from peer " + peerInfo + ". Index received: " + receivedIndex + ", Length: " + chunkLength);
-                        }
-                    }
+    /**
+     * Validates a chunk reply and writes it at its offset. Returns false if the reply is unusable.
+     * Package-private so ChunkWriteBenchmark can drive it without a network.
+     */
+    boolean storeChunk(PeerInfo peerInfo, int chunkIndex, ChunkResponse response, DownloadSession session) {
+        FileInfo file = session.file;
+        PieceScheduler scheduler = session.scheduler;
+        try {
+            if (response.isError()) {
+                Log.logInfo("Received error (" + response.getErrorMessage() + ") for chunk " + chunkIndex + " from peer " + peerInfo);
+                return false;
+            }
+            if (response.getChunkIndex() != chunkIndex || response.getLength() <= 0) {
+                Log.logInfo("Failed to receive valid chunk " + chunkIndex + " from peer " + peerInfo + ". Index received: " + response.getChunkIndex() + ", Length: " + response.getLength());
+                return false;
+            }
+            if (scheduler.isCompleted(chunkIndex)) {
+                // End-game duplicate: another peer delivered this chunk first.
+                return true;
+            }
 
-                } catch (InterruptedException | IOException e) {
-                    Log.logError("SSL Error downloading chunk " + chunkIndex + " from peer " + peerInfo + " (attempt " + i + "): " + e.getMessage(), e);
+            int chunkLength = response.getLength();
+            ByteBuffer chunkData = response.getData().nioBuffer();
+            if (session.pieceHashes != null && !MetadataUtils.verifyChunkChecksum(chunkData, session.pieceHashes.get(chunkIndex))) {
+                Log.logInfo("Chunk " + chunkIndex + " from peer " + peerInfo + " failed hash verification");
+                return false;
+            }
+            long position = (long) chunkIndex * (long) Config.CHUNK_SIZE;
+            // Positional writes do not move the channel position, so workers write disjoint chunks concurrently
+            while (chunkData.hasRemaining()) {
+                position += session.fileChannel.write(chunkData, position);
+            }
 
+            // Sets the bit in the shared chunk map, so the PartialFile can serve the chunk from here on
+            if (scheduler.markCompleted(peerInfo, chunkIndex)) {
+                if (session.journal != null) {
                     try {
-                        Thread.sleep(1000L);
-                    } catch (InterruptedException ex) {
-                        Thread.currentThread().interrupt();
-                        Log.logError("Process interrupted during sleep after error while downloading chunk " + chunkIndex + " from peer " + peerInfo, ex);
-                        return false;
+                        session.journal.append(chunkIndex);
+                    } catch (IOException e) {
+                        Log.logError("Cannot journal chunk " + chunkIndex + " of " + file.getFileName(), e);
                     }
-                } catch (Exception e) {
-                    Log.logError("SSL Unexpected error downloading chunk " + chunkIndex + " from peer " + peerInfo + " (attempt " + i + "): " + e.getMessage(), e);
-                    return false;
-                } finally {
-                    if (sslSocket != null) {
-                        try {
-                            sslSocket.close();
-                        } catch (IOException ignore) {
-                        }
+                }
+                this.peerModel.announceHave(file.getFileHash(), chunkIndex);
+                if (!session.announced.get()) {
+                    this.announce(session, RequestInfor.ANNOUNCE_STARTED);
+                }
+
+                long totalChunks = (file.getFileSize() + (long) Config.CHUNK_SIZE - 1L) / (long) Config.CHUNK_SIZE;
+                long downloadedChunks = session.chunkCount.incrementAndGet();
+                int percent = (int) ((double) downloadedChunks * (double) 100.0F / (double) totalChunks);
+                ProgressInfo progress = peerModel.getProcesses().get(session.progressId);
+                if (progress != null) {
+                    synchronized (progress) {
+                        progress.addBytesTransferred(chunkLength);
+                        progress.setProgressPercentage(percent);
+                        progress.updateProgressTime();
                     }
                 }
+                Log.logInfo("Successfully downloaded chunk " + chunkIndex + " from peer " + peerInfo);
             }
-
-            Log.logInfo("Failed to download chunk " + chunkIndex + " from peer " + peerInfo + " after " + retryCount + " attempts.");
+            return true;
+        } catch (IOException e) {
+            Log.logError("Error writing chunk " + chunkIndex + " from peer " + peerInfo + ": " + e.getMessage(), e);
+            return false;
         }
-        return false;
     }
 
     @Override
@@ -466,6 +683,8 @@ public class FileDownloadRepository implements IFileDownloadRepository {
             ProgressInfo progress = progressMap.get(progressId);
             String status = progress.getStatus();
 
+            // Look the session up before cancelling, which unregisters it
+            DownloadSession session = progress.getFileHash() != null ? this.activeSessions.get(progress.getFileHash()) : null;
             progress.setStatus(ProgressInfo.ProgressStatus.PAUSED);
             Log.logInfo("Download paused for progressId: " + progressId);
 
@@ -491,7 +710,21 @@ public class FileDownloadRepository implements IFileDownloadRepository {
                 }
             }
 
+            // A running download saves through its journal, which forces the data first and holds the same lock as
+            // compaction, so the two never write the metadata file at the same time
+            if (session != null && session.journal != null) {
+                session.journal.close();
+                Log.logInfo("Metadata saved for paused download: " + progressId);
+                return;
+            }
+
             // Save metadata
+            try {
+                forceData(session, progress.getSavePath());
+            } catch (IOException e) {
+                Log.logError("Cannot flush downloaded data of " + progressId + ", resume state not saved", e);
+                return;
+            }
             String metaFilePath = progress.getSavePath() + ".part.meta";
             DownloadMetadata metadata = MetadataUtils.loadMetadata(metaFilePath);
             if (metadata == null) {
@@ -499,14 +732,79 @@ public class FileDownloadRepository implements IFileDownloadRepository {
                 metadata = new DownloadMetadata(progress.getFileName(), progress.getFileHash(), progress.getTotalBytes(), progress.getSavePath());
             }
             // Update chunks to completed based on downloaded chunks
-            Set<Integer> downloadedChunks = progress.getDownloadedChunks();
-            for (int i = 0; i < metadata.getChunks().size(); i++) {
-                if (downloadedChunks.contains(i)) {
-                    metadata.getChunks().get(i).setStatus(ChunkInfo.ChunkStatus.COMPLETED);
-                }
+            ChunkMap downloadedChunks = progress.getDownloadedChunks();
+            if (downloadedChunks != null) {
+                metadata.getChunks().or(downloadedChunks);
+            }
+            // Per-chunk hashes are fetched again on resume and checked against the pieces root, so only the root is kept
+            if (session != null && session.file.getPiecesRoot() != null) {
+                metadata.setPiecesRoot(session.file.getPiecesRoot());
             }
             MetadataUtils.saveMetadata(metadata);
             Log.logInfo("Metadata saved for paused download: " + progressId);
         }
     }
+
+    /**
+     * Forces the bytes written so far, so the metadata saved after it never lists a chunk that is not on disk.
+     */
+    private static void forceData(DownloadSession session, String savePath) throws IOException {
+        if (session != null) {
+            session.fileChannel.force(false);
+            return;
+        }
+        Path path = Path.of(savePath);
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * State of one running download. Window bookkeeping is guarded by the session monitor.
+     */
+    static final class DownloadSession {
+        private final FileInfo file;
+        private final String progressId;
+        private final PieceScheduler scheduler;
+        private final PartialFile partialFile;
+        private final FileChannel fileChannel;
+        private final AtomicInteger chunkCount;
+        private final List<String> pieceHashes; // verified per-chunk SHA-256, or null to rely on the final file hash
+        private final ChunkJournal journal; // null if the journal could not be opened
+        private final AtomicBoolean announced = new AtomicBoolean(false);
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>(); // true once every chunk is stored
+        private final Map<PeerInfo, PeerWindow> windows = new LinkedHashMap<>();
+        private int inFlight;
+        private long wakeupAt = Long.MAX_VALUE;
+
+        DownloadSession(FileInfo file, String progressId, PieceScheduler scheduler, PartialFile partialFile,
+                                RandomAccessFile raf, AtomicInteger chunkCount, List<String> pieceHashes, ChunkJournal journal) {
+            this.file = file;
+            this.progressId = progressId;
+            this.scheduler = scheduler;
+            this.partialFile = partialFile;
+            this.fileChannel = raf.getChannel();
+            this.chunkCount = chunkCount;
+            this.pieceHashes = pieceHashes;
+            this.journal = journal;
+        }
+    }
+
+    /**
+     * Outstanding requests and back-off state of one peer within a download.
+     */
+    private static final class PeerWindow {
+        private final PeerInfo peerInfo;
+        private int inFlight;
+        private int consecutiveFailures;
+        private long retryAt;
+        private long lastActivity;
+
+        private PeerWindow(PeerInfo peerInfo, long now) {
+            this.peerInfo = peerInfo;
+            this.lastActivity = now;
+        }
+    }
 }
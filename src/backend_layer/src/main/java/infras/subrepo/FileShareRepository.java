@@ -1,21 +1,20 @@
 package infras.subrepo;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import domain.adapter.FileInfoAdapter;
+import domain.adapter.JsonCodec;
 import domain.entity.FileInfo;
 import domain.entity.PeerInfo;
 import domain.entity.ProgressInfo;
 import domain.repository.IFileShareRepository;
 import domain.repository.IPeerRepository;
-import infras.utils.FileUtils;
+import infras.network.TrackerClient;
+import infras.network.WireFields;
+import infras.network.WireFrame;
+import infras.utils.FileHasher;
 import infras.utils.SSLUtils;
+import infras.utils.ShareSyncState;
 import utils.*;
 
-import javax.net.ssl.SSLSocket;
 import java.io.*;
-import java.lang.reflect.Type;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -24,6 +23,7 @@ public class FileShareRepository implements IFileShareRepository {
 
     private final IPeerRepository peerModel;
     private final ExecutorService executorService;
+    private final ShareSyncState shareSyncState = new ShareSyncState();
 
     public FileShareRepository(IPeerRepository peerModel) {
         this.peerModel = peerModel;
@@ -34,28 +34,35 @@ public class FileShareRepository implements IFileShareRepository {
     public void sharePublicFile(File file, String fileName, String progressId, int isReplace, FileInfo oldFileInfo) {
         try {
             if (isReplace == 1 && oldFileInfo != null) {
-                this.unshareFile(oldFileInfo);
                 peerModel.getPublicSharedFiles().remove(oldFileInfo.getFileName());
                 peerModel.getPrivateSharedFiles().remove(oldFileInfo);
             }
 
             ProgressInfo progress = peerModel.getProgress().get(progressId);
 
-            String fileHash = FileUtils.hashFile(file, progress);
-            if (fileHash == null) {
+            long lastModified = file.lastModified();
+            FileHasher.Result hashes = FileHasher.hash(file, progress);
+            if (hashes == null) {
                 return;
             }
-
-            FileInfo newFileInfo = new FileInfo(fileName, file.length(), fileHash, new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), true);
-            List<FileInfo> fileInfos = new ArrayList<>();
-            fileInfos.add(newFileInfo);
-            boolean result = shareFileList(fileInfos, new HashMap<>());
-            if (!result) {
+            if (file.lastModified() != lastModified) {
+                Log.logInfo("File changed while hashing, not sharing: " + file.getAbsolutePath());
                 progress.setStatus(ProgressInfo.ProgressStatus.FAILED);
                 executorService.submit(() -> AppPaths.removeSharedFile(fileName));
                 return;
             }
+
+            FileInfo newFileInfo = new FileInfo(fileName, file.length(), hashes.fileHash(), new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), true);
+            newFileInfo.setPieceHashes(hashes.pieceHashes());
+            newFileInfo.setPiecesRoot(hashes.piecesRoot());
+            newFileInfo.setSourceLastModified(lastModified);
             this.peerModel.getPublicSharedFiles().put(fileName, newFileInfo);
+            if (!syncSharedFiles()) {
+                this.peerModel.getPublicSharedFiles().remove(fileName, newFileInfo);
+                progress.setStatus(ProgressInfo.ProgressStatus.FAILED);
+                executorService.submit(() -> AppPaths.removeSharedFile(fileName));
+                return;
+            }
             this.peerModel.getFiles().add(newFileInfo);
 
 
@@ -94,10 +101,78 @@ public class FileShareRepository implements IFileShareRepository {
             peerModel.getPrivateSharedFiles().put(targetFile, new HashSet<>(peersList));
             Log.logInfo("Changed file " + targetFile.getFileName() + " to PRIVATE for peers: " + peersList);
         }
-        if (unshareFile(targetFile) != 1) {
+        return syncSharedFiles();
+    }
+
+    /**
+     * Sends the tracker only what changed since its last acknowledged state (see {@link ShareSyncState}).
+     * A version mismatch is answered with a full snapshot; a tracker without SYNC gets the legacy SHARE and
+     * UNSHARED_FILE requests.
+     */
+    @Override
+    public synchronized boolean syncSharedFiles() {
+        if (!SSLUtils.isSSLSupported()) {
+            Log.logError("SSL certificates not found! SSL is now mandatory for security.", null);
+            throw new IllegalStateException("SSL certificates required for secure communication");
+        }
+
+        PeerInfo self = new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername());
+        ShareSyncState.Delta delta = shareSyncState.diff(peerModel.getPublicSharedFiles(), peerModel.getPrivateSharedFiles(), self);
+        long base = delta.baseVersion();
+        if (base > 0 && delta.isEmpty()) {
+            return true;
+        }
+
+        try {
+            WireFields response = base > 0
+                    ? sendSync(base, delta.publicAdded(), delta.privateAdded(), delta.removed())
+                    : sendSync(ShareSyncState.FULL_SNAPSHOT, delta.allPublic(), delta.allPrivate(), List.of());
+            if (response != null && response.command().equals(RequestInfor.SYNC_MISMATCH)) {
+                Log.logInfo("Tracker share version " + response.text(1) + " does not match " + base + ", sending full snapshot");
+                response = sendSync(ShareSyncState.FULL_SNAPSHOT, delta.allPublic(), delta.allPrivate(), List.of());
+            }
+            if (response != null && response.command().equals(RequestInfor.SYNCED)) {
+                shareSyncState.commit(delta, Long.parseLong(response.text(1)));
+                Log.logInfo("Synced shares with tracker: +" + delta.publicAdded().size() + " public, +"
+                        + delta.privateAdded().size() + " private, -" + delta.removed().size() + ", version " + response.text(1));
+                return true;
+            }
+            if (response == null) {
+                Log.logInfo("Tracker closed the connection without answering SYNC");
+                return false;
+            }
+            if (!response.command().equals(LogTag.S_ERROR)) {
+                Log.logInfo("Tracker does not support SYNC, falling back to SHARE: " + (response != null ? response.command() : null));
+                for (FileInfo file : delta.removed()) {
+                    unshareFile(file);
+                }
+                if (!shareFileList(delta.allPublic(), delta.allPrivate())) {
+                    return false;
+                }
+                shareSyncState.commit(delta, 0);
+                return true;
+            }
+            Log.logInfo("Tracker rejected SYNC: " + (response.size() > 1 ? response.text(1) : response.command()));
+            return false;
+        } catch (Exception e) {
+            Log.logError("Error syncing shared files with tracker: " + e.getMessage(), e);
             return false;
         }
-        return shareFileList(new ArrayList<>(peerModel.getPublicSharedFiles().values()), peerModel.getPrivateSharedFiles());
+    }
+
+    /**
+     * SYNC|peerIp|peerPort|baseVersion|newVersion|publicAdded|privateAdded|removed, base {@link ShareSyncState#FULL_SNAPSHOT} replaces every file of this peer.
+     */
+    private WireFields sendSync(long base, List<FileInfo> publicAdded, Map<FileInfo, Set<PeerInfo>> privateAdded, List<FileInfo> removed) throws Exception {
+        long version = shareSyncState.getVersion() + 1;
+        return TrackerClient.call(WireFrame.request(RequestInfor.SYNC)
+                .add(Config.SERVER_IP)
+                .add(Config.PEER_PORT)
+                .add(base)
+                .add(version)
+                .addJson(JsonCodec.FILE_GSON, publicAdded, JsonCodec.FILE_LIST_TYPE)
+                .addJson(JsonCodec.FILE_GSON, privateAdded, JsonCodec.PRIVATE_FILE_MAP_TYPE)
+                .addJson(JsonCodec.FILE_GSON, removed, JsonCodec.FILE_LIST_TYPE));
     }
 
     @Override
@@ -108,36 +183,19 @@ public class FileShareRepository implements IFileShareRepository {
         }
 
         try {
-            PeerInfo sslTrackerHost = new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT);
             for (Set<PeerInfo> peers : privateFiles.values()) {
                 peers.add(new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()));
             }
-            Log.logInfo("Established SSL connection to tracker for sharing files");
-            StringBuilder messageBuilder = new StringBuilder("SHARE|");
-            messageBuilder.append(publicFiles.size()).append("|")
-                    .append(privateFiles.size()).append("|");
-
-            Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter())
-                    .enableComplexMapKeySerialization().create();
-            Type listType = new TypeToken<List<FileInfo>>() {
-            }.getType();
-            String publicFileToPeersJson = gson.toJson(publicFiles, listType);
-            Type mapType = new TypeToken<Map<FileInfo, Set<PeerInfo>>>() {
-            }.getType();
-            String privateSharedFileJson = gson.toJson(privateFiles, mapType);
-
-            messageBuilder.append(publicFileToPeersJson).append("|")
-                    .append(privateSharedFileJson).append("\n");
-
-            String message = messageBuilder.toString();
-            Log.logInfo("Sent request: " + message);
-            try (SSLSocket sslSocket = SSLUtils.createSecureSocket(sslTrackerHost)) {
-                sslSocket.getOutputStream().write(message.getBytes());
-                BufferedReader reader = new BufferedReader(new InputStreamReader(sslSocket.getInputStream()));
-                String response = reader.readLine();
-                Log.logInfo("Shared file list with tracker, response: " + response);
-                return response.startsWith(LogTag.S_SUCCESS);
-            }
+            // The lists are serialized straight into the request frame, never as one large String
+            WireFrame request = WireFrame.request(RequestInfor.SHARE)
+                    .add(publicFiles.size())
+                    .add(privateFiles.size())
+                    .addJson(JsonCodec.FILE_GSON, publicFiles, JsonCodec.FILE_LIST_TYPE)
+                    .addJson(JsonCodec.FILE_GSON, privateFiles, JsonCodec.PRIVATE_FILE_MAP_TYPE);
+            Log.logInfo("Sharing " + publicFiles.size() + " public and " + privateFiles.size() + " private files with tracker");
+            WireFields response = TrackerClient.call(request);
+            Log.logInfo("Shared file list with tracker, response: " + (response != null ? response.command() : null));
+            return response != null && response.command().startsWith(LogTag.S_SUCCESS);
         } catch (Exception e) {
             Log.logError("Error sharing file list with tracker: " + e.getMessage(), e);
             return false;
@@ -147,29 +205,40 @@ public class FileShareRepository implements IFileShareRepository {
     @Override
     public void sharePrivateFile(File file, FileInfo oldFileInfo, int isReplace, String progressId, List<PeerInfo> peerList) {
         if (isReplace == 1 && oldFileInfo != null) {
-            this.unshareFile(oldFileInfo);
             peerModel.getPublicSharedFiles().remove(oldFileInfo.getFileName(), oldFileInfo);
             peerModel.getPrivateSharedFiles().remove(oldFileInfo);
         }
 
         ProgressInfo progress = peerModel.getProgress().get(progressId);
-        String fileHash = FileUtils.hashFile(file, progress);
+        long lastModified = file.lastModified();
+        FileHasher.Result hashes = FileHasher.hash(file, progress);
         String fileName = file.getName();
         long fileSize = file.length();
-        FileInfo sharedFile = new FileInfo(fileName, fileSize, fileHash, new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), true);
+        if (hashes != null && file.lastModified() != lastModified) {
+            Log.logInfo("File changed while hashing, not sharing: " + file.getAbsolutePath());
+            progress.setStatus(ProgressInfo.ProgressStatus.FAILED);
+            executorService.submit(() -> AppPaths.removeSharedFile(fileName));
+            return;
+        }
+        FileInfo sharedFile = new FileInfo(fileName, fileSize, hashes != null ? hashes.fileHash() : null, new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), true);
+        if (hashes != null) {
+            sharedFile.setPieceHashes(hashes.pieceHashes());
+            sharedFile.setPiecesRoot(hashes.piecesRoot());
+            sharedFile.setSourceLastModified(lastModified);
+        }
 
         Set<PeerInfo> peerInfos = new HashSet<>(peerList);
-        boolean result = shareFileList(new ArrayList<>(), Map.of(sharedFile, peerInfos));
+        peerModel.getPrivateSharedFiles().put(sharedFile, peerInfos);
 
-        if (!result) {
+        if (!syncSharedFiles()) {
+            peerModel.getPrivateSharedFiles().remove(sharedFile, peerInfos);
             Log.logInfo("Failed to share file " + fileName + " to specific peers: " + peerList);
             executorService.submit(() -> AppPaths.removeSharedFile(fileName));
             peerModel.getProcesses().get(progressId).setStatus(ProgressInfo.ProgressStatus.FAILED);
             return;
         }
 
-        peerModel.getPrivateSharedFiles().put(sharedFile, peerInfos);
-        Log.logInfo("Sharing file " + fileName + " (hash: " + fileHash + ") to specific peers: " + peerList);
+        Log.logInfo("Sharing file " + fileName + " (hash: " + sharedFile.getFileHash() + ") to specific peers: " + peerList);
 
         peerModel.getProcesses().get(progressId).setStatus(ProgressInfo.ProgressStatus.COMPLETED);
         peerModel.getProcesses().get(progressId).setProgressPercentage(100);
@@ -182,28 +251,16 @@ public class FileShareRepository implements IFileShareRepository {
             throw new IllegalStateException("SSL certificates required for secure communication");
         }
 
-        PeerInfo sslTrackerHost = new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT);
-        try (SSLSocket sslSocket = SSLUtils.createSecureSocket(sslTrackerHost)) {
-            Log.logInfo("Established SSL connection to tracker for refreshing shared files");
-
-            PrintWriter printWriter = new PrintWriter(sslSocket.getOutputStream(), true);
-            String ip = Config.SERVER_IP;
-            String request = "REFRESH|" + ip + "|" + Config.PEER_PORT + "\n";
-            printWriter.println(request);
-            BufferedReader buffer = new BufferedReader(new InputStreamReader(sslSocket.getInputStream()));
-            String response = buffer.readLine();
-            if (response != null && response.startsWith("REFRESHED")) {
-                String[] parts = response.split("\\|");
-                if (parts.length != 3) {
-                    Log.logInfo("Invalid response format from tracker: " + response);
+        try {
+            Log.logInfo("Refreshing shared files from tracker");
+            WireFields response = TrackerClient.call(WireFrame.request(RequestInfor.REFRESH).add(Config.SERVER_IP).add(Config.PEER_PORT));
+            if (response != null && response.command().equals(RequestInfor.REFRESHED)) {
+                if (response.size() != 3) {
+                    Log.logInfo("Invalid response format from tracker: " + response.size() + " fields");
                     return -1;
                 } else {
-                    int filesCount = Integer.parseInt(parts[1]);
-                    Type setType = new TypeToken<Set<FileInfo>>() {
-                    }.getType();
-                    Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter()).create();
-
-                    Set<FileInfo> files = gson.fromJson(parts[2], setType);
+                    int filesCount = Integer.parseInt(response.text(1));
+                    Set<FileInfo> files = response.json(2, JsonCodec.FILE_GSON, JsonCodec.FILE_SET_TYPE);
                     if (filesCount != files.size()) {
                         Log.logInfo("File count mismatch: expected " + filesCount + ", got " + files.size());
                         return -1;
@@ -218,7 +275,7 @@ public class FileShareRepository implements IFileShareRepository {
                     return 1;
                 }
             } else {
-                Log.logInfo("Invalid response from tracker: " + response);
+                Log.logInfo("Invalid response from tracker: " + (response != null ? response.command() : null));
                 return -1;
             }
 
@@ -254,7 +311,7 @@ public class FileShareRepository implements IFileShareRepository {
             if (file.getFileName().equals(fileName)) {
                 this.peerModel.getPrivateSharedFiles().remove(file);
                 this.peerModel.getFiles().removeIf((f) -> f.getFileName().equals(fileName));
-                return this.unshareFile(file);
+                return syncSharedFiles() ? 1 : 0;
             }
         }
         if (!this.peerModel.getPublicSharedFiles().containsKey(fileName)) {
@@ -274,7 +331,7 @@ public class FileShareRepository implements IFileShareRepository {
         }
 
         Log.logInfo("Stopped sharing file: " + fileName);
-        return this.unshareFile(fileInfo);
+        return syncSharedFiles() ? 1 : 0;
     }
 
     @Override
@@ -289,20 +346,9 @@ public class FileShareRepository implements IFileShareRepository {
         }
 
 
-        PeerInfo sslTrackerHost = new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT);
-        try (SSLSocket sslSocket = SSLUtils.createSecureSocket(sslTrackerHost)) {
-            Log.logInfo("Established SSL connection to tracker for unsharing file");
-
-            Type fileInfoType = new TypeToken<FileInfo>() {
-            }.getType();
-            Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter()).create();
-            String fileInfoJson = gson.toJson(fileInfo, fileInfoType);
-
-            String query = "UNSHARED_FILE" + "|" + fileInfoJson + "\n";
-            sslSocket.getOutputStream().write(query.getBytes());
-            Log.logInfo("Notified tracker about shared file: " + fileInfo.getFileName() + " via SSL, message: " + query);
-
-            sslSocket.close();
+        try {
+            TrackerClient.call(WireFrame.request(RequestInfor.UNSHARED_FILE).addJson(JsonCodec.FILE_GSON, fileInfo, FileInfo.class));
+            Log.logInfo("Notified tracker about shared file: " + fileInfo.getFileName() + " via SSL");
             return 1;
 
         } catch (Exception e) {
@@ -1,9 +1,6 @@
 package infras.subrepo;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import domain.adapter.PeerInfoAdapter;
+import domain.adapter.JsonCodec;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
@@ -11,48 +8,66 @@ import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
-import domain.adapter.FileInfoAdapter;
+import domain.entity.ChunkMap;
 import domain.entity.FileInfo;
+import domain.entity.PartialFile;
 import domain.entity.PeerInfo;
 import domain.repository.INetworkRepository;
 import domain.repository.IPeerRepository;
+import infras.network.ProtocolNegotiator;
+import infras.network.TrackerClient;
+import infras.network.WireFields;
+import infras.network.WireFrame;
+import infras.network.WireMessage;
 import infras.utils.FileUtils;
 import utils.AppPaths;
 import utils.Config;
 import utils.Log;
 import utils.LogTag;
+import utils.RequestInfor;
 import infras.utils.SSLUtils;
 
-import javax.net.ssl.*;
 import java.io.*;
-import java.lang.reflect.Type;
 import java.net.ConnectException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyStore;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NetworkRepository implements INetworkRepository {
+    // Size of the pieces ChunkedNioFile reads into pooled buffers when TLS prevents sendfile.
+    private static final int CHUNK_STREAM_PIECE_SIZE = 64 * 1024;
 
     private final IPeerRepository peerModel;
     private final EventLoopGroup bossGroup;
     private final EventLoopGroup workerGroup;
     private final ChannelGroup allChannels;
+    private final Map<String, ChannelGroup> haveSubscribers = new ConcurrentHashMap<>(); // file hash -> channels that asked for a partial bitfield
     private SslContext sslContext;
     private ExecutorService executorService;
     private final ExecutorService requestPool = Executors.newFixedThreadPool(10);
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean reRegistering = new AtomicBoolean();
     private boolean isRunning;
 
     public NetworkRepository(IPeerRepository peerModel) {
@@ -68,24 +83,10 @@ public class NetworkRepository implements INetworkRepository {
     public void initializeServerSocket(String username) throws Exception {
         FileUtils.loadData(username, peerModel.getPublicSharedFiles(), peerModel.getPrivateSharedFiles());
 
-        KeyStore keyStore = KeyStore.getInstance("JKS");
-        File keyStoreFile = new java.io.File(SSLUtils.CERT_DIRECTORY.toFile().getAbsolutePath() + "/peer-keystore.jks");
-        try (FileInputStream fis = new FileInputStream(keyStoreFile)) {
-            keyStore.load(fis, SSLUtils.KEYSTORE_PASSWORD.toCharArray());
-        }
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(keyStore, SSLUtils.KEYSTORE_PASSWORD.toCharArray());
-
-        KeyStore trustStore = KeyStore.getInstance("JKS");
-        File trustStoreFile = new java.io.File(SSLUtils.CERT_DIRECTORY.toFile().getAbsolutePath() + "/peer-truststore.jks");
-        try (FileInputStream fis = new FileInputStream(trustStoreFile)) {
-            trustStore.load(fis, SSLUtils.TRUSTSTORE_PASSWORD.toCharArray());
-        }
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init(trustStore);
-
-        this.sslContext = SslContextBuilder.forServer(kmf)
-                .trustManager(tmf)
+        this.sslContext = SslContextBuilder.forServer(SSLUtils.getKeyManagerFactory())
+                .trustManager(SSLUtils.getTrustManagerFactory())
+                .sessionCacheSize(Config.TLS_SESSION_CACHE_SIZE)
+                .sessionTimeout(Config.TLS_SESSION_TIMEOUT_S)
                 .build();
 
         Log.logInfo("Netty SSL context initialized for server on " + Config.SERVER_IP + ":" + Config.PEER_PORT);
@@ -101,9 +102,10 @@ public class NetworkRepository implements INetworkRepository {
                         @Override
                         protected void initChannel(SocketChannel ch) {
                             ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
-                            ch.pipeline().addLast(new DelimiterBasedFrameDecoder(8192, Delimiters.lineDelimiter()));
-                            ch.pipeline().addLast(new StringDecoder(StandardCharsets.UTF_8));
+                            // Binary frames if the client opens with a P2PB/ preface, otherwise text request lines
+                            ch.pipeline().addLast(new ProtocolNegotiator(Config.PEER_MAX_REQUEST_BYTES, Config.PEER_MAX_REQUEST_BYTES));
                             ch.pipeline().addLast(new StringEncoder(StandardCharsets.UTF_8));
+                            ch.pipeline().addLast(new ChunkedWriteHandler());
                             ch.pipeline().addLast(new ServerHandler(NetworkRepository.this, requestPool));
                         }
                     })
@@ -124,25 +126,69 @@ public class NetworkRepository implements INetworkRepository {
         });
     }
 
+    /**
+     * UDP socket on the peer port. Besides answering PING it sends the tracker a heartbeat every
+     * {@link Config#HEARTBEAT_INTERVAL_MS} to keep this peer's lease alive; a HEARTBEAT_UNKNOWN answer means the
+     * lease expired (or the tracker lost it) and the peer registers again.
+     */
     @Override
     public void startUDPServer() {
         ExecutorService exec = Executors.newSingleThreadExecutor();
         exec.submit(() -> {
+            ScheduledFuture<?> heartbeats = null;
             try (DatagramSocket udpSocket = new DatagramSocket(Config.PEER_PORT)) {
                 byte[] buffer = new byte[1024];
                 Log.logInfo("UDP server started on " + Config.SERVER_IP + ":" + Config.PEER_PORT);
+                heartbeats = heartbeatScheduler.scheduleWithFixedDelay(() -> sendHeartbeat(udpSocket),
+                        Config.HEARTBEAT_INTERVAL_MS, Config.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
                 while (isRunning) {
                     DatagramPacket receivedPacket = new DatagramPacket(buffer, buffer.length);
                     udpSocket.receive(receivedPacket);
                     String receivedMessage = new String(receivedPacket.getData(), 0, receivedPacket.getLength());
+                    if (receivedMessage.startsWith(RequestInfor.HEARTBEAT_ACK)) {
+                        continue;
+                    }
                     Log.logInfo("Received UDP request: " + receivedMessage);
                     if (receivedMessage.equals("PING")) {
                         this.sendPongResponse(udpSocket, receivedPacket);
+                    } else if (receivedMessage.equals(RequestInfor.HEARTBEAT_UNKNOWN)) {
+                        reRegister();
                     }
                 }
             } catch (IOException udpException) {
                 Log.logError("UDP server error: " + udpException.getMessage(), udpException);
+            } finally {
+                if (heartbeats != null) {
+                    heartbeats.cancel(false);
+                }
+            }
+        });
+    }
+
+    private void sendHeartbeat(DatagramSocket udpSocket) {
+        try {
+            byte[] data = (RequestInfor.HEARTBEAT + "|" + Config.SERVER_IP + "|" + Config.PEER_PORT).getBytes(StandardCharsets.UTF_8);
+            udpSocket.send(new DatagramPacket(data, data.length, new InetSocketAddress(Config.TRACKER_IP, Config.TRACKER_HEARTBEAT_PORT)));
+        } catch (IOException e) {
+            Log.logError("Cannot send heartbeat to tracker: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registers again after the tracker forgot this peer. REGISTER carries the full share lists, so nothing else
+     * has to be resent; only one re-registration runs at a time.
+     */
+    private void reRegister() {
+        if (!reRegistering.compareAndSet(false, true)) {
+            return;
+        }
+        heartbeatScheduler.execute(() -> {
+            try {
+                Log.logInfo("Tracker no longer knows this peer, registering again");
+                registerWithTracker();
+            } finally {
+                reRegistering.set(false);
             }
         });
     }
@@ -157,40 +203,24 @@ public class NetworkRepository implements INetworkRepository {
         int count = 0;
 
         while (count < Config.MAX_RETRIES) {
-            try (SSLSocket sslSocket = SSLUtils.createSecureSocket(new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT))) {
-                Log.logInfo("Established SSL connection to tracker");
-
-                Gson gson = new GsonBuilder().registerTypeAdapter(FileInfo.class, new FileInfoAdapter())
-                        .enableComplexMapKeySerialization().create();
-                Type publicFileType = new TypeToken<Map<String, FileInfo>>() {
-                }.getType();
-                String publicFileToPeersJson = gson.toJson(peerModel.getPublicSharedFiles(), publicFileType);
-                Type privateFileType = new TypeToken<Map<FileInfo, Set<PeerInfo>>>() {
-                }.getType();
-
-                String privateSharedFileJson = gson.toJson(peerModel.getPrivateSharedFiles(), privateFileType);
-
-                Type peerType = new TypeToken<PeerInfo>() {
-                }.getType();
-                Gson peerGson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-                String peerInfoJson = peerGson.toJson(new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), peerType);
-                String message = "REGISTER|" + peerInfoJson +
-                        "|" + publicFileToPeersJson +
-                        "|" + privateSharedFileJson +
-                        "\n";
-                sslSocket.getOutputStream().write(message.getBytes());
-                Log.logInfo("Registered with tracker via SSL with data structures: " + message);
-                BufferedReader reader = new BufferedReader(new InputStreamReader(sslSocket.getInputStream()));
-                String response = reader.readLine();
-                Log.logInfo("SSL Tracker response: " + response);
+            try {
+                WireFrame request = WireFrame.request(RequestInfor.REGISTER)
+                        .addJson(JsonCodec.PEER_GSON, new PeerInfo(Config.SERVER_IP, Config.PEER_PORT, AppPaths.loadUsername()), PeerInfo.class)
+                        .addJson(JsonCodec.FILE_GSON, peerModel.getPublicSharedFiles(), JsonCodec.PUBLIC_FILE_MAP_TYPE)
+                        .addJson(JsonCodec.FILE_GSON, peerModel.getPrivateSharedFiles(), JsonCodec.PRIVATE_FILE_MAP_TYPE);
+                WireFields response = TrackerClient.call(request);
+                Log.logInfo("Registered with tracker via SSL: " + peerModel.getPublicSharedFiles().size() + " public, "
+                        + peerModel.getPrivateSharedFiles().size() + " private files");
                 if (response != null) {
-                    if (response.startsWith("REGISTERED")) {
+                    String status = response.command();
+                    Log.logInfo("SSL Tracker response: " + status);
+                    if (status.equals(RequestInfor.REGISTERED)) {
                         return LogTag.I_NOT_FOUND;
-                    } else if (response.startsWith("SHARED_LIST")) {
-                        Log.logInfo("SSL Tracker registration successful: " + response);
+                    } else if (status.equals(RequestInfor.SHARED_LIST)) {
+                        Log.logInfo("SSL Tracker registration successful: " + (response.size() > 1 ? response.text(1) : "0") + " shared files");
                         return 1;
                     } else {
-                        Log.logInfo("SSL Tracker registration failed: " + response);
+                        Log.logInfo("SSL Tracker registration failed: " + status);
                         return 0;
                     }
                 } else {
@@ -242,50 +272,73 @@ public class NetworkRepository implements INetworkRepository {
 
     @Override
     public void processRequest(String request, String clientIP, Channel channel) {
+        processRequest(splitTextRequest(request), clientIP, channel);
+    }
+
+    /**
+     * Splits a legacy text request into fields; the text of a chat message may itself contain {@code |}.
+     */
+    static WireFields splitTextRequest(String request) {
+        return new WireFields.Text(request.startsWith("CHAT_MESSAGE") ? request.split("\\|", 3) : request.split("\\|"));
+    }
+
+    /**
+     * Handles one request, whichever protocol carried it. Field 0 is the command.
+     */
+    public void processRequest(WireFields request, String clientIP, Channel channel) {
         try {
             PeerInfo clientIdentifier = new PeerInfo(clientIP, Config.PEER_PORT);
 
-            Log.logInfo("Received request: " + request);
-            if (request.startsWith("SEARCH")) {
-                String response = getString(request);
+            String command = request.command();
+            Log.logInfo("Received request: " + command + " (" + request.size() + " fields)");
+            if (command.equals("SEARCH")) {
+                String response = getString(request.text(1));
                 channel.writeAndFlush(Unpooled.copiedBuffer(response, StandardCharsets.UTF_8));
-            } else if (request.startsWith("GET_CHUNK")) {
-                String[] requestParts = request.split("\\|");
-                String fileHash = requestParts[1];
-                int chunkIndex = Integer.parseInt(requestParts[2]);
-                byte[] data;
+            } else if (command.equals(RequestInfor.MGET_CHUNK)) {
+                int requestId = Integer.parseInt(request.text(1));
+                String fileHash = request.text(2);
+                int chunkIndex = Integer.parseInt(request.text(3));
                 if (this.hasAccessToFile(clientIdentifier, fileHash)) {
-                    data = getChunkData(fileHash, chunkIndex);
+                    sendChunk(channel, requestId, fileHash, chunkIndex);
                 } else {
-                    byte[] errorData = "ACCESS_DENIED".getBytes(StandardCharsets.UTF_8);
-
-                    try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                         DataOutputStream dos = new DataOutputStream(baos)) {
-                        dos.writeInt(-1); // Index lỗi
-                        dos.writeInt(errorData.length);
-                        dos.write(errorData);
-                        dos.flush();
-                        data = baos.toByteArray();
-                    } catch (Exception e) {
-                        Log.logError("Error creating error data: " + e.getMessage(), e);
-                        channel.close();
-                        return;
-                    }
+                    sendErrorFrame(channel, requestId, "ACCESS_DENIED");
+                }
+            } else if (command.equals(RequestInfor.MBITFIELD)) {
+                int requestId = Integer.parseInt(request.text(1));
+                String fileHash = request.text(2);
+                if (this.hasAccessToFile(clientIdentifier, fileHash)) {
+                    sendBitfield(channel, requestId, fileHash);
+                } else {
+                    sendErrorFrame(channel, requestId, "ACCESS_DENIED");
+                }
+            } else if (command.equals(RequestInfor.MPIECE_HASHES)) {
+                int requestId = Integer.parseInt(request.text(1));
+                String fileHash = request.text(2);
+                if (this.hasAccessToFile(clientIdentifier, fileHash)) {
+                    sendPieceHashes(channel, requestId, fileHash);
+                } else {
+                    sendErrorFrame(channel, requestId, "ACCESS_DENIED");
                 }
-                channel.writeAndFlush(Unpooled.wrappedBuffer(data));
-            } else if (request.startsWith("CHAT_MESSAGE")) {
-                String[] messageParts = request.split("\\|", 3);
+            } else if (command.equals(RequestInfor.GET_CHUNK)) {
+                String fileHash = request.text(1);
+                int chunkIndex = Integer.parseInt(request.text(2));
+                if (this.hasAccessToFile(clientIdentifier, fileHash)) {
+                    sendChunk(channel, null, fileHash, chunkIndex);
+                } else {
+                    sendErrorFrame(channel, null, "ACCESS_DENIED");
+                }
+            } else if (command.equals("CHAT_MESSAGE")) {
                 String response;
-                if (messageParts.length >= 3) {
-                    Log.logInfo("Processing chat message from " + messageParts[1] + ": " + messageParts[2]);
-                    response = "CHAT_RECEIVED|" + messageParts[1] + "\n";
+                if (request.size() >= 3) {
+                    Log.logInfo("Processing chat message from " + request.text(1) + ": " + request.text(2));
+                    response = "CHAT_RECEIVED|" + request.text(1) + "\n";
                 } else {
                     Log.logError("Invalid chat format", null);
                     response = "ERROR|Invalid chat format\n";
                 }
                 channel.writeAndFlush(Unpooled.copiedBuffer(response, StandardCharsets.UTF_8));
             } else {
-                Log.logError("Unknown request: " + request, null);
+                Log.logError("Unknown request: " + command, null);
                 String response = "UNKNOWN_REQUEST\n";
                 channel.writeAndFlush(Unpooled.copiedBuffer(response, StandardCharsets.UTF_8));
             }
@@ -299,8 +352,7 @@ public class NetworkRepository implements INetworkRepository {
         }
     }
 
-    private String getString(String request) {
-        String fileName = request.split("\\|")[1];
+    private String getString(String fileName) {
         Map<String, FileInfo> publicSharedFiles = peerModel.getPublicSharedFiles();
         FileInfo fileInfo = publicSharedFiles.get(fileName);
         String response;
@@ -314,36 +366,168 @@ public class NetworkRepository implements INetworkRepository {
         return response;
     }
 
-    private byte[] getChunkData(String fileHash, int chunkIndex) {
+    /**
+     * Streams one chunk to the channel without copying it through the heap.
+     * The header comes from the channel's pooled allocator and the payload is read straight from the
+     * file: as a {@link DefaultFileRegion} (sendfile) on plain channels, or through {@link ChunkedNioFile}
+     * into pooled buffers when the SslHandler has to encrypt it.
+     * Legacy GET_CHUNK replies carry an 8-byte header (index, length); pipelined MGET_CHUNK replies
+     * prepend the caller's request id so they can be matched when answered out of order.
+     */
+    private void sendChunk(Channel channel, Integer requestId, String fileHash, int chunkIndex) {
+        File file;
         FileInfo fileInfo = findFileByHash(fileHash);
-        if (fileInfo == null) {
-            return "FILE_NOT_FOUND\n".getBytes();
+        if (fileInfo != null) {
+            file = resolveSharedFile(fileInfo);
+            if (fileInfo.isStale(file)) {
+                // Tệp gốc đã bị sửa sau khi chia sẻ: không gửi dữ liệu không khớp với mã băm đã công bố
+                Log.logInfo("Shared file changed on disk since it was hashed: " + file.getAbsolutePath());
+                sendChunkError(channel, requestId, "FILE_CHANGED");
+                return;
+            }
+        } else {
+            PartialFile partialFile = peerModel.getPartialFiles().get(fileHash);
+            if (partialFile == null) {
+                sendChunkError(channel, requestId, "FILE_NOT_FOUND");
+                return;
+            }
+            if (chunkIndex < 0 || !partialFile.hasChunk(chunkIndex)) {
+                sendChunkError(channel, requestId, "CHUNK_UNAVAILABLE");
+                return;
+            }
+            file = partialFile.getFile();
         }
 
-        String appPath = AppPaths.getAppDataDirectory();
-        String filePath = appPath + "/shared_files/" + fileInfo.getFileName();
-        File file = new File(filePath);
-
-        if (file.exists() && file.canRead()) {
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
-                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                 DataOutputStream dos = new DataOutputStream(baos)) {
-                byte[] chunkData = new byte[Config.CHUNK_SIZE];
-                raf.seek((long) chunkIndex * (long) Config.CHUNK_SIZE);
-                int byteRead = raf.read(chunkData);
-
-                if (byteRead > 0) {
-                    byte[] actualData = byteRead == Config.CHUNK_SIZE ? chunkData : Arrays.copyOf(chunkData, byteRead);
-                    dos.writeInt(chunkIndex);
-                    dos.writeInt(actualData.length);
-                    dos.write(actualData);
-                    return baos.toByteArray();
+        long offset = (long) chunkIndex * (long) Config.CHUNK_SIZE;
+        FileChannel fileChannel = null;
+        try {
+            if (!file.exists() || !file.canRead()) {
+                throw new FileNotFoundException(file.getAbsolutePath());
+            }
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long length = Math.min(Config.CHUNK_SIZE, fileChannel.size() - offset);
+            if (chunkIndex < 0 || length <= 0) {
+                fileChannel.close();
+                sendChunkError(channel, requestId, "CHUNK_ERROR");
+                return;
+            }
+
+            ByteBuf header = channel.alloc().buffer(12);
+            if (requestId != null) {
+                header.writeInt(requestId);
+            }
+            header.writeInt(chunkIndex);
+            header.writeInt((int) length);
+            Object body = channel.pipeline().get(SslHandler.class) == null
+                    ? new DefaultFileRegion(fileChannel, offset, length)
+                    : new ChunkedNioFile(fileChannel, offset, length, CHUNK_STREAM_PIECE_SIZE);
+
+            // Header and body are queued from the event loop so they stay adjacent on the wire
+            // even when several request threads answer on the same channel.
+            channel.eventLoop().execute(() -> {
+                channel.write(header);
+                channel.writeAndFlush(body);
+            });
+        } catch (IOException e) {
+            Log.logError("Error reading chunk data: " + e.getMessage(), e);
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException ignore) {
                 }
-            } catch (IOException e) {
-                Log.logError("Error reading chunk data: " + e.getMessage(), e);
             }
+            sendChunkError(channel, requestId, "CHUNK_ERROR");
+        }
+    }
+
+    private void sendChunkError(Channel channel, Integer requestId, String error) {
+        if (requestId == null) {
+            channel.writeAndFlush(Unpooled.copiedBuffer(error + "\n", StandardCharsets.UTF_8));
+        } else {
+            sendErrorFrame(channel, requestId, error);
+        }
+    }
+
+    /**
+     * Answers MBITFIELD with the chunks this peer can serve; the index field of the frame carries the chunk count.
+     * A shared file is always complete, so every bit is set. For a file that is still downloading the
+     * completed chunks are sent and the channel is subscribed to HAVE frames for the chunks that follow.
+     */
+    private void sendBitfield(Channel channel, int requestId, String fileHash) {
+        FileInfo fileInfo = findFileByHash(fileHash);
+        if (fileInfo != null) {
+            int totalChunks = (int) ((fileInfo.getFileSize() + Config.CHUNK_SIZE - 1) / Config.CHUNK_SIZE);
+            ChunkMap chunks = new ChunkMap(totalChunks);
+            for (int i = 0; i < totalChunks; i++) {
+                chunks.set(i);
+            }
+            sendFrame(channel, requestId, totalChunks, chunks.toBytes());
+            return;
         }
-        return "CHUNK_ERROR\n".getBytes();
+
+        PartialFile partialFile = peerModel.getPartialFiles().get(fileHash);
+        if (partialFile == null) {
+            sendErrorFrame(channel, requestId, "FILE_NOT_FOUND");
+            return;
+        }
+        // Subscribe before taking the snapshot so no chunk completed in between is missed.
+        haveSubscribers.computeIfAbsent(fileHash, k -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE)).add(channel);
+        int totalChunks = partialFile.getTotalChunks();
+        sendFrame(channel, requestId, totalChunks, partialFile.getCompletedChunks().toBytes());
+    }
+
+    /**
+     * Answers MPIECE_HASHES with the 32-byte SHA-256 of every chunk, concatenated in chunk order;
+     * the index field of the frame carries the chunk count.
+     */
+    private void sendPieceHashes(Channel channel, int requestId, String fileHash) {
+        FileInfo fileInfo = findFileByHash(fileHash);
+        if (fileInfo == null || fileInfo.getPieceHashes() == null) {
+            sendErrorFrame(channel, requestId, "PIECE_HASHES_UNAVAILABLE");
+            return;
+        }
+        List<String> pieceHashes = fileInfo.getPieceHashes();
+        sendFrame(channel, requestId, pieceHashes.size(), FileUtils.packPieceHashes(pieceHashes));
+    }
+
+    /**
+     * Pushes a HAVE frame (request id 0, chunk index, file hash as payload) to every channel that asked for
+     * the bitfield of this in-progress download.
+     */
+    @Override
+    public void announceHave(String fileHash, int chunkIndex) {
+        ChannelGroup subscribers = haveSubscribers.get(fileHash);
+        if (subscribers == null) {
+            return;
+        }
+        if (!peerModel.getPartialFiles().containsKey(fileHash)) {
+            haveSubscribers.remove(fileHash);
+            return;
+        }
+
+        byte[] payload = fileHash.getBytes(StandardCharsets.UTF_8);
+        for (Channel subscriber : subscribers) {
+            sendFrame(subscriber, 0, chunkIndex, payload);
+        }
+    }
+
+    private void sendErrorFrame(Channel channel, Integer requestId, String error) {
+        sendFrame(channel, requestId, -1, error.getBytes(StandardCharsets.UTF_8)); // Index lỗi
+    }
+
+    private void sendFrame(Channel channel, Integer requestId, int index, byte[] payload) {
+        ByteBuf frame = channel.alloc().buffer(12 + payload.length);
+        if (requestId != null) {
+            frame.writeInt(requestId);
+        }
+        frame.writeInt(index);
+        frame.writeInt(payload.length);
+        frame.writeBytes(payload);
+        channel.writeAndFlush(frame);
+    }
+
+    private File resolveSharedFile(FileInfo fileInfo) {
+        return new File(AppPaths.getAppDataDirectory() + "/shared_files/" + fileInfo.getFileName());
     }
 
     private FileInfo findFileByHash(String fileHash) {
@@ -370,10 +554,15 @@ public class NetworkRepository implements INetworkRepository {
             }
         }
         List<PeerInfo> selectivePeers = peerModel.getSelectivePeers(fileHash);
-        return selectivePeers.stream().anyMatch(p -> p.getIp().equals(clientIdentify.getIp()));
+        if (selectivePeers.stream().anyMatch(p -> p.getIp().equals(clientIdentify.getIp()))) {
+            return true;
+        }
+        // A file still being downloaded is served only to peers on the ACL the tracker reported for it
+        PartialFile partialFile = peerModel.getPartialFiles().get(fileHash);
+        return partialFile != null && partialFile.allows(clientIdentify);
     }
 
-    public static class ServerHandler extends SimpleChannelInboundHandler<String> {
+    public static class ServerHandler extends SimpleChannelInboundHandler<Object> {
         private final NetworkRepository networkRepository;
         private final ExecutorService requestPool;
 
@@ -397,9 +586,19 @@ public class NetworkRepository implements INetworkRepository {
         }
 
         @Override
-        protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
             String clientIP = ctx.channel().remoteAddress().toString().split(":")[0].replace("/", "");
-            String request = msg.trim();
+            WireFields request;
+            if (msg instanceof WireMessage message) {
+                // Peer requests are a handful of short fields: copy them out so the frame is released here
+                String[] fields = new String[message.size()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = message.text(i);
+                }
+                request = new WireFields.Text(fields);
+            } else {
+                request = splitTextRequest(((String) msg).trim());
+            }
 
             requestPool.submit(() -> {
                 networkRepository.processRequest(request, clientIP, ctx.channel());
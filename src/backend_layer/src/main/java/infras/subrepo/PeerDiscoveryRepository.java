@@ -1,31 +1,30 @@
 package infras.subrepo;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import domain.adapter.PeerInfoAdapter;
+import domain.adapter.JsonCodec;
+import domain.entity.FileAccess;
 import domain.entity.FileInfo;
 import domain.entity.PeerInfo;
 import domain.repository.IPeerDiscoveryRepository;
 import domain.repository.IPeerRepository;
+import infras.network.TrackerClient;
+import infras.network.WireFields;
+import infras.network.WireFrame;
 import utils.Config;
 import utils.Log;
 import infras.utils.SSLUtils;
 import utils.RequestInfor;
 
-import javax.net.ssl.SSLSocket;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
 
     private final IPeerRepository peerModel;
+    private final Map<String, FileAccess> fileAccess = new ConcurrentHashMap<>(); // file hash -> ACL from GET_PEERS
 
     public PeerDiscoveryRepository(IPeerRepository peerModel) {
         this.peerModel = peerModel;
@@ -38,33 +37,23 @@ public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
             throw new IllegalStateException("SSL certificates required for secure communication");
         }
 
-        try (SSLSocket sslSocket = SSLUtils.createSecureSocket(new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT))) {
-            Log.logInfo("Established SSL connection to tracker for getting known peers");
-
-            String request = "GET_KNOWN_PEERS\n";
-            sslSocket.getOutputStream().write(request.getBytes());
-            Log.logInfo("SSL Requesting known peers from tracker, message: " + request);
-            BufferedReader buff = new BufferedReader(new InputStreamReader(sslSocket.getInputStream()));
-            String response = buff.readLine();
-            if (response == null || response.isEmpty()) {
+        try {
+            Log.logInfo("SSL Requesting known peers from tracker");
+            WireFields response = TrackerClient.call(WireFrame.request(RequestInfor.GET_KNOWN_PEERS));
+            if (response == null || response.size() == 0) {
                 Log.logInfo("No SSL response from tracker for known peers");
                 return Collections.emptySet();
             } else {
-                String[] parts = response.split("\\|");
-                if (parts.length != 3 || !parts[0].equals("GET_KNOWN_PEERS")) {
-                    Log.logInfo("Invalid SSL response format from tracker: " + response);
+                if (response.size() != 3 || !response.command().equals(RequestInfor.GET_KNOWN_PEERS)) {
+                    Log.logInfo("Invalid SSL response format from tracker: " + response.command());
                     return Collections.emptySet();
                 } else {
-                    int peerCount = Integer.parseInt(parts[1]);
+                    int peerCount = Integer.parseInt(response.text(1));
                     if (peerCount == 0) {
                         Log.logInfo("No known peers found via SSL");
                         return Collections.emptySet();
                     } else {
-                        Type setType = new TypeToken<Set<PeerInfo>>() {
-                        }.getType();
-                        Gson gson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-
-                        Set<PeerInfo> peerInfos = gson.fromJson(parts[2], setType);
+                        Set<PeerInfo> peerInfos = response.json(2, JsonCodec.PEER_GSON, JsonCodec.PEER_SET_TYPE);
                         if (peerInfos.isEmpty()) {
                             Log.logInfo("No valid known peers found via SSL");
                             return Collections.emptySet();
@@ -72,7 +61,7 @@ public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
                             Log.logInfo("Known peer count mismatch via SSL: expected " + peerCount + ", found " + peerInfos.size());
                             return Collections.emptySet();
                         } else {
-                            Log.logInfo("Received known peers from tracker via SSL: " + response);
+                            Log.logInfo("Received " + peerInfos.size() + " known peers from tracker via SSL");
                             return peerInfos;
                         }
                     }
@@ -91,32 +80,24 @@ public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
             throw new IllegalStateException("SSL certificates required for secure communication");
         }
 
-        try (SSLSocket sslSocket = SSLUtils.createSecureSocket(new PeerInfo(Config.TRACKER_IP, Config.TRACKER_PORT))) {
-            Log.logInfo("Established SSL connection to tracker for getting peers with file hash");
-
-            String request = RequestInfor.GET_PEERS + "|" + fileHash + "|" + Config.SERVER_IP + "|" + Config.PEER_PORT + "\n";
-            sslSocket.getOutputStream().write(request.getBytes());
-            Log.logInfo("SSL Requesting peers with file hash: " + fileHash + ", message: " + request);
-            BufferedReader buff = new BufferedReader(new InputStreamReader(sslSocket.getInputStream()));
-            String response = buff.readLine();
-            if (response == null || response.isEmpty()) {
+        try {
+            WireFrame request = WireFrame.request(RequestInfor.GET_PEERS).add(fileHash).add(Config.SERVER_IP).add(Config.PEER_PORT);
+            Log.logInfo("SSL Requesting peers with file hash: " + fileHash);
+            WireFields response = TrackerClient.call(request);
+            if (response == null || response.size() == 0) {
                 Log.logInfo("No SSL response from tracker for file hash: " + fileHash);
                 return Collections.emptyList();
             } else {
-                String[] parts = response.split("\\|");
-                if (parts.length != 3 || !parts[0].equals(RequestInfor.GET_PEERS)) {
-                    Log.logInfo("Invalid SSL response format from tracker: " + response);
+                if ((response.size() != 3 && response.size() != 4) || !response.command().equals(RequestInfor.GET_PEERS)) {
+                    Log.logInfo("Invalid SSL response format from tracker: " + response.command());
                     return Collections.emptyList();
                 } else {
-                    int peerCount = Integer.parseInt(parts[1]);
+                    int peerCount = Integer.parseInt(response.text(1));
                     if (peerCount == 0) {
                         Log.logInfo("No peers found via SSL for file hash: " + fileHash);
                         return Collections.emptyList();
                     } else {
-                        Type setType = new TypeToken<Set<PeerInfo>>() {
-                        }.getType();
-                        Gson gson = new GsonBuilder().registerTypeAdapter(PeerInfo.class, new PeerInfoAdapter()).create();
-                        Set<PeerInfo> peers = gson.fromJson(parts[2], setType);
+                        Set<PeerInfo> peers = response.json(2, JsonCodec.PEER_GSON, JsonCodec.PEER_SET_TYPE);
 
                         if (peers.isEmpty()) {
                             Log.logInfo("No valid peers found via SSL for file hash: " + fileHash);
@@ -125,7 +106,9 @@ public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
                             Log.logInfo("Peer count mismatch via SSL: expected " + peerCount + ", found " + peers.size());
                             return Collections.emptyList();
                         } else {
-                            Log.logInfo("Received SSL response from tracker: " + response);
+                            // Tracker cũ không gửi ACL: không phục vụ bản tải dở cho ai
+                            fileAccess.put(fileHash, response.size() == 4 ? parseAccess(response.text(3), response) : FileAccess.NONE);
+                            Log.logInfo("Received " + peers.size() + " peers from tracker via SSL for file hash: " + fileHash);
                             return peers.stream().toList();
                         }
                     }
@@ -137,6 +120,33 @@ public class PeerDiscoveryRepository implements IPeerDiscoveryRepository {
         }
     }
 
+    private static FileAccess parseAccess(String access, WireFields response) {
+        if (RequestInfor.ACCESS_PUBLIC.equals(access)) {
+            return FileAccess.PUBLIC;
+        }
+        Set<PeerInfo> allowedPeers = response.json(3, JsonCodec.PEER_GSON, JsonCodec.PEER_SET_TYPE);
+        return allowedPeers == null ? FileAccess.NONE : FileAccess.of(allowedPeers);
+    }
+
+    @Override
+    public FileAccess getFileAccess(String fileHash) {
+        return fileAccess.getOrDefault(fileHash, FileAccess.NONE);
+    }
+
+    @Override
+    public void announceDownload(String fileHash, String state) {
+        try {
+            WireFrame request = WireFrame.request(RequestInfor.ANNOUNCE).add(fileHash).add(Config.SERVER_IP).add(Config.PEER_PORT).add(state);
+            WireFields response = TrackerClient.call(request);
+            if (response == null || !RequestInfor.ANNOUNCED.equals(response.command())) {
+                Log.logInfo("Unexpected SSL response to announce " + state + " for file hash " + fileHash + ": "
+                        + (response != null ? response.command() : null));
+            }
+        } catch (Exception e) {
+            Log.logError("SSL Error announcing download " + state + " for file hash: " + fileHash, e);
+        }
+    }
+
     @Override
     public List<PeerInfo> getSelectivePeers(String fileHash) {
         List<PeerInfo> peers = new ArrayList<>();
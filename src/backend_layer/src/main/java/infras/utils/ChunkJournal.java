@@ -0,0 +1,209 @@
+package infras.utils;
+
+import domain.entity.ChunkMap;
+import domain.entity.DownloadMetadata;
+import utils.Config;
+import utils.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only record of chunks completed since the .part.meta file was last written, kept in
+ * {@code <savePath>.part.journal}. Each chunk that lands adds one 8-byte record (index, ~index), so a crash loses
+ * at most the chunks completed in the last {@link Config#JOURNAL_FSYNC_MS}.
+ * <p>
+ * Records are buffered in memory. Every {@link Config#JOURNAL_FSYNC_MS} the data file is forced, and only then are
+ * the buffered records written to the journal and the journal forced, so the journal never holds, even in the page
+ * cache, a chunk whose bytes are not on disk yet. After {@link Config#JOURNAL_COMPACT_RECORDS} records, and on
+ * {@link #close()}, the metadata is rewritten atomically from a copy of the chunk map taken before the data file is
+ * forced, and the journal is truncated back to its header.
+ * <p>
+ * Every write of the metadata of a running download goes through this object's lock, so pause and compaction never
+ * share the temporary file. {@link MetadataUtils#loadMetadata} replays the journal, stopping at the first torn or
+ * corrupt record.
+ */
+public class ChunkJournal implements Closeable {
+    private static final int MAGIC = 0x50324A4C; // "P2JL"
+    private static final int HEADER_BYTES = 8; // magic, total chunks
+    private static final int RECORD_BYTES = 8; // index, ~index
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chunk-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DownloadMetadata metadata;
+    private final FileChannel data;
+    private final FileChannel channel;
+    private final ScheduledFuture<?> flushTask;
+    private int[] pending = new int[64]; // chunk chưa ghi vào journal
+    private int pendingCount;
+    private int records;
+
+    private ChunkJournal(DownloadMetadata metadata, FileChannel data, FileChannel channel) {
+        this.metadata = metadata;
+        this.data = data;
+        this.channel = channel;
+        this.flushTask = FLUSHER.scheduleWithFixedDelay(this::flush, Config.JOURNAL_FSYNC_MS, Config.JOURNAL_FSYNC_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the metadata atomically and starts an empty journal next to it.
+     *
+     * @param metadata Metadata whose chunk map is the one the download marks, so compaction sees every chunk.
+     * @param data     Channel of the file being downloaded, forced before the journal.
+     */
+    public static ChunkJournal open(DownloadMetadata metadata, FileChannel data) throws IOException {
+        data.force(false);
+        if (!MetadataUtils.saveMetadata(metadata)) {
+            throw new IOException("Cannot write " + metadata.getMetaFilePath());
+        }
+        FileChannel channel = FileChannel.open(Path.of(metadata.getJournalFilePath()),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            writeHeader(channel, metadata.getTotalChunks());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ChunkJournal(metadata, data, channel);
+    }
+
+    /**
+     * Records a completed chunk; it reaches the journal on the next flush. Compacts when the journal has grown past
+     * its limit.
+     */
+    public synchronized void append(int chunkIndex) throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = chunkIndex;
+        if (++records >= Config.JOURNAL_COMPACT_RECORDS) {
+            compact();
+        }
+    }
+
+    /**
+     * Saves the metadata from a copy of the chunk map and empties the journal.
+     *
+     * @return false if the metadata could not be written; the journal is left as it was
+     */
+    private boolean compact() throws IOException {
+        // Every journalled or pending chunk is in the copy: records are added after the chunk is marked, under this lock
+        ChunkMap live = metadata.getChunks();
+        ChunkMap durable = live.copy();
+        data.force(false);
+        boolean saved;
+        metadata.setChunks(durable);
+        try {
+            saved = MetadataUtils.saveMetadata(metadata);
+        } finally {
+            metadata.setChunks(live);
+        }
+        if (!saved) {
+            return false; // giữ nguyên journal, lần sau thử lại
+        }
+        writeHeader(channel, metadata.getTotalChunks());
+        records = 0;
+        pendingCount = 0;
+        return true;
+    }
+
+    private synchronized void flush() {
+        if (pendingCount == 0 || !channel.isOpen()) {
+            return;
+        }
+        try {
+            data.force(false);
+            ByteBuffer buffer = ByteBuffer.allocate(pendingCount * RECORD_BYTES);
+            for (int i = 0; i < pendingCount; i++) {
+                buffer.putInt(pending[i]).putInt(~pending[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            pendingCount = 0;
+        } catch (IOException e) {
+            Log.logError("Failed to flush chunk journal " + metadata.getJournalFilePath(), e);
+        }
+    }
+
+    /**
+     * Saves the metadata (falling back to flushing the journal if that fails) and stops journalling. Later appends
+     * are ignored; calling it again does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        flushTask.cancel(false);
+        try {
+            if (!compact()) {
+                flush();
+            }
+        } catch (IOException e) {
+            Log.logError("Failed to save metadata for " + metadata.getMetaFilePath(), e);
+            flush();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.logError("Failed to close chunk journal " + metadata.getJournalFilePath(), e);
+        }
+    }
+
+    /**
+     * Marks every chunk recorded in the journal next to {@code metadata}. A journal written for a different chunk
+     * count is ignored.
+     */
+    static void replay(DownloadMetadata metadata) {
+        Path path = Path.of(metadata.getJournalFilePath());
+        if (!Files.exists(path)) {
+            return;
+        }
+        ChunkMap chunks = metadata.getChunks();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != chunks.size()) {
+                return;
+            }
+            int replayed = 0;
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int chunkIndex = buffer.getInt();
+                if (buffer.getInt() != ~chunkIndex || chunkIndex < 0 || chunkIndex >= chunks.size()) {
+                    break; // bản ghi bị cắt dở hoặc hỏng
+                }
+                chunks.set(chunkIndex);
+                replayed++;
+            }
+            Log.logInfo("Replayed " + replayed + " journal records from " + path);
+        } catch (IOException e) {
+            Log.logError("Failed to replay chunk journal " + path, e);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, int totalChunks) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(totalChunks).flip();
+        channel.write(header, 0);
+        channel.position(HEADER_BYTES);
+        channel.force(false);
+    }
+}
@@ -0,0 +1,183 @@
+package infras.utils;
+
+import domain.entity.ProgressInfo;
+import utils.Config;
+import utils.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashes a file for sharing by memory-mapping it instead of streaming it through a heap buffer.
+ * The file is mapped one window (a whole number of chunks, about 64 MiB) at a time. The per-chunk SHA-256
+ * digests of a window are computed in parallel on a fork-join pool from slices of that mapping while the calling
+ * thread feeds the same window to the whole-file SHA-256 (the file identity, which is inherently sequential), so
+ * the file is read from disk once and only one mapping per window is ever created.
+ * Results are kept in the {@link HashCache}, so an unchanged file is not read again at all.
+ */
+public class FileHasher {
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final int CHUNKS_PER_TASK = 4;
+    private static final ForkJoinPool HASH_POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    public record Result(String fileHash, List<String> pieceHashes, String piecesRoot) {
+    }
+
+    /**
+     * Hashes {@code file}, reporting progress in the 70-95% band the share flow reserves for hashing.
+     *
+     * @return the file hash, chunk hashes and their Merkle root, or null if cancelled or unreadable
+     */
+    public static Result hash(File file, ProgressInfo progress) {
+        if (ProgressInfo.ProgressStatus.CANCELLED.equals(progress.getStatus())) {
+            return null;
+        }
+        progress.setStatus(ProgressInfo.ProgressStatus.SHARING);
+
+        HashCache.Stamp stamp = HashCache.stamp(file);
+        Result cached = HashCache.lookup(file, stamp);
+        if (cached != null) {
+            Log.logInfo("Using cached hashes for unchanged file: " + file.getAbsolutePath());
+            progress.setProgressPercentage(95);
+            return cached;
+        }
+
+        long fileSize = file.length();
+        int totalChunks = (int) ((fileSize + Config.CHUNK_SIZE - 1) / Config.CHUNK_SIZE);
+        long windowSize = Math.max(1, MAP_WINDOW / Config.CHUNK_SIZE) * Config.CHUNK_SIZE; // không cắt ngang chunk
+        byte[][] pieceDigests = new byte[totalChunks][];
+        AtomicLong piecesHashed = new AtomicLong();
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest fileDigest = MessageDigest.getInstance("SHA-256");
+            for (long position = 0; position < fileSize; position += windowSize) {
+                if (ProgressInfo.ProgressStatus.CANCELLED.equals(progress.getStatus())) {
+                    cancelled.set(true);
+                    return null;
+                }
+                long length = Math.min(windowSize, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int firstChunk = (int) (position / Config.CHUNK_SIZE);
+                int lastChunk = (int) ((position + length + Config.CHUNK_SIZE - 1) / Config.CHUNK_SIZE);
+                ForkJoinTask<Void> pieces = HASH_POOL.submit(
+                        new PieceTask(window, firstChunk, firstChunk, lastChunk, pieceDigests, piecesHashed, cancelled));
+                fileDigest.update(window.duplicate());
+                pieces.get();
+
+                // Only this thread writes the percentage, so it never goes backwards and needs no lock.
+                long done = position + length + piecesHashed.get();
+                progress.setProgressPercentage(70 + (int) ((double) done * 25.0 / (2.0 * fileSize)));
+            }
+
+            List<String> pieceHashes = new ArrayList<>(totalChunks);
+            for (byte[] pieceDigest : pieceDigests) {
+                pieceHashes.add(FileUtils.bytesToHex(pieceDigest));
+            }
+            progress.setProgressPercentage(95);
+            Result result = new Result(FileUtils.bytesToHex(fileDigest.digest()), pieceHashes, computeMerkleRoot(Arrays.asList(pieceDigests)));
+            HashCache.put(file, stamp, result);
+            return result;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            cancelled.set(true);
+            Log.logError("Error hashing file: " + file.getAbsolutePath(), e);
+            progress.setStatus(ProgressInfo.ProgressStatus.FAILED);
+            return null;
+        }
+    }
+
+    /**
+     * Binary Merkle root over the chunk digests: each parent is SHA-256(left || right) and an odd node
+     * at the end of a level is carried up unchanged.
+     */
+    public static String computeMerkleRoot(List<byte[]> pieceDigests) {
+        try {
+            if (pieceDigests.isEmpty()) {
+                return FileUtils.bytesToHex(MessageDigest.getInstance("SHA-256").digest());
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<byte[]> level = pieceDigests;
+            while (level.size() > 1) {
+                List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+                for (int i = 0; i < level.size(); i += 2) {
+                    if (i + 1 == level.size()) {
+                        parents.add(level.get(i));
+                    } else {
+                        digest.update(level.get(i));
+                        digest.update(level.get(i + 1));
+                        parents.add(digest.digest());
+                    }
+                }
+                level = parents;
+            }
+            return FileUtils.bytesToHex(level.get(0));
+        } catch (NoSuchAlgorithmException e) {
+            Log.logError("Error computing pieces root", e);
+            return null;
+        }
+    }
+
+    /**
+     * Splits a chunk range of one mapped window until it is small enough, then hashes each chunk from a slice of
+     * the window.
+     */
+    private static final class PieceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient ByteBuffer window;
+        private final int firstChunk; // chunk at offset 0 of the window
+        private final int from;
+        private final int to;
+        private final byte[][] pieceDigests;
+        private final AtomicLong piecesHashed;
+        private final AtomicBoolean cancelled;
+
+        private PieceTask(ByteBuffer window, int firstChunk, int from, int to, byte[][] pieceDigests,
+                          AtomicLong piecesHashed, AtomicBoolean cancelled) {
+            this.window = window;
+            this.firstChunk = firstChunk;
+            this.from = from;
+            this.to = to;
+            this.pieceDigests = pieceDigests;
+            this.piecesHashed = piecesHashed;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PieceTask(window, firstChunk, from, middle, pieceDigests, piecesHashed, cancelled),
+                        new PieceTask(window, firstChunk, middle, to, pieceDigests, piecesHashed, cancelled));
+                return;
+            }
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (int chunkIndex = from; chunkIndex < to && !cancelled.get(); chunkIndex++) {
+                    int offset = (chunkIndex - firstChunk) * Config.CHUNK_SIZE;
+                    int length = Math.min(Config.CHUNK_SIZE, window.capacity() - offset);
+                    digest.update(window.slice(offset, length));
+                    pieceDigests[chunkIndex] = digest.digest();
+                    piecesHashed.addAndGet(length);
+                }
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Failed to hash chunks " + from + "-" + to, e);
+            }
+        }
+    }
+}
@@ -13,11 +13,15 @@ import java.io.*;
 import java.lang.reflect.Type;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 public class FileUtils {
+    public static final int PIECE_HASH_LENGTH = 32;
+
     public static void saveData(Map<String, FileInfo> publicSharedFiles, Map<FileInfo, Set<PeerInfo>> privateSharedFiles) {
         String dataDirPath = AppPaths.getAppDataDirectory() + File.separator + "data";
         File dataDir = new File(dataDirPath);
@@ -90,41 +94,11 @@ public class FileUtils {
     }
 
     public static String hashFile(File file, ProgressInfo progress) {
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-            byte[] bytes = new byte[Config.CHUNK_SIZE];
-            long fileSize = file.length();
-            long readbyte = 0L;
-            if (Objects.equals(progress.getStatus(), ProgressInfo.ProgressStatus.CANCELLED)) {
-                return null;
-            } else {
-                progress.setStatus(ProgressInfo.ProgressStatus.SHARING);
-
-                int readedByteCount;
-                while ((readedByteCount = fileInputStream.read(bytes)) != -1) {
-                    if (progress.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED)) {
-                        return null;
-                    }
-
-                    messageDigest.update(bytes, 0, readedByteCount);
-                    readbyte += readedByteCount;
-                    int percentage = (int) ((double) readbyte * 25.0 / fileSize) + 70;
-                    synchronized (progress) {
-                        progress.setProgressPercentage(percentage);
-                    }
-                }
-
-                return bytesToHex(messageDigest.digest());
-            }
-        } catch (NoSuchAlgorithmException | IOException e) {
-            if (progress != null) {
-                progress.setStatus(ProgressInfo.ProgressStatus.FAILED);
-            }
-            return null;
-        }
+        FileHasher.Result result = FileHasher.hash(file, progress);
+        return result != null ? result.fileHash() : null;
     }
 
-    private static String bytesToHex(byte[] bytes) {
+    public static String bytesToHex(byte[] bytes) {
         StringBuilder hex = new StringBuilder();
         for (byte b : bytes) {
             hex.append(String.format("%02x", b));
@@ -132,6 +106,45 @@ public class FileUtils {
         return hex.toString();
     }
 
+    public static byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex, 2 * i, 2 * i + 2, 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * Packs hex chunk hashes into consecutive 32-byte digests, the form sent in MPIECE_HASHES replies.
+     */
+    public static byte[] packPieceHashes(List<String> pieceHashes) {
+        byte[] packed = new byte[pieceHashes.size() * PIECE_HASH_LENGTH];
+        for (int i = 0; i < pieceHashes.size(); i++) {
+            System.arraycopy(hexToBytes(pieceHashes.get(i)), 0, packed, i * PIECE_HASH_LENGTH, PIECE_HASH_LENGTH);
+        }
+        return packed;
+    }
+
+    public static List<String> unpackPieceHashes(byte[] packed) {
+        List<String> pieceHashes = new ArrayList<>(packed.length / PIECE_HASH_LENGTH);
+        for (int offset = 0; offset + PIECE_HASH_LENGTH <= packed.length; offset += PIECE_HASH_LENGTH) {
+            pieceHashes.add(bytesToHex(Arrays.copyOfRange(packed, offset, offset + PIECE_HASH_LENGTH)));
+        }
+        return pieceHashes;
+    }
+
+    /**
+     * Merkle root over the chunk hashes (see {@link FileHasher#computeMerkleRoot}). Published through the
+     * tracker so a chunk hash list fetched from any peer can be checked before it is trusted.
+     */
+    public static String computePiecesRoot(List<String> pieceHashes) {
+        List<byte[]> pieceDigests = new ArrayList<>(pieceHashes.size());
+        for (String pieceHash : pieceHashes) {
+            pieceDigests.add(hexToBytes(pieceHash));
+        }
+        return FileHasher.computeMerkleRoot(pieceDigests);
+    }
+
     public static String computeFileHash(File file) {
         try (FileInputStream fileInputStream = new FileInputStream(file)) {
             MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
@@ -0,0 +1,203 @@
+package infras.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import utils.AppPaths;
+import utils.Config;
+import utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of file hashes, so a file that was already hashed (shared before, or downloaded and verified)
+ * is not read again when it is shared after a restart or replaced with itself.
+ * Entries are keyed by canonical path and only trusted while size, modification time and file key (inode
+ * where the platform exposes one) are unchanged, and while the chunk size is the one the hashes were made with.
+ * The cache lives in {@code data/hashCache.json}, is bounded to {@link Config#HASH_CACHE_MAX_ENTRIES}
+ * (least recently used entries go first) and is written shortly after it changes.
+ */
+public class HashCache {
+    private static final long SAVE_DELAY_MS = 2000;
+    private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>() {
+    }.getType();
+    private static final Gson GSON = new Gson();
+    private static final Object SAVE_LOCK = new Object();
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > Config.HASH_CACHE_MAX_ENTRIES;
+        }
+    };
+    private static final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hash-cache-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static boolean loaded;
+    private static boolean saveScheduled;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(HashCache::save, "hash-cache-shutdown"));
+    }
+
+    /**
+     * Identity of a file's current contents as far as the file system can tell without reading it.
+     */
+    public record Stamp(long size, long lastModifiedNanos, String fileKey) {
+    }
+
+    private static final class Entry {
+        long size;
+        long lastModifiedNanos;
+        String fileKey;
+        int chunkSize;
+        String fileHash;
+        List<String> pieceHashes;
+        String piecesRoot;
+    }
+
+    /**
+     * Reads the size, modification time and file key of {@code file}.
+     *
+     * @return the stamp, or null if the file cannot be read
+     */
+    public static Stamp stamp(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object fileKey = attrs.fileKey();
+            return new Stamp(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    fileKey != null ? fileKey.toString() : null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached hashes for {@code file} if they were made from the contents described by {@code stamp}.
+     */
+    public static FileHasher.Result lookup(File file, Stamp stamp) {
+        String key = keyOf(file);
+        if (key == null || stamp == null) {
+            return null;
+        }
+        synchronized (HashCache.class) {
+            ensureLoaded();
+            Entry entry = entries.get(key);
+            if (entry == null || entry.size != stamp.size() || entry.lastModifiedNanos != stamp.lastModifiedNanos()
+                    || !Objects.equals(entry.fileKey, stamp.fileKey()) || entry.chunkSize != Config.CHUNK_SIZE) {
+                return null;
+            }
+            return new FileHasher.Result(entry.fileHash, entry.pieceHashes, entry.piecesRoot);
+        }
+    }
+
+    /**
+     * Records the hashes of {@code file}, computed from the contents described by {@code stamp}.
+     * Nothing is stored if the file changed since the stamp was taken, since the hashes may not match it.
+     */
+    public static void put(File file, Stamp stamp, FileHasher.Result result) {
+        String key = keyOf(file);
+        if (key == null || stamp == null || result == null || result.pieceHashes() == null) {
+            return;
+        }
+        if (!stamp.equals(stamp(file))) {
+            Log.logInfo("File changed while hashing, not caching: " + file.getAbsolutePath());
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.size = stamp.size();
+        entry.lastModifiedNanos = stamp.lastModifiedNanos();
+        entry.fileKey = stamp.fileKey();
+        entry.chunkSize = Config.CHUNK_SIZE;
+        entry.fileHash = result.fileHash();
+        entry.pieceHashes = result.pieceHashes();
+        entry.piecesRoot = result.piecesRoot();
+        synchronized (HashCache.class) {
+            ensureLoaded();
+            entries.put(key, entry);
+            if (!saveScheduled) {
+                saveScheduled = true;
+                saver.schedule(HashCache::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static String keyOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Path cacheFile() {
+        return Paths.get(AppPaths.getAppDataDirectory(), "data", "hashCache.json");
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        Path path = cacheFile();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, Entry> stored = GSON.fromJson(reader, ENTRIES_TYPE);
+            if (stored != null) {
+                entries.putAll(stored);
+            }
+            Log.logInfo("Hash cache loaded: " + entries.size() + " entries");
+        } catch (Exception e) {
+            Log.logError("Error loading hash cache, starting empty: " + e.getMessage(), e);
+            entries.clear();
+        }
+    }
+
+    private static void save() {
+        // Ảnh chụp và ghi tệp nằm trong cùng một khóa để bản cũ không ghi đè bản mới hơn
+        synchronized (SAVE_LOCK) {
+            String json;
+            synchronized (HashCache.class) {
+                if (!saveScheduled) {
+                    return;
+                }
+                saveScheduled = false;
+                json = GSON.toJson(entries, ENTRIES_TYPE);
+            }
+
+            Path path = cacheFile();
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(path.getParent());
+                try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    writer.write(json);
+                }
+                try {
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                Log.logError("Error saving hash cache: " + e.getMessage(), e);
+            }
+        }
+    }
+}
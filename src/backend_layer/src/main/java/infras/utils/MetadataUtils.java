@@ -10,13 +10,19 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
-import domain.entity.ChunkInfo;
 import domain.entity.DownloadMetadata;
 import utils.Log;
 import utils.LogTag;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
@@ -26,16 +32,18 @@ import java.util.List;
 /**
  * Utility class for managing download metadata persistence.
  * Handles serialization/deserialization of DownloadMetadata to/from JSON files.
+ * The .meta file is replaced atomically; chunks completed since it was written are in the {@link ChunkJournal}.
  */
 public class MetadataUtils {
 
     private static final Gson GSON = new GsonBuilder()
             .registerTypeAdapter(Instant.class, new InstantTypeAdapter())
-            .setPrettyPrinting()
             .create();
 
     /**
      * Save download metadata to a .meta file.
+     * The JSON is written and forced to a temporary file which then replaces the .meta file, so a crash leaves
+     * either the old or the new metadata, never a truncated one.
      *
      * @param metadata The metadata to save
      * @return true if saved successfully, false otherwise
@@ -44,8 +52,19 @@ public class MetadataUtils {
         String metaFilePath = metadata.getMetaFilePath();
         metadata.updateLastModified();
 
-        try (Writer writer = new FileWriter(metaFilePath)) {
-            GSON.toJson(metadata, writer);
+        Path target = Path.of(metaFilePath);
+        Path temp = Path.of(metaFilePath + ".tmp");
+        try {
+            byte[] json = GSON.toJson(metadata).getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(json);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             Log.logInfo("Metadata saved to: " + metaFilePath);
             return true;
         } catch (IOException e) {
@@ -55,7 +74,7 @@ public class MetadataUtils {
     }
 
     /**
-     * Load download metadata from a .meta file.
+     * Load download metadata from a .meta file, plus the chunks recorded in its journal.
      *
      * @param metaFilePath Path to the .meta file
      * @return DownloadMetadata object or null if loading fails
@@ -63,7 +82,8 @@ public class MetadataUtils {
     public static DownloadMetadata loadMetadata(String metaFilePath) {
         try (Reader reader = new FileReader(metaFilePath)) {
             DownloadMetadata metadata = GSON.fromJson(reader, DownloadMetadata.class);
-            if (metadata != null) {
+            if (metadata != null && metadata.getChunks() != null) {
+                ChunkJournal.replay(metadata);
                 Log.logInfo("Metadata loaded from: " + metaFilePath);
             }
             return metadata;
@@ -130,6 +150,8 @@ public class MetadataUtils {
             }
         }
 
+        deleteJournal(metadata.getJournalFilePath());
+
         // Delete .part file
         File partFile = new File(metadata.getPartFilePath());
         if (partFile.exists()) {
@@ -144,6 +166,26 @@ public class MetadataUtils {
         return metaDeleted && partDeleted;
     }
 
+    /**
+     * Delete the .meta and .journal files of a download, once it completed or its data file was removed.
+     *
+     * @param savePath The target file path (without extensions)
+     */
+    public static void deleteResumeState(String savePath) {
+        File metaFile = new File(savePath + ".part.meta");
+        if (metaFile.exists() && !metaFile.delete()) {
+            Log.logError("Failed to delete metadata file: " + metaFile.getPath(), null);
+        }
+        deleteJournal(savePath + ".part.journal");
+    }
+
+    private static void deleteJournal(String journalFilePath) {
+        File journalFile = new File(journalFilePath);
+        if (journalFile.exists() && !journalFile.delete()) {
+            Log.logError("Failed to delete journal file: " + journalFilePath, null);
+        }
+    }
+
     /**
      * Calculate checksum for a chunk of data.
      *
@@ -161,6 +203,23 @@ public class MetadataUtils {
         }
     }
 
+    /**
+     * Calculate checksum for a chunk held in a buffer without copying it.
+     *
+     * @param data The chunk data; its position is left unchanged
+     * @return SHA-256 checksum as hex string
+     */
+    public static String calculateChunkChecksum(ByteBuffer data) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(data.duplicate());
+            return bytesToHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            Log.logError("Failed to calculate chunk checksum", e);
+            return null;
+        }
+    }
+
     /**
      * Convert byte array to hexadecimal string.
      *
@@ -200,6 +259,31 @@ public class MetadataUtils {
         return matches;
     }
 
+    /**
+     * Verify chunk data integrity using checksum.
+     *
+     * @param data The chunk data; its position is left unchanged
+     * @param expectedChecksum Expected SHA-256 checksum
+     * @return true if checksum matches
+     */
+    public static boolean verifyChunkChecksum(ByteBuffer data, String expectedChecksum) {
+        if (expectedChecksum == null || expectedChecksum.isEmpty()) {
+            return true; // No checksum to verify
+        }
+
+        String actualChecksum = calculateChunkChecksum(data);
+        if (actualChecksum == null) {
+            return false;
+        }
+
+        boolean matches = actualChecksum.equalsIgnoreCase(expectedChecksum);
+        if (!matches) {
+            Log.logInfo("Chunk checksum mismatch. Expected: " + expectedChecksum + ", Actual: " + actualChecksum);
+        }
+
+        return matches;
+    }
+
     /**
      * Custom TypeAdapter for Instant serialization/deserialization.
      */
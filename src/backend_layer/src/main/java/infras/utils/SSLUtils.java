@@ -28,6 +28,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class SSLUtils {
     public static final String TRUSTSTORE_HASH = "ffe24be633fdbddae20ae7ec5effdfa422a0a15bc4d37f5284b5860da0364171";
@@ -43,6 +44,9 @@ public class SSLUtils {
     private static final String SERVER_IP = Config.TRACKER_IP; // Should be the Tracker's IP
     private static final int TRACKER_PORT_FOR_CSR = SSL_TRACKER_PORT;
 
+    private static final Object CONTEXT_LOCK = new Object();
+    private static volatile CachedContext cachedContext;
+
     static {
         // Register Bouncy Castle provider once
         Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
@@ -125,6 +129,7 @@ public class SSLUtils {
             keyStore.store(fos, KEYSTORE_PASSWORD.toCharArray());
             Log.logInfo("Keystore saved successfully to: " + keystoreFile.getAbsolutePath());
         }
+        invalidateSSLContext();
 
         // Truststore is assumed to be pre-bundled with CA certificates
         Log.logInfo("Truststore should be pre-bundled with CA certificates.");
@@ -205,8 +210,66 @@ public class SSLUtils {
     }
 
     public static SSLContext createSSLContext() throws Exception {
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        return getCachedContext().sslContext;
+    }
+
+    public static SSLServerSocketFactory createSSLServerSocketFactory() throws Exception {
+        return getCachedContext().sslContext.getServerSocketFactory();
+    }
+
+    public static SSLSocketFactory createSSLSocketFactory() throws Exception {
+        return getCachedContext().socketFactory;
+    }
+
+    /**
+     * Key managers backing the cached context, so the Netty server shares the same key material.
+     */
+    public static KeyManagerFactory getKeyManagerFactory() throws Exception {
+        return getCachedContext().keyManagerFactory;
+    }
+
+    /**
+     * Trust managers backing the cached context.
+     */
+    public static TrustManagerFactory getTrustManagerFactory() throws Exception {
+        return getCachedContext().trustManagerFactory;
+    }
+
+    /**
+     * Drop the cached context so the next socket reloads the keystore and truststore.
+     */
+    public static void invalidateSSLContext() {
+        cachedContext = null;
+    }
+
+    /**
+     * Return the process-wide SSL context, rebuilding it only when the keystore file changed.
+     * Reusing one context keeps its client session cache, so reconnecting to the same peer
+     * resumes the TLS session instead of running a full handshake.
+     */
+    private static CachedContext getCachedContext() throws Exception {
         File keyStoreFile = Paths.get(CERT_DIRECTORY.toFile().getAbsolutePath(), KEYSTORE_NAME).toFile();
+        KeyStoreStamp keyStoreStamp = keyStoreFile.exists()
+                ? new KeyStoreStamp(keyStoreFile.lastModified(), keyStoreFile.length())
+                : null;
+
+        CachedContext context = cachedContext;
+        if (context != null && Objects.equals(context.keyStoreStamp, keyStoreStamp)) {
+            return context;
+        }
+
+        synchronized (CONTEXT_LOCK) {
+            context = cachedContext;
+            if (context == null || !Objects.equals(context.keyStoreStamp, keyStoreStamp)) {
+                context = buildContext(keyStoreFile, keyStoreStamp);
+                cachedContext = context;
+            }
+            return context;
+        }
+    }
+
+    private static CachedContext buildContext(File keyStoreFile, KeyStoreStamp keyStoreStamp) throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
 
         if (keyStoreFile.exists()) {
             KeyStore keyStore = KeyStore.getInstance("JKS");
@@ -233,16 +296,11 @@ public class SSLUtils {
 
         SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
+        sslContext.getClientSessionContext().setSessionCacheSize(Config.TLS_SESSION_CACHE_SIZE);
+        sslContext.getClientSessionContext().setSessionTimeout(Config.TLS_SESSION_TIMEOUT_S);
 
-        return sslContext;
-    }
-
-    public static SSLServerSocketFactory createSSLServerSocketFactory() throws Exception {
-        return createSSLContext().getServerSocketFactory();
-    }
-
-    public static SSLSocketFactory createSSLSocketFactory() throws Exception {
-        return createSSLContext().getSocketFactory();
+        Log.logInfo("SSL context (re)built from " + keyStoreFile.getAbsolutePath());
+        return new CachedContext(sslContext, kmf, tmf, keyStoreStamp);
     }
 
     public static boolean isSSLSupported() {
@@ -264,6 +322,29 @@ public class SSLUtils {
         return sslSocket;
     }
 
+    /**
+     * Modification time and length of the keystore file, compared as a pair so two different files cannot collide.
+     */
+    private record KeyStoreStamp(long lastModified, long length) {
+    }
+
+    private static final class CachedContext {
+        private final SSLContext sslContext;
+        private final SSLSocketFactory socketFactory;
+        private final KeyManagerFactory keyManagerFactory;
+        private final TrustManagerFactory trustManagerFactory;
+        private final KeyStoreStamp keyStoreStamp; // null while there is no keystore
+
+        private CachedContext(SSLContext sslContext, KeyManagerFactory keyManagerFactory,
+                              TrustManagerFactory trustManagerFactory, KeyStoreStamp keyStoreStamp) {
+            this.sslContext = sslContext;
+            this.socketFactory = sslContext.getSocketFactory();
+            this.keyManagerFactory = keyManagerFactory;
+            this.trustManagerFactory = trustManagerFactory;
+            this.keyStoreStamp = keyStoreStamp;
+        }
+    }
+
     private static String computeFileHash(File file) {
         try (InputStream fis = new FileInputStream(file)) {
             java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
@@ -0,0 +1,127 @@
+package infras.utils;
+
+import domain.adapter.JsonCodec;
+import domain.entity.FileInfo;
+import domain.entity.PeerInfo;
+
+import java.util.*;
+
+/**
+ * What the tracker has acknowledged of this peer's shares, so a SYNC only carries the entries that were added,
+ * removed or changed since then.
+ * <p>
+ * Each acknowledged state has a version. The tracker applies a delta only when its stored version for this peer
+ * equals the delta's base version; otherwise (tracker restart, lost reply, legacy SHARE in between) it answers
+ * SYNC_MISMATCH and the peer sends a full snapshot instead. Version 0 means nothing was acknowledged yet, so the
+ * first sync after start-up is always a snapshot.
+ */
+public class ShareSyncState {
+    public static final long FULL_SNAPSHOT = -1;
+
+    private Map<String, Entry> acked = new HashMap<>();
+    private long version;
+
+    /**
+     * Compares the current shares with the acknowledged ones.
+     *
+     * @param self Added to every private ACL, the owner can always download its own file.
+     */
+    public synchronized Delta diff(Map<String, FileInfo> publicFiles, Map<FileInfo, Set<PeerInfo>> privateFiles, PeerInfo self) {
+        Map<String, Entry> current = snapshot(publicFiles, privateFiles, self);
+        List<FileInfo> publicAdded = new ArrayList<>();
+        Map<FileInfo, Set<PeerInfo>> privateAdded = new HashMap<>();
+        List<FileInfo> removed = new ArrayList<>();
+
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+            Entry old = acked.get(entry.getKey());
+            if (old != null && old.fingerprint().equals(entry.getValue().fingerprint())) {
+                continue;
+            }
+            if (old != null) {
+                removed.add(old.file()); // Đổi hash/ACL: xoá bản cũ rồi thêm lại
+            }
+            Entry added = entry.getValue();
+            if (added.acl() == null) {
+                publicAdded.add(added.file());
+            } else {
+                privateAdded.put(added.file(), added.acl());
+            }
+        }
+        for (Map.Entry<String, Entry> entry : acked.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                removed.add(entry.getValue().file());
+            }
+        }
+        return new Delta(version, publicAdded, privateAdded, removed, current);
+    }
+
+    /**
+     * Records that the tracker applied {@code delta} (or the snapshot it was built from) as {@code newVersion}.
+     */
+    public synchronized void commit(Delta delta, long newVersion) {
+        acked = delta.state();
+        version = newVersion;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private static Map<String, Entry> snapshot(Map<String, FileInfo> publicFiles, Map<FileInfo, Set<PeerInfo>> privateFiles, PeerInfo self) {
+        Map<String, Entry> state = new HashMap<>();
+        for (FileInfo file : publicFiles.values()) {
+            state.put("P'" + file.getFileName(), new Entry(file, null, JsonCodec.FILE_GSON.toJson(file)));
+        }
+        for (Map.Entry<FileInfo, Set<PeerInfo>> entry : privateFiles.entrySet()) {
+            FileInfo file = entry.getKey();
+            Set<PeerInfo> acl = new HashSet<>(entry.getValue());
+            acl.add(self);
+            List<String> members = new ArrayList<>();
+            for (PeerInfo peer : acl) {
+                members.add(peer.toString());
+            }
+            Collections.sort(members);
+            state.put("R'" + file.getFileName() + "'" + file.getFileHash(),
+                    new Entry(file, acl, JsonCodec.FILE_GSON.toJson(file) + members));
+        }
+        return state;
+    }
+
+    /**
+     * @param acl null for a public file
+     */
+    private record Entry(FileInfo file, Set<PeerInfo> acl, String fingerprint) {
+    }
+
+    /**
+     * Changes against the acknowledged state. A changed entry is listed as removed (old version) and added.
+     *
+     * @param baseVersion version the delta applies to; 0 if nothing was acknowledged yet
+     */
+    public record Delta(long baseVersion, List<FileInfo> publicAdded, Map<FileInfo, Set<PeerInfo>> privateAdded,
+                        List<FileInfo> removed, Map<String, Entry> state) {
+        public boolean isEmpty() {
+            return publicAdded.isEmpty() && privateAdded.isEmpty() && removed.isEmpty();
+        }
+
+        public List<FileInfo> allPublic() {
+            List<FileInfo> files = new ArrayList<>();
+            for (Entry entry : state.values()) {
+                if (entry.acl() == null) {
+                    files.add(entry.file());
+                }
+            }
+            return files;
+        }
+
+        public Map<FileInfo, Set<PeerInfo>> allPrivate() {
+            Map<FileInfo, Set<PeerInfo>> files = new HashMap<>();
+            for (Entry entry : state.values()) {
+                if (entry.acl() != null) {
+                    files.put(entry.file(), entry.acl());
+                }
+            }
+            return files;
+        }
+    }
+}
@@ -139,7 +139,7 @@ public class FileService implements IFileService {
 
     @Override
     public void shareFileList() {
-        peerModel.shareFileList(peerModel.getPublicFiles(), peerModel.getPrivateSharedFiles());
+        peerModel.syncSharedFiles();
     }
 
     @Override
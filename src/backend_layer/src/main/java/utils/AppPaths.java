@@ -3,9 +3,11 @@ package utils;
 import domain.entity.ProgressInfo;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.regex.Pattern;
@@ -17,6 +19,7 @@ public class AppPaths {
     private static final String CERT_FOLDER = "certificates";
     private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final Path LOG_DIR = initLogDir();
+    private static final long COPY_SLICE = 8L * 1024 * 1024;
 
 
     private static Path initLogDir() {
@@ -91,36 +94,66 @@ public class AppPaths {
         return Paths.get(getAppDataDirectory(), "shared_files", fileName).toString();
     }
 
+    /**
+     * Places {@code sourceFile} into shared_files under {@code newfileName}.
+     * A hard link is tried first so sharing costs no extra I/O and the only read pass is the hashing;
+     * across file systems (or where links are not supported) the file is copied with
+     * {@link FileChannel#transferTo}, which lets the kernel copy (or clone) it without going through the heap.
+     * The modification time is kept in both cases so edits to the original can be detected later.
+     */
     public static boolean copyFileToShare(File sourceFile, String newfileName, ProgressInfo progressInfor) {
         long start = System.currentTimeMillis();
-        File destFile = new File(getSharedFile(newfileName));
-        try (
-                InputStream in = new FileInputStream(sourceFile);
-                OutputStream out = new FileOutputStream(destFile)
-        ) {
-            progressInfor.setBytesTransferred(0);
-            progressInfor.setTotalBytes(sourceFile.length());
-            progressInfor.setStatus(ProgressInfo.ProgressStatus.SHARING);
-            progressInfor.setProgressPercentage(0);
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                if (progressInfor.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED)) {
-                    out.close();
-                    destFile.delete();
-                    logInfo("File copy cancelled by user: " + sourceFile.getName());
-                    return false;
-                }
-                out.write(buffer, 0, bytesRead);
-                progressInfor.addBytesTransferred(bytesRead);
-                int progress = (int) ((progressInfor.getBytesTransferred() * 70) / progressInfor.getTotalBytes());
-                progressInfor.setProgressPercentage(progress);
+        Path source = sourceFile.toPath();
+        Path dest = Paths.get(getSharedFile(newfileName));
+        progressInfor.setBytesTransferred(0);
+        progressInfor.setTotalBytes(sourceFile.length());
+        progressInfor.setStatus(ProgressInfo.ProgressStatus.SHARING);
+        progressInfor.setProgressPercentage(0);
+        try {
+            Files.createDirectories(dest.getParent());
+            if (Files.exists(dest) && Files.isSameFile(source, dest)) {
+                progressInfor.setProgressPercentage(70);
+                return true;
+            }
+            Files.deleteIfExists(dest);
+            try {
+                Files.createLink(dest, source);
+                progressInfor.setBytesTransferred(sourceFile.length());
+                progressInfor.setProgressPercentage(70);
+                logInfo("Linked " + sourceFile.getName() + " into shared files in " + (System.currentTimeMillis() - start) + " ms");
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Khác ổ đĩa hoặc hệ thống tệp không hỗ trợ liên kết cứng: sao chép
+                logInfo("Hard link not possible for " + sourceFile.getName() + ", copying instead: " + e.getMessage());
+            }
 
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    if (progressInfor.getStatus().equals(ProgressInfo.ProgressStatus.CANCELLED)) {
+                        out.close();
+                        Files.deleteIfExists(dest);
+                        logInfo("File copy cancelled by user: " + sourceFile.getName());
+                        return false;
+                    }
+                    long copied = in.transferTo(position, Math.min(COPY_SLICE, size - position), out);
+                    if (copied <= 0) {
+                        throw new IOException("Source file shrank while copying: " + sourceFile.getAbsolutePath());
+                    }
+                    position += copied;
+                    progressInfor.addBytesTransferred(copied);
+                    progressInfor.setProgressPercentage((int) ((position * 70) / size));
+                }
             }
-            System.out.println("Total time: " + (System.currentTimeMillis() - start) + " ms");
+            Files.setLastModifiedTime(dest, Files.getLastModifiedTime(source));
+            progressInfor.setProgressPercentage(70);
+            logInfo("Copied " + sourceFile.getName() + " into shared files in " + (System.currentTimeMillis() - start) + " ms");
             return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.logError("Error placing file into shared files: " + sourceFile.getAbsolutePath(), e);
             return false;
         }
     }
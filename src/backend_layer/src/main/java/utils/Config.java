@@ -10,10 +10,28 @@ public interface Config {
     int PEER_PORT = EnvUtils.getEnvInt("PEER_PORT", 5000);
     int TRACKER_ENROLL_PORT = EnvUtils.getEnvInt("TRACKER_ENROLLMENT_PORT", 9091);
     int TRACKER_PORT = EnvUtils.getEnvInt("SSL_TRACKER_PORT", 6001);
+    int TRACKER_HEARTBEAT_PORT = EnvUtils.getEnvInt("TRACKER_HEARTBEAT_PORT", 6002);
+    int HEARTBEAT_INTERVAL_MS = EnvUtils.getEnvInt("HEARTBEAT_INTERVAL_MS", 10000);
     String SERVER_IP = NetworkUtils.getCurrentIp();
     String TRACKER_IP = NetworkUtils.getCurrentIp();
     int CHUNK_SIZE = EnvUtils.getEnvInt("CHUNK_SIZE", 1024 * 1024 * 2);
     int SOCKET_TIMEOUT_MS = EnvUtils.getEnvInt("SOCKET_TIMEOUT_MS", 5000);
     int MAX_RETRIES = EnvUtils.getEnvInt("MAX_RETRIES", 3);
+    int TLS_SESSION_CACHE_SIZE = EnvUtils.getEnvInt("TLS_SESSION_CACHE_SIZE", 1024);
+    int TLS_SESSION_TIMEOUT_S = EnvUtils.getEnvInt("TLS_SESSION_TIMEOUT_S", 3600);
+    int PEER_CLIENT_IO_THREADS = EnvUtils.getEnvInt("PEER_CLIENT_IO_THREADS", 2);
+    int PEER_CONNECTION_IDLE_S = EnvUtils.getEnvInt("PEER_CONNECTION_IDLE_S", 60);
+    int CHUNK_REQUEST_TIMEOUT_MS = EnvUtils.getEnvInt("CHUNK_REQUEST_TIMEOUT_MS", 30000);
+    int PEER_PARALLEL_REQUESTS = EnvUtils.getEnvInt("PEER_PARALLEL_REQUESTS", 3);
+    int DOWNLOAD_MAX_IN_FLIGHT = EnvUtils.getEnvInt("DOWNLOAD_MAX_IN_FLIGHT", 16);
+    int END_GAME_CHUNKS = EnvUtils.getEnvInt("END_GAME_CHUNKS", 4);
+    int CHUNK_MAX_ATTEMPTS = EnvUtils.getEnvInt("CHUNK_MAX_ATTEMPTS", 6);
+    int MAX_FILE_CHUNKS = EnvUtils.getEnvInt("MAX_FILE_CHUNKS", 1 << 21);
+    int PEER_MAX_REQUEST_BYTES = EnvUtils.getEnvInt("PEER_MAX_REQUEST_BYTES", 8192);
+    int TRACKER_MAX_FRAME_BYTES = EnvUtils.getEnvInt("TRACKER_MAX_FRAME_BYTES", 64 * 1024 * 1024);
+    int JOURNAL_FSYNC_MS = EnvUtils.getEnvInt("JOURNAL_FSYNC_MS", 1000);
+    int JOURNAL_COMPACT_RECORDS = EnvUtils.getEnvInt("JOURNAL_COMPACT_RECORDS", 1024);
+    int PROGRESS_STREAM_INTERVAL_MS = EnvUtils.getEnvInt("PROGRESS_STREAM_INTERVAL_MS", 500);
+    int HASH_CACHE_MAX_ENTRIES = EnvUtils.getEnvInt("HASH_CACHE_MAX_ENTRIES", 10000);
     String USERNAME = EnvUtils.getEnvString("USERNAME");
 }
@@ -1,47 +1,231 @@
 package utils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Stream;
 
+/**
+ * Asynchronous logger. Callers only capture the record and publish it into a lock-free ring buffer;
+ * a single writer thread formats records in batches, keeps the day's log file open, rolls over at
+ * midnight and applies log retention once per day.
+ * <p>
+ * Settings (.env): LOG_LEVEL (INFO|ERROR), LOG_CALLER_INFO (true|false), LOG_BUFFER_SIZE, LOG_RETENTION_DAYS.
+ */
 public class Log {
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
 
-    private static synchronized void logToFile(String level, String message, Exception e) {
-        // Lấy thông tin vị trí gọi log (class, method, line)
-        StackTraceElement caller = Thread.currentThread().getStackTrace()[3];
-        String callerInfo = String.format("(%s:%d#%s)",
-                caller.getFileName(), caller.getLineNumber(), caller.getMethodName());
+    private static final Level MIN_LEVEL = Level.parse(EnvUtils.getEnv("LOG_LEVEL", "INFO"));
+    private static final boolean CALLER_INFO = Boolean.parseBoolean(EnvUtils.getEnv("LOG_CALLER_INFO", "true"));
+    private static final int RETENTION_DAYS = EnvUtils.getEnvInt("LOG_RETENTION_DAYS", 7);
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
 
-        String time = LocalDateTime.now().format(DATE_FORMAT);
-        StringBuilder sb = new StringBuilder();
-        sb.append("[").append(time).append("] [").append(level).append("] ")
-          .append(callerInfo).append(" ").append(message).append(System.lineSeparator());
+    private static final RingBuffer BUFFER = new RingBuffer(EnvUtils.getEnvInt("LOG_BUFFER_SIZE", 8192));
+    private static final Thread writerThread;
+    private static volatile boolean writerParked;
+    private static volatile boolean running = true;
 
+    static {
+        writerThread = new Thread(Log::runWriter, "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::shutdown, "log-shutdown"));
+    }
+
+    private enum Level {
+        INFO, ERROR;
+
+        static Level parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return INFO;
+            }
+        }
+    }
+
+    private record LogRecord(long timestamp, Level level, String callerInfo, String message, Exception exception) {
+    }
+
+    public static boolean isInfoEnabled() {
+        return MIN_LEVEL.compareTo(Level.INFO) <= 0;
+    }
+
+    public static void logInfo(String message) {
+        if (!isInfoEnabled()) {
+            return;
+        }
+        publish(new LogRecord(System.currentTimeMillis(), Level.INFO, callerInfo(), message, null));
+    }
+
+    public static void logError(String message, Exception e) {
+        publish(new LogRecord(System.currentTimeMillis(), Level.ERROR, callerInfo(), message, e));
+    }
+
+    private static String callerInfo() {
+        if (!CALLER_INFO) {
+            return null;
+        }
+        // Khung đầu tiên nằm ngoài lớp Log là nơi gọi log
+        return STACK_WALKER.walk(frames -> frames
+                .dropWhile(frame -> frame.getClassName().equals(Log.class.getName()))
+                .findFirst()
+                .map(frame -> "(" + frame.getFileName() + ":" + frame.getLineNumber() + "#" + frame.getMethodName() + ")")
+                .orElse(null));
+    }
+
+    private static void publish(LogRecord record) {
+        if (!running) {
+            return;
+        }
+        while (!BUFFER.offer(record)) {
+            if (Thread.currentThread() == writerThread) {
+                return;
+            }
+            // Bộ đệm đầy: chờ luồng ghi giải phóng chỗ thay vì làm mất log
+            LockSupport.unpark(writerThread);
+            Thread.yield();
+        }
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private static void runWriter() {
+        FileSink sink = new FileSink();
+        StringBuilder batch = new StringBuilder(8192);
+        while (true) {
+            boolean wasRunning = running;
+            LogRecord record;
+            int drained = 0;
+            while ((record = BUFFER.poll()) != null) {
+                format(record, batch, sink);
+                drained++;
+            }
+
+            if (drained > 0) {
+                sink.write(batch);
+                batch.setLength(0);
+                continue;
+            }
+            sink.flush();
+            if (!wasRunning) {
+                sink.close();
+                return;
+            }
+            writerParked = true;
+            if (BUFFER.isEmpty() && running) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private static void format(LogRecord record, StringBuilder batch, FileSink sink) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timestamp()), ZoneId.systemDefault());
+        sink.rollOverIfNeeded(time.toLocalDate(), batch);
+
+        String caller = record.callerInfo() != null ? record.callerInfo() + " " : "";
+        String consoleLine = "[" + record.level() + "] " + caller + record.message();
+        if (record.level() == Level.ERROR) {
+            System.err.println(consoleLine);
+        } else {
+            System.out.println(consoleLine);
+        }
+
+        batch.append("[").append(time.format(DATE_FORMAT)).append("] [").append(record.level()).append("] ")
+                .append(caller).append(record.message()).append(System.lineSeparator());
+
+        Exception e = record.exception();
         if (e != null) {
-            sb.append("[EXCEPTION] ").append(e.toString()).append(System.lineSeparator());
+            batch.append("[EXCEPTION] ").append(e).append(System.lineSeparator());
             for (StackTraceElement el : e.getStackTrace()) {
-                sb.append("\tat ").append(el.toString()).append(System.lineSeparator());
+                batch.append("\tat ").append(el).append(System.lineSeparator());
             }
         }
+    }
 
-        Path logFile = AppPaths.getLogFilePath();
+    private static void shutdown() {
+        running = false;
+        LockSupport.unpark(writerThread);
         try {
-            // Ghi log
-            Files.createDirectories(logFile.getParent());
-            try (BufferedWriter writer = Files.newBufferedWriter(logFile,
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-                writer.write(sb.toString());
+            writerThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Day's log file, owned by the writer thread only. Reopened (and old logs cleaned) when the date changes.
+     */
+    private static final class FileSink {
+        private LocalDate currentDate;
+        private Writer writer;
+
+        void rollOverIfNeeded(LocalDate date, StringBuilder pending) {
+            if (date.equals(currentDate)) {
+                return;
+            }
+            if (writer != null) {
+                write(pending);
+                pending.setLength(0);
+            }
+            close();
+            currentDate = date;
+
+            Path logFile = AppPaths.getLogFilePath();
+            try {
+                Files.createDirectories(logFile.getParent());
+                writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(logFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+            } catch (IOException io) {
+                System.err.println("[ERROR] Failed to open log file: " + io.getMessage());
+                writer = null;
+            }
+            // Tự động dọn log cũ hơn RETENTION_DAYS ngày, mỗi ngày một lần
+            cleanOldLogs(logFile.getParent(), RETENTION_DAYS);
+        }
+
+        void write(CharSequence text) {
+            if (writer == null || text.isEmpty()) {
+                return;
+            }
+            try {
+                writer.append(text);
+            } catch (IOException io) {
+                System.err.println("[ERROR] Failed to write log: " + io.getMessage());
             }
+        }
 
-            // Tự động dọn log cũ hơn 7 ngày
-            cleanOldLogs(logFile.getParent(), 7);
+        void flush() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.flush();
+            } catch (IOException io) {
+                System.err.println("[ERROR] Failed to flush log: " + io.getMessage());
+            }
+        }
 
-        } catch (IOException io) {
-            System.err.println("[ERROR] Failed to write log: " + io.getMessage());
+        void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException io) {
+                System.err.println("[ERROR] Failed to close log: " + io.getMessage());
+            }
+            writer = null;
         }
     }
 
@@ -69,21 +253,61 @@ public class Log {
         }
     }
 
-    public static void logInfo(String message) {
-        StackTraceElement caller = Thread.currentThread().getStackTrace()[2];
-        String callerInfo = String.format("(%s:%d#%s)",
-                caller.getFileName(), caller.getLineNumber(), caller.getMethodName());
+    /**
+     * Bounded multi-producer / single-consumer ring. Each slot carries a sequence number: a producer claims a
+     * position with CAS on the tail and publishes by advancing the slot sequence; only the writer thread polls.
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<LogRecord> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private long head;
 
-        System.out.println("[INFO] " + callerInfo + " " + message);
-        logToFile("INFO", message, null);
-    }
+        RingBuffer(int requestedCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
 
-    public static void logError(String message, Exception e) {
-        StackTraceElement caller = Thread.currentThread().getStackTrace()[2];
-        String callerInfo = String.format("(%s:%d#%s)",
-                caller.getFileName(), caller.getLineNumber(), caller.getMethodName());
+        boolean offer(LogRecord record) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - position;
+                if (diff == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, record);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (diff < 0) {
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
 
-        System.err.println("[ERROR] " + callerInfo + " " + message);
-        logToFile("ERROR", message, e);
+        LogRecord poll() {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return null;
+            }
+            LogRecord record = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            return record;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) (head & mask)) != head + 1;
+        }
     }
 }
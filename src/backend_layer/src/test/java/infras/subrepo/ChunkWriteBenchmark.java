@@ -0,0 +1,219 @@
+package infras.subrepo;
+
+import domain.entity.ChunkMap;
+import domain.entity.DownloadMetadata;
+import domain.entity.FileInfo;
+import domain.entity.PartialFile;
+import domain.entity.PeerInfo;
+import domain.entity.ProgressInfo;
+import domain.repository.IPeerRepository;
+import infras.network.ChunkResponse;
+import infras.network.PieceScheduler;
+import infras.subrepo.FileDownloadRepository.DownloadSession;
+import infras.utils.ChunkJournal;
+import infras.utils.MetadataUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import utils.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aggregate chunk store throughput of several concurrent downloads through the real
+ * {@link FileDownloadRepository#storeChunk} path: a {@link DownloadSession} per download with its {@link PieceScheduler},
+ * {@link PartialFile} and {@link ChunkJournal}, positional writes into a preallocated file, and the progress and HAVE
+ * bookkeeping (the peer model is a stub that records nothing). Worker threads stand in for the download workers: each
+ * takes the next (download, chunk) pair, receives the chunk into a pooled direct {@link ByteBuf} as the frame decoder
+ * does, waits {@code latencyMs} outside any lock, then stores it.
+ * <p>
+ * In "locked" mode every store holds one process-wide {@link ReentrantLock}, as the chunk write used to hold
+ * PeerRepository's file lock. With {@code verify} the chunks are also checked against their SHA-256, which the old
+ * lock did not cover, so leave it off to compare the two modes like for like.
+ * <p>
+ * Run after {@code mvn test-compile}; the store path logs every chunk, so keep only the result lines:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; infras.subrepo.ChunkWriteBenchmark [downloads] [chunks] [maxWorkers] [latencyMs] [verify] | grep -v '^\['
+ * </pre>
+ */
+public class ChunkWriteBenchmark {
+    private static final int ROUNDS = 3;
+    private static final PeerInfo SOURCE = new PeerInfo("127.0.0.1", 5000);
+
+    public static void main(String[] args) throws Exception {
+        int downloads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int chunks = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int latencyMs = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        boolean verify = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        Random random = new Random(42);
+        byte[][] source = new byte[chunks][Config.CHUNK_SIZE];
+        List<String> pieceHashes = new ArrayList<>(chunks);
+        for (byte[] chunk : source) {
+            random.nextBytes(chunk);
+            pieceHashes.add(MetadataUtils.calculateChunkChecksum(chunk));
+        }
+        Map<String, ProgressInfo> processes = new ConcurrentHashMap<>();
+        FileDownloadRepository repository = new FileDownloadRepository(stubPeerModel(processes));
+
+        System.out.println("ChunkWriteBenchmark: " + downloads + " downloads of " + chunks + " chunks of " + Config.CHUNK_SIZE
+                + " bytes, " + latencyMs + " ms delivery per chunk, verification " + (verify ? "on" : "off"));
+        run(repository, processes, source, verify ? pieceHashes : null, downloads, 1, latencyMs, false); // khởi động JIT và page cache
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            double locked = 0;
+            double lockFree = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                locked += run(repository, processes, source, verify ? pieceHashes : null, downloads, workers, latencyMs, true);
+                lockFree += run(repository, processes, source, verify ? pieceHashes : null, downloads, workers, latencyMs, false);
+            }
+            System.out.printf("%2d workers: locked %8.1f MB/s, lock-free %8.1f MB/s (x%.2f)%n",
+                    workers, locked / ROUNDS, lockFree / ROUNDS, lockFree / locked);
+        }
+        System.exit(0); // the repository's worker pools and connection pool are not daemon threads
+    }
+
+    /**
+     * Stores every chunk of {@code downloads} fresh downloads with {@code workers} threads.
+     *
+     * @return throughput in MB/s
+     */
+    private static double run(FileDownloadRepository repository, Map<String, ProgressInfo> processes, byte[][] source,
+                              List<String> pieceHashes, int downloads, int workers, int latencyMs, boolean locked) throws Exception {
+        int chunks = source.length;
+        List<Download> sessions = new ArrayList<>();
+        try {
+            for (int d = 0; d < downloads; d++) {
+                sessions.add(openDownload(processes, chunks, pieceHashes, d));
+            }
+
+            ReentrantLock lock = new ReentrantLock();
+            AtomicInteger next = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int w = 0; w < workers; w++) {
+                Thread worker = new Thread(() -> {
+                    int item;
+                    while ((item = next.getAndIncrement()) < downloads * chunks) {
+                        DownloadSession session = sessions.get(item % downloads).session();
+                        int chunkIndex = item / downloads;
+                        ChunkResponse response = deliver(source[chunkIndex], chunkIndex, latencyMs);
+                        if (locked) {
+                            lock.lock();
+                        }
+                        try {
+                            if (!repository.storeChunk(SOURCE, chunkIndex, response, session)) {
+                                throw new IllegalStateException("Chunk " + chunkIndex + " was rejected");
+                            }
+                        } finally {
+                            if (locked) {
+                                lock.unlock();
+                            }
+                            response.release();
+                        }
+                    }
+                }, "download-worker-" + w);
+                threads.add(worker);
+                worker.start();
+            }
+            for (Thread worker : threads) {
+                worker.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            for (Download download : sessions) {
+                if (!download.scheduler().isComplete()) {
+                    throw new IllegalStateException("Download " + download.progressId() + " is incomplete");
+                }
+            }
+            return (double) downloads * chunks * Config.CHUNK_SIZE / (1024 * 1024) / seconds;
+        } finally {
+            for (Download download : sessions) {
+                download.journal().close();
+                download.raf().close();
+                processes.remove(download.progressId());
+                MetadataUtils.deleteResumeState(download.path().getPath());
+                download.path().delete();
+            }
+        }
+    }
+
+    /**
+     * One benchmark download and the parts of its session the harness needs after the run.
+     */
+    private record Download(DownloadSession session, PieceScheduler scheduler, ChunkJournal journal, String progressId,
+                            RandomAccessFile raf, File path) {
+    }
+
+    private static Download openDownload(Map<String, ProgressInfo> processes, int chunks, List<String> pieceHashes,
+                                         int download) throws Exception {
+        File path = File.createTempFile("chunk-bench", ".part");
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        long fileSize = (long) chunks * Config.CHUNK_SIZE;
+        raf.setLength(fileSize);
+        String fileHash = String.format("%064x", download);
+        FileInfo file = new FileInfo(path.getName(), fileSize, fileHash, SOURCE);
+        String progressId = "bench-" + download + "-" + path.getName();
+
+        ProgressInfo progress = new ProgressInfo(progressId, ProgressInfo.ProgressStatus.DOWNLOADING, file.getFileName(), "download");
+        progress.setTotalBytes(fileSize);
+        progress.setSavePath(path.getPath());
+        processes.put(progressId, progress);
+
+        ChunkMap completed = new ChunkMap(chunks);
+        DownloadMetadata resumeState = new DownloadMetadata(file.getFileName(), fileHash, fileSize, path.getPath());
+        resumeState.setChunks(completed);
+        ChunkJournal journal = ChunkJournal.open(resumeState, raf.getChannel());
+        PieceScheduler scheduler = new PieceScheduler(chunks, completed, Config.END_GAME_CHUNKS, Config.CHUNK_MAX_ATTEMPTS);
+        PartialFile partialFile = new PartialFile(fileHash, fileSize, chunks, path, completed, null);
+        DownloadSession session = new DownloadSession(file, progressId, scheduler, partialFile, raf, new AtomicInteger(), pieceHashes, journal);
+        return new Download(session, scheduler, journal, progressId, raf, path);
+    }
+
+    /**
+     * Stands in for the frame decoder: the chunk arrives in a pooled direct buffer after the peer's latency.
+     */
+    private static ChunkResponse deliver(byte[] chunk, int chunkIndex, int latencyMs) {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ByteBuf data = PooledByteBufAllocator.DEFAULT.directBuffer(chunk.length);
+        data.writeBytes(chunk);
+        return new ChunkResponse(0, chunkIndex, data);
+    }
+
+    /**
+     * Peer model that only keeps the progress map; announcements and every other call are ignored.
+     */
+    private static IPeerRepository stubPeerModel(Map<String, ProgressInfo> processes) {
+        return (IPeerRepository) Proxy.newProxyInstance(IPeerRepository.class.getClassLoader(), new Class<?>[]{IPeerRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getProcesses")) {
+                        return processes;
+                    }
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    if (type == int.class) {
+                        return 0;
+                    }
+                    if (type == long.class) {
+                        return 0L;
+                    }
+                    return null;
+                });
+    }
+}
@@ -8,12 +8,43 @@ export const useTasks = (addNotification) => {
     const [taskTimeouts, setTaskTimeouts] = useState({});
     const [taskMap] = useState(new Map());
     const [progressIntervalId, setProgressIntervalId] = useState(null);
+    const progressStreamRef = useRef(null);
 
+    // Server đẩy tiến trình qua SSE (chỉ các task thay đổi); polling chỉ còn là phương án dự phòng
     const startPolling = useCallback(() => {
-        if (!progressIntervalId) {
-            const id = setInterval(queryProgress, 2000);
-            setProgressIntervalId(id);
+        if (progressStreamRef.current || progressIntervalId) {
+            return;
+        }
+        if (typeof EventSource === 'undefined') {
+            setProgressIntervalId(setInterval(queryProgress, 2000));
+            return;
         }
+        const source = new EventSource(buildApiUrl('/api/progress/stream'));
+        source.addEventListener('progress', (event) => {
+            applyProgress(JSON.parse(event.data));
+            if (allTasksFinished()) {
+                source.close();
+                progressStreamRef.current = null;
+            }
+        });
+        // Task đã bị dọn dẹp phía server
+        source.addEventListener('removed', (event) => {
+            const removedIds = JSON.parse(event.data).map(String);
+            removedIds.forEach(taskId => taskMap.delete(taskId));
+            setTasks(prev => prev.filter(t => !removedIds.includes(t.id)));
+            setTaskTimeouts(prev => {
+                const next = { ...prev };
+                removedIds.forEach(taskId => delete next[taskId]);
+                return next;
+            });
+        });
+        source.onerror = () => {
+            if (source.readyState === EventSource.CLOSED) {
+                progressStreamRef.current = null;
+                setProgressIntervalId(setInterval(queryProgress, 2000));
+            }
+        };
+        progressStreamRef.current = source;
     }, [progressIntervalId]);
 
     const stopPolling = useCallback(() => {
@@ -23,20 +54,18 @@ export const useTasks = (addNotification) => {
         }
     }, [progressIntervalId]);
 
-    const queryProgress = async () => {
-        if (taskMap.size === 0) {
-            stopPolling();
-            return;
-        }
-
+    const allTasksFinished = () => {
         let allCompleted = true;
         taskMap.forEach((info, id) => {
             if (!['completed', 'failed', 'canceled', 'timeout'].includes(info.status)) {
                 allCompleted = false;
             }
         });
+        return allCompleted;
+    };
 
-        if (allCompleted) {
+    const queryProgress = async () => {
+        if (taskMap.size === 0 || allTasksFinished()) {
             stopPolling();
             return;
         }
@@ -47,115 +76,117 @@ export const useTasks = (addNotification) => {
                 headers: { 'Content-Type': 'application/json' }
             });
             if (response.ok) {
-                const data = await response.json();
-
-                if (data) {
-                    let completedTasks = [];
-                    const now = Date.now();
-                    const timeoutThreshold = 2 * 60 * 1000; // 2 minutes
-
-                    setTasks(prev => {
-                        let updated = [...prev];
-
-                        Object.entries(data).forEach(([id, info]) => {
-                            const taskId = String(id);
-                            const taskIndex = updated.findIndex(t => t.id === taskId);
-
-                                const taskMapInfo = taskMap.get(taskId);
-                                const taskType = info.taskType || 'sharing';
-
-                            if (taskIndex === -1) {
-                                updated.push({
-                                    id: taskId,
-                                    taskName: info.fileName || "Unknown Task",
-                                    progress: info.progressPercentage || 0,
-                                    bytesTransferred: info.bytesTransferred || 0,
-                                    totalBytes: info.totalBytes || 1,
-                                    status: info.status,
-                                    taskType: info.taskType
-                                });
-                            } else {
-                                const currentTask = updated[taskIndex];
-                                let newStatus = (currentTask.status === 'canceled')
-                                    ? currentTask.status
-                                    : info.status;
-
-                                // Check for timeout/stalled downloads (chỉ áp dụng cho download)
-                                if (taskType === 'download') {
-                                    const lastUpdate = taskTimeouts[taskId] || now;
-                                    const timeSinceLastUpdate = now - lastUpdate;
-
-                                    if (newStatus === 'downloading' || newStatus === 'starting') {
-                                        if (timeSinceLastUpdate >= timeoutThreshold) {
-                                            newStatus = 'timeout';
-                                            addNotification(t('download_timeout', { taskName: currentTask.taskName }), true);
-                                        } else if (timeSinceLastUpdate >= 30 * 1000) {
-                                            newStatus = 'stalled';
-                                        }
-                                    }
-
-                                    // Update timeout tracking
-                                    if (currentTask.progress !== info.progressPercentage ||
-                                        currentTask.bytesTransferred !== info.bytesTransferred) {
-                                        setTaskTimeouts(prev => ({
-                                            ...prev,
-                                            [taskId]: now
-                                        }));
-                                    } else {
-                                        setTaskTimeouts(prev => ({
-                                            ...prev,
-                                            [taskId]: lastUpdate
-                                        }));
-                                    }
-                                }
+                applyProgress(await response.json());
+            }
+        } catch (error) {
+            console.error("Lỗi khi truy vấn tiến trình:", error);
+        }
+    };
 
-                                // Cập nhật task trong mảng
-                                updated[taskIndex] = {
-                                    ...currentTask,
-                                    taskName: info.fileName || "Unknown Task",
-                                    progress: info.progressPercentage,
-                                    bytesTransferred: info.bytesTransferred,
-                                    totalBytes: info.totalBytes,
-                                    status: newStatus,
-                                    taskType: taskType
-                                };
-
-                                taskMap.set(taskId, { ...taskMapInfo, status: newStatus, taskType: info.taskType });
-
-                                if (['completed', 'failed', 'canceled', 'timeout'].includes(newStatus)) {
-                                    completedTasks.push(taskId);
+    const applyProgress = (data) => {
+        if (data) {
+            let completedTasks = [];
+            const now = Date.now();
+            const timeoutThreshold = 2 * 60 * 1000; // 2 minutes
+
+            setTasks(prev => {
+                let updated = [...prev];
+
+                Object.entries(data).forEach(([id, info]) => {
+                    const taskId = String(id);
+                    const taskIndex = updated.findIndex(t => t.id === taskId);
+
+                        const taskMapInfo = taskMap.get(taskId);
+                        const taskType = info.taskType || 'sharing';
+
+                    if (taskIndex === -1) {
+                        updated.push({
+                            id: taskId,
+                            taskName: info.fileName || "Unknown Task",
+                            progress: info.progressPercentage || 0,
+                            bytesTransferred: info.bytesTransferred || 0,
+                            totalBytes: info.totalBytes || 1,
+                            status: info.status,
+                            taskType: info.taskType
+                        });
+                    } else {
+                        const currentTask = updated[taskIndex];
+                        let newStatus = (currentTask.status === 'canceled')
+                            ? currentTask.status
+                            : info.status;
+
+                        // Check for timeout/stalled downloads (chỉ áp dụng cho download)
+                        if (taskType === 'download') {
+                            const lastUpdate = taskTimeouts[taskId] || now;
+                            const timeSinceLastUpdate = now - lastUpdate;
+
+                            if (newStatus === 'downloading' || newStatus === 'starting') {
+                                if (timeSinceLastUpdate >= timeoutThreshold) {
+                                    newStatus = 'timeout';
+                                    addNotification(t('download_timeout', { taskName: currentTask.taskName }), true);
+                                } else if (timeSinceLastUpdate >= 30 * 1000) {
+                                    newStatus = 'stalled';
                                 }
                             }
-                        });
 
-                        return updated;
-                    });
-
-                    // Cleanup completed tasks
-                    // if (completedTasks.length > 0) {
-                    //     try {
-                    //         const response = await fetch(buildApiUrl('/api/progress/cleanup'), {
-                    //             method: "POST",
-                    //             headers: { "Content-Type": "application/json" },
-                    //             body: JSON.stringify({ taskIds: completedTasks })
-                    //         });
-                    //         if (response.ok) {
-                    //             setTasks(prev => prev.filter(t => !completedTasks.includes(t.id)));
-                    //             // completedTasks.forEach(taskId => {
-                    //             //     taskMap.delete(taskId);
-                    //             // });
-                    //             console.log("Cleanup successful for tasks:", completedTasks);
-                    //         } else {
-                    //             console.error("Cleanup failed with status:", response.status, 'Response:', await response.text());
-                    //         }
-                    //     } catch (err) {
-                    //         console.error("Lỗi khi cleanup backend:", err);
-                    //     }
-                    // }
-                }
-            }
-        } catch (error) {
-            console.error("Lỗi khi truy vấn tiến trình:", error);
+                            // Update timeout tracking
+                            if (currentTask.progress !== info.progressPercentage ||
+                                currentTask.bytesTransferred !== info.bytesTransferred) {
+                                setTaskTimeouts(prev => ({
+                                    ...prev,
+                                    [taskId]: now
+                                }));
+                            } else {
+                                setTaskTimeouts(prev => ({
+                                    ...prev,
+                                    [taskId]: lastUpdate
+                                }));
+                            }
+                        }
+
+                        // Cập nhật task trong mảng
+                        updated[taskIndex] = {
+                            ...currentTask,
+                            taskName: info.fileName || "Unknown Task",
+                            progress: info.progressPercentage,
+                            bytesTransferred: info.bytesTransferred,
+                            totalBytes: info.totalBytes,
+                            status: newStatus,
+                            taskType: taskType
+                        };
+
+                        taskMap.set(taskId, { ...taskMapInfo, status: newStatus, taskType: info.taskType });
+
+                        if (['completed', 'failed', 'canceled', 'timeout'].includes(newStatus)) {
+                            completedTasks.push(taskId);
+                        }
+                    }
+                });
+
+                return updated;
+            });
+
+            // Cleanup completed tasks
+            // if (completedTasks.length > 0) {
+            //     try {
+            //         const response = await fetch(buildApiUrl('/api/progress/cleanup'), {
+            //             method: "POST",
+            //             headers: { "Content-Type": "application/json" },
+            //             body: JSON.stringify({ taskIds: completedTasks })
+            //         });
+            //         if (response.ok) {
+            //             setTasks(prev => prev.filter(t => !completedTasks.includes(t.id)));
+            //             // completedTasks.forEach(taskId => {
+            //             //     taskMap.delete(taskId);
+            //             // });
+            //             console.log("Cleanup successful for tasks:", completedTasks);
+            //         } else {
+            //             console.error("Cleanup failed with status:", response.status, 'Response:', await response.text());
+            //         }
+            //     } catch (err) {
+            //         console.error("Lỗi khi cleanup backend:", err);
+            //     }
+            // }
         }
     };
 
@@ -191,6 +222,14 @@ export const useTasks = (addNotification) => {
         };
     }, [progressIntervalId]);
 
+    useEffect(() => {
+        return () => {
+            if (progressStreamRef.current) {
+                progressStreamRef.current.close();
+            }
+        };
+    }, []);
+
     return {
         tasks,
         setTasks,